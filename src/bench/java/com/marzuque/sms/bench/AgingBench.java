@@ -0,0 +1,74 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.AgingRow;
+import com.marzuque.sms.util.IntDoubleMap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Ages the receivables of a generated roster bench.runs times and prints
+ * the time per pass, the ledger rows read and the bucket totals. Checks
+ * every student's aging total against the month balance table as of the
+ * end of last month, where both must agree.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.AgingBench \
+ *     -Dbench.students=100000 -Dbench.months=24
+ */
+public class AgingBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 100_000);
+    private static final int MONTHS = Integer.getInteger("bench.months", 24);
+    private static final int RUNS = Integer.getInteger("bench.runs", 5);
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = MONTHS;
+        DatasetGenerator.Result data = DatasetGenerator.generate(spec);
+        System.out.printf("dataset: %d students, %d charges, %d payments, %d adjustments%n",
+                data.students, data.charges, data.payments, data.adjustments);
+
+        StudentDao dao = new StudentDao();
+        YearMonth month = YearMonth.now().minusMonths(1);
+        LocalDate asOf = month.atEndOfMonth();
+
+        for (int run = 1; run <= RUNS; run++) {
+            double[] buckets = new double[AgingRow.BUCKET_LABELS.length];
+            long started = System.nanoTime();
+            long rows = dao.forEachAging(asOf, r -> {
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] += r.bucket(i);
+                }
+            });
+            long ms = (System.nanoTime() - started) / 1_000_000;
+            System.out.printf("run %d: %5d ms, %d ledger rows (%.0f rows/ms)%n", run, ms, rows, rows / (double) Math.max(1, ms));
+            if (run == RUNS) {
+                for (int i = 0; i < buckets.length; i++) {
+                    System.out.printf("   %-8s %,16.2f%n", AgingRow.BUCKET_LABELS[i], buckets[i]);
+                }
+            }
+        }
+
+        IntDoubleMap balances = dao.getBalancesAsOf(month);
+        int[] mismatches = {0};
+        dao.forEachAging(asOf, r -> {
+            double expected = balances.getOrDefault(r.studentDbId(), 0);
+            if (Math.abs(expected - r.total()) > 0.01 && mismatches[0]++ < 5) {
+                System.out.printf("MISMATCH %s: aging %.2f, balance %.2f%n", r.studentId(), r.total(), expected);
+            }
+        });
+        System.out.println(mismatches[0] == 0 ? "aging totals match month balances" : mismatches[0] + " mismatches");
+
+        Db.shutdown();
+    }
+}
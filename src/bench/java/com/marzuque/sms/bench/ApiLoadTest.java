@@ -0,0 +1,208 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.api.ApiServer;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.Student;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Load test for the JSON API on localhost: the server runs in-process on a
+ * free port over a generated dataset, and a number of virtual-thread clients
+ * loop over a mix of roster pages, balances, student reports and batch
+ * reports for a fixed time. Each client count runs twice, with plain
+ * requests and with conditional ones (If-None-Match with the last ETag).
+ * Prints throughput, latency percentiles, the status mix and the server's
+ * counters.
+ *
+ * bench.writesPerSecond adds adjustments in the background, each of which
+ * invalidates the response cache. bench.db points at an existing database
+ * instead of generating one.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.ApiLoadTest \
+ *     -Dbench.students=20000 -Dbench.seconds=10 -Dbench.writesPerSecond=0
+ */
+public class ApiLoadTest {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 20_000);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 10);
+    private static final int WRITES_PER_SECOND = Integer.getInteger("bench.writesPerSecond", 0);
+    private static final String DB = System.getProperty("bench.db");
+    private static final int[] CLIENTS = {1, 16, 64, 256};
+
+    public static void main(String[] args) throws Exception {
+        if (DB != null) {
+            Db.configure(DB, 4);
+            Schema.init();
+        } else {
+            File dir = Files.createTempDirectory("sms-bench").toFile();
+            Db.configure(new File(dir, "bench.db").getPath(), 4);
+            Schema.init();
+
+            DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+            spec.students = STUDENTS;
+            spec.batches = 20;
+            spec.months = 24;
+            DatasetGenerator.generate(spec);
+        }
+
+        StudentDao dao = new StudentDao();
+        List<Student> students = dao.findAll();
+        int[] ids = students.stream().mapToInt(Student::getId).toArray();
+        String[] batches = students.stream().map(Student::getBatch).distinct().toArray(String[]::new);
+
+        ApiServer api = ApiServer.start(dao, "127.0.0.1", 0);
+        String base = "http://127.0.0.1:" + api.port();
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        System.out.printf("%-8s %-12s %10s %9s %9s %9s   %s%n",
+                "clients", "conditional", "req/s", "p50 ms", "p99 ms", "max ms", "statuses");
+        for (int clients : CLIENTS) {
+            for (boolean conditional : new boolean[]{false, true}) {
+                run(http, base, ids, batches, dao, clients, conditional);
+            }
+        }
+        System.out.println("server: " + api.stats());
+
+        api.close();
+        Db.shutdown();
+        System.exit(0); // the HttpClient's selector thread is not a daemon
+    }
+
+    private static void run(HttpClient http, String base, int[] ids, String[] batches, StudentDao dao,
+            int clients, boolean conditional) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+
+        List<Future<Client>> running = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            Client client = new Client(http, base, ids, batches, conditional, new Random(c));
+            running.add(pool.submit(() -> client.loop(stop)));
+        }
+        Future<?> writer = WRITES_PER_SECOND <= 0 ? null : pool.submit(() -> {
+            Random r = new Random(-1);
+            while (!stop.get()) {
+                dao.addAdjustment(ids[r.nextInt(ids.length)], LocalDate.now(), 1.0, "load test");
+                Thread.sleep(1000L / WRITES_PER_SECOND);
+            }
+            return null;
+        });
+
+        long started = System.nanoTime();
+        Thread.sleep(SECONDS * 1000L);
+        stop.set(true);
+
+        long[] latencies = new long[0];
+        int count = 0;
+        Map<Integer, Integer> statuses = new HashMap<>();
+        for (Future<Client> f : running) {
+            Client c = f.get();
+            latencies = Arrays.copyOf(latencies, count + c.count);
+            System.arraycopy(c.latencies, 0, latencies, count, c.count);
+            count += c.count;
+            c.statuses.forEach((k, v) -> statuses.merge(k, v, Integer::sum));
+        }
+        if (writer != null) {
+            writer.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-8d %-12s %10.0f %9.2f %9.2f %9.2f   %s%n", clients, conditional, count / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0), statuses);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    private static final class Client {
+
+        private final HttpClient http;
+        private final String base;
+        private final int[] ids;
+        private final String[] batches;
+        private final boolean conditional;
+        private final Random random;
+        private final Map<String, String> etags = new HashMap<>();
+
+        long[] latencies = new long[1024];
+        int count;
+        final Map<Integer, Integer> statuses = new HashMap<>();
+
+        Client(HttpClient http, String base, int[] ids, String[] batches, boolean conditional, Random random) {
+            this.http = http;
+            this.base = base;
+            this.ids = ids;
+            this.batches = batches;
+            this.conditional = conditional;
+            this.random = random;
+        }
+
+        Client loop(AtomicBoolean stop) throws Exception {
+            while (!stop.get()) {
+                String path = nextPath();
+                HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(30));
+                String etag = etags.get(path);
+                if (conditional && etag != null) {
+                    req.header("If-None-Match", etag);
+                }
+
+                long t0 = System.nanoTime();
+                HttpResponse<byte[]> res = http.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+                long elapsed = System.nanoTime() - t0;
+
+                res.headers().firstValue("ETag").ifPresent(tag -> etags.put(path, tag));
+                statuses.merge(res.statusCode(), 1, Integer::sum);
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = elapsed;
+            }
+            return this;
+        }
+
+        // hot set: a tenth of the students get most of the lookups, as portals poll the same accounts
+        private String nextPath() {
+            int id = ids[random.nextInt(10) < 8 ? random.nextInt(Math.max(1, ids.length / 10)) : random.nextInt(ids.length)];
+            return switch (random.nextInt(10)) {
+                case 0, 1, 2, 3 -> "/students/" + id + "/balance";
+                case 4, 5 -> "/students/" + id + "/report?months=12";
+                case 6 -> "/batches/" + URLEncoder.encode(batches[random.nextInt(batches.length)], StandardCharsets.UTF_8).replace("+", "%20")
+                        + "/report?months=12";
+                default -> "/students?limit=100&batch="
+                        + URLEncoder.encode(batches[random.nextInt(batches.length)], StandardCharsets.UTF_8);
+            };
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.StudentRecord;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-call cost of the DAO hot paths with one physical connection per call
+ * (the old Db.connect()) versus the pooled Db.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.ConnectionOverheadBench
+ */
+public class ConnectionOverheadBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 200);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 500);
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        String path = new File(dir, "bench.db").getPath();
+
+        Db.configure(path, 4);
+        Schema.init();
+        seed(new StudentDao());
+
+        System.out.printf("%-24s %14s %14s%n", "operation", "unpooled us", "pooled us");
+        for (String op : new String[]{"findAll", "getBalancesAsOf", "insertChargeIfMissing"}) {
+            Db.configure(path, 0);
+            double unpooled = measure(op);
+
+            Db.configure(path, 4);
+            double pooled = measure(op);
+
+            System.out.printf("%-24s %14.1f %14.1f%n", op, unpooled, pooled);
+        }
+
+        Db.shutdown();
+    }
+
+    private static void seed(StudentDao dao) {
+        List<StudentRecord> students = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            students.add(new StudentRecord(0, "B-" + i, "Student " + i, (50 + i % 5) + "th", null, null,
+                    YearMonth.now().minusMonths(12).toString() + "-01", 0.0));
+        }
+        dao.upsertMany(students);
+        dao.generateChargesUpToMonthForAllStudents(5000.0, YearMonth.now());
+    }
+
+    /**
+     * The single-row charge insert StudentDao used to issue once per
+     * (student, month) before generation became set-based.
+     */
+    private static void insertChargeIfMissing(int studentDbId, String chargeMonth, double amount) throws Exception {
+        String sql = """
+            INSERT OR IGNORE INTO tuition_charges (student_id, charge_month, amount, charge_type, note)
+            VALUES (?, ?, ?, 'TUITION', NULL)
+            """;
+        try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, studentDbId);
+            ps.setString(2, chargeMonth);
+            ps.setDouble(3, amount);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the mean microseconds per call after a warm-up pass.
+     */
+    private static double measure(String op) throws Exception {
+        StudentDao dao = new StudentDao();
+        String month = YearMonth.now().toString() + "-01";
+
+        long start = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                switch (op) {
+                    case "findAll" -> dao.findAll();
+                    case "getBalancesAsOf" -> dao.getBalancesAsOf(YearMonth.now());
+                    default -> insertChargeIfMissing(1 + (i % STUDENTS), month, 5000.0);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+    }
+}
@@ -0,0 +1,291 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.MonthBalanceTriggers;
+import com.marzuque.sms.db.Schema;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+
+/**
+ * Fills a database created by Schema.init() with synthetic but plausible
+ * data for load testing and benchmarks: students spread over batches whose
+ * billing starts are staggered across the history, monthly tuition, payments
+ * with methods and reference numbers, and sparse adjustments. The same seed
+ * always produces the same rows.
+ *
+ * Rows go in through batched prepared statements with the month balance
+ * triggers dropped; student_month_balance is rebuilt once at the end.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.DatasetGenerator \
+ *     -Dexec.args="path=data/sms.db students=100000 batches=20 months=48"
+ */
+public final class DatasetGenerator {
+
+    public static final double MONTHLY_FEE = 5000.0;
+
+    private static final String[] METHODS = {"CASH", "BKASH", "BANK", "CARD"};
+    private static final String[] FIRST_NAMES = {
+        "Rahim", "Karim", "Nusrat", "Farhana", "Tanvir", "Sadia", "Imran", "Ayesha", "Rafiq", "Mim",
+        "Sabbir", "Tahmina", "Arif", "Jannat", "Mahmud", "Sumaiya", "Hasan", "Nadia", "Fahim", "Riya"
+    };
+    private static final String[] LAST_NAMES = {
+        "Ahmed", "Hossain", "Islam", "Rahman", "Khan", "Chowdhury", "Akter", "Uddin", "Sarker", "Das"
+    };
+
+    // rows per executeBatch / per transaction while loading
+    private static final int BATCH_ROWS = 5_000;
+    private static final int COMMIT_ROWS = 200_000;
+
+    public static class Spec {
+
+        public int students = 10_000;
+        public int batches = 10;
+        public int months = 24;             // history depth; the oldest batch starts this many months back
+        public int paymentsPerMonth = 1;    // installments for a paid month
+        public double paidMonthRate = 0.9;  // share of charged months that see payments
+        public double adjustmentRate = 0.1; // share of students with one adjustment
+        public long seed = 42L;
+    }
+
+    public static class Result {
+
+        public final int students;
+        public final long charges;
+        public final long payments;
+        public final long adjustments;
+        public final long elapsedMs;
+
+        public Result(int students, long charges, long payments, long adjustments, long elapsedMs) {
+            this.students = students;
+            this.charges = charges;
+            this.payments = payments;
+            this.adjustments = adjustments;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    private DatasetGenerator() {
+    }
+
+    public static String batchName(int i) {
+        return (50 + i) + "th";
+    }
+
+    public static String studentId(int i) {
+        return "S-" + String.format("%07d", i);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String path = "data/sms.db";
+        Spec spec = new Spec();
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "path" -> path = value;
+                case "students" -> spec.students = Integer.parseInt(value);
+                case "batches" -> spec.batches = Integer.parseInt(value);
+                case "months" -> spec.months = Integer.parseInt(value);
+                case "paymentsPerMonth" -> spec.paymentsPerMonth = Integer.parseInt(value);
+                case "paidMonthRate" -> spec.paidMonthRate = Double.parseDouble(value);
+                case "adjustmentRate" -> spec.adjustmentRate = Double.parseDouble(value);
+                case "seed" -> spec.seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+
+        Db.configure(path, 4);
+        Schema.init();
+
+        Result r = generate(spec);
+        System.out.printf("Generated %d students, %d charges, %d payments, %d adjustments in %d ms%n",
+                r.students, r.charges, r.payments, r.adjustments, r.elapsedMs);
+
+        Db.shutdown();
+    }
+
+    /**
+     * Loads the dataset into the database Db is configured for. The students
+     * table must be empty; the generator never touches existing data.
+     */
+    public static Result generate(Spec spec) {
+        long started = System.nanoTime();
+        Random rnd = new Random(spec.seed);
+        YearMonth now = YearMonth.now();
+
+        try (Connection c = Db.connect(); Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM students")) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    throw new IllegalStateException("Database already has students: " + Db.getPath());
+                }
+            }
+
+            int synchronous;
+            try (ResultSet rs = st.executeQuery("PRAGMA synchronous")) {
+                synchronous = rs.next() ? rs.getInt(1) : 2;
+            }
+
+            st.execute("PRAGMA synchronous = OFF");
+            MonthBalanceTriggers.drop(st);
+            try {
+                c.setAutoCommit(false);
+                insertStudents(c, spec, rnd, now);
+                c.commit();
+                c.setAutoCommit(true);
+
+                // charges through the same set-based path the app uses, which also sets the watermarks
+                long charges = new StudentDao().generateChargesUpToMonthForAllStudents(MONTHLY_FEE, now).inserted;
+
+                c.setAutoCommit(false);
+                long payments = insertPayments(c, spec, rnd, now);
+                long adjustments = insertAdjustments(c, spec, rnd, now);
+                System.out.println(">>> Rebuilding student_month_balance");
+                MonthBalanceTriggers.rebuild(c);
+                c.commit();
+                c.setAutoCommit(true);
+
+                st.execute("ANALYZE");
+
+                long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+                return new Result(spec.students, charges, payments, adjustments, elapsedMs);
+            } catch (SQLException e) {
+                if (!c.getAutoCommit()) {
+                    c.rollback();
+                    c.setAutoCommit(true);
+                }
+                throw e;
+            } finally {
+                MonthBalanceTriggers.create(st);
+                st.execute("PRAGMA synchronous = " + synchronous);
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to generate dataset", e);
+        }
+    }
+
+    /**
+     * Batch b starts billing b/batches of the way through the history (the
+     * oldest batch at the very start), each student up to two months late.
+     */
+    private static YearMonth billingStart(Spec spec, Random rnd, YearMonth now, int batch) {
+        int span = Math.max(1, spec.months);
+        int offset = span - 1 - (int) ((long) batch * span / Math.max(1, spec.batches));
+        offset -= rnd.nextInt(3);
+        return now.minusMonths(Math.max(0, offset));
+    }
+
+    private static void insertStudents(Connection c, Spec spec, Random rnd, YearMonth now) throws SQLException {
+        String sql = """
+            INSERT INTO students (student_id, full_name, batch, cgpa, semester_cgpa, billing_start_month)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < spec.students; i++) {
+                int batch = i % spec.batches;
+                ps.setString(1, studentId(i));
+                ps.setString(2, FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[rnd.nextInt(LAST_NAMES.length)]);
+                ps.setString(3, batchName(batch));
+                ps.setDouble(4, 2.0 + rnd.nextInt(201) / 100.0);
+                ps.setDouble(5, 2.0 + rnd.nextInt(201) / 100.0);
+                ps.setString(6, billingStart(spec, rnd, now, batch).toString() + "-01");
+                ps.addBatch();
+                if (i % BATCH_ROWS == BATCH_ROWS - 1) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static long insertPayments(Connection c, Spec spec, Random rnd, YearMonth now) throws SQLException {
+        String sql = """
+            INSERT INTO payments (student_id, payment_date, amount, method, reference_no, note)
+            VALUES (?, ?, ?, ?, ?, NULL)
+            """;
+        String studentsSql = "SELECT id, substr(billing_start_month, 1, 7) FROM students ORDER BY id";
+
+        long rows = 0;
+        long reference = 0;
+        try (PreparedStatement ps = c.prepareStatement(sql);
+                Statement st = c.createStatement();
+                ResultSet rs = st.executeQuery(studentsSql)) {
+
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                YearMonth start = YearMonth.parse(rs.getString(2));
+
+                for (YearMonth ym = start; !ym.isAfter(now); ym = ym.plusMonths(1)) {
+                    if (rnd.nextDouble() >= spec.paidMonthRate) {
+                        continue;
+                    }
+                    for (int k = 0; k < spec.paymentsPerMonth; k++) {
+                        String method = METHODS[rnd.nextInt(METHODS.length)];
+                        ps.setInt(1, id);
+                        ps.setString(2, ym.atDay(1 + rnd.nextInt(28)).toString());
+                        ps.setDouble(3, Math.round(MONTHLY_FEE / spec.paymentsPerMonth * (0.8 + rnd.nextDouble() * 0.25)));
+                        ps.setString(4, method);
+                        ps.setString(5, "CASH".equals(method) ? null : String.format("TXN%010d", ++reference));
+                        ps.addBatch();
+
+                        if (++rows % BATCH_ROWS == 0) {
+                            ps.executeBatch();
+                        }
+                        if (rows % COMMIT_ROWS == 0) {
+                            c.commit();
+                            System.out.println(">>> payments: " + rows);
+                        }
+                    }
+                }
+            }
+            ps.executeBatch();
+        }
+        return rows;
+    }
+
+    private static long insertAdjustments(Connection c, Spec spec, Random rnd, YearMonth now) throws SQLException {
+        String sql = "INSERT INTO account_adjustments (student_id, adj_date, amount, note) VALUES (?, ?, ?, ?)";
+        String studentsSql = "SELECT id, substr(billing_start_month, 1, 7) FROM students ORDER BY id";
+
+        long rows = 0;
+        try (PreparedStatement ps = c.prepareStatement(sql);
+                Statement st = c.createStatement();
+                ResultSet rs = st.executeQuery(studentsSql)) {
+
+            while (rs.next()) {
+                if (rnd.nextDouble() >= spec.adjustmentRate) {
+                    continue;
+                }
+                YearMonth start = YearMonth.parse(rs.getString(2));
+                int span = (int) Math.max(1, start.until(now, ChronoUnit.MONTHS) + 1);
+                boolean waiver = rnd.nextBoolean();
+
+                ps.setInt(1, rs.getInt(1));
+                ps.setString(2, start.plusMonths(rnd.nextInt(span)).atDay(1 + rnd.nextInt(28)).toString());
+                ps.setDouble(3, waiver ? -(500 + rnd.nextInt(10) * 250) : 100 + rnd.nextInt(10) * 50);
+                ps.setString(4, waiver ? "Scholarship waiver" : "Late fee");
+                ps.addBatch();
+
+                if (++rows % BATCH_ROWS == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,86 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.LedgerWriter;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.DbProfile;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.Student;
+import com.marzuque.sms.model.StudentRecord;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * getBalancesAsOf and upsertMany under each DbProfile, on copies of one
+ * generated database.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.DbProfileBench -Dbench.students=20000
+ */
+public class DbProfileBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 20_000);
+    private static final int MONTHS = Integer.getInteger("bench.months", 24);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 10);
+    private static final int CHUNK = 1_000; // Excel import chunk size
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        File seed = new File(dir, "seed.db");
+
+        Db.configure(seed.getPath(), 4, DbProfile.DEFAULT);
+        Schema.init();
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = MONTHS;
+        DatasetGenerator.generate(spec);
+        Db.shutdown();
+
+        System.out.printf("%-12s %18s %18s %18s%n", "profile", "balances ms", "upsert new ms", "upsert update ms");
+        for (DbProfile profile : DbProfile.values()) {
+            File copy = new File(dir, profile.key + ".db");
+            Files.copy(seed.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Db.configure(copy.getPath(), 4, profile);
+
+            StudentDao dao = new StudentDao();
+            List<StudentRecord> existing = dao.findAll().stream().limit(CHUNK).map(Student::toRecord).toList();
+
+            dao.getBalancesAsOf(YearMonth.now()); // warm the page cache
+            long t0 = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                dao.getBalancesAsOf(YearMonth.now());
+            }
+            double balancesMs = (System.nanoTime() - t0) / 1e6 / ROUNDS;
+
+            long t1 = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                dao.upsertMany(newStudents(i));
+            }
+            double insertMs = (System.nanoTime() - t1) / 1e6 / ROUNDS;
+
+            long t2 = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                dao.upsertMany(existing);
+            }
+            double updateMs = (System.nanoTime() - t2) / 1e6 / ROUNDS;
+
+            System.out.printf("%-12s %18.1f %18.1f %18.1f%n", profile.key, balancesMs, insertMs, updateMs);
+
+            LedgerWriter.shutdownShared();
+            Db.shutdown();
+        }
+    }
+
+    private static List<StudentRecord> newStudents(int round) {
+        List<StudentRecord> rows = new ArrayList<>(CHUNK);
+        for (int i = 0; i < CHUNK; i++) {
+            rows.add(new StudentRecord(0, "NEW-" + round + "-" + i, "New Student " + i, "90th", 3.0, 3.0,
+                    YearMonth.now().toString() + "-01", 0.0));
+        }
+        return rows;
+    }
+}
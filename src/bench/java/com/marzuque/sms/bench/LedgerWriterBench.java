@@ -0,0 +1,69 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.LedgerWriter;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.Student;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bursts of adjustments from several clerks at once through the ledger
+ * writer, printing throughput and the writer's batch / commit metrics for
+ * each writer setting.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.LedgerWriterBench
+ */
+public class LedgerWriterBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 1_000);
+    private static final int WRITES = Integer.getInteger("bench.writes", 2_000);
+    private static final int[] CLERKS = {1, 4, 16};
+    private static final long[] DELAYS_MS = {0, 2};
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = 12;
+        DatasetGenerator.generate(spec);
+        List<Student> students = new StudentDao().findAll();
+
+        System.out.printf("%-8s %-9s %10s %12s%n", "clerks", "delay ms", "total ms", "writes/s");
+        for (long delay : DELAYS_MS) {
+            for (int clerks : CLERKS) {
+                LedgerWriter writer = new LedgerWriter(LedgerWriter.DEFAULT_BATCH_SIZE, delay);
+                StudentDao dao = new StudentDao(writer);
+                ExecutorService pool = Executors.newFixedThreadPool(clerks);
+
+                long started = System.nanoTime();
+                List<Future<?>> done = new ArrayList<>(WRITES);
+                for (int i = 0; i < WRITES; i++) {
+                    int id = students.get(i % students.size()).getId();
+                    done.add(pool.submit(() -> dao.addAdjustment(id, LocalDate.now(), 1.0, "bench")));
+                }
+                for (Future<?> f : done) {
+                    f.get();
+                }
+                double ms = (System.nanoTime() - started) / 1e6;
+
+                pool.shutdown();
+                writer.close();
+                System.out.printf("%-8d %-9d %10.0f %12.0f   %s%n", clerks, delay, ms, WRITES / ms * 1000, writer.stats());
+            }
+        }
+
+        Db.shutdown();
+    }
+}
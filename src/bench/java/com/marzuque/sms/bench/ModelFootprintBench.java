@@ -0,0 +1,106 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.model.Student;
+import com.marzuque.sms.model.StudentRecord;
+import javafx.beans.property.*;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Retained heap per roster row, measured with JOL: the old Student that
+ * created all eight properties in its constructor, the lazy Student as
+ * loaded (no property touched) and as shown in the table (the six column
+ * properties bound), and the StudentRecord used for import/export.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.ModelFootprintBench
+ */
+public class ModelFootprintBench {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 100_000);
+
+    public static void main(String[] args) {
+        System.out.println(ClassLayout.parseClass(Student.class).toPrintable());
+
+        System.out.printf("%-28s %14s %14s %12s%n", "layout", "bytes/row", "objects/row", "MB total");
+        report("eager properties (old)", i -> new EagerStudent(i, studentId(i), name(i), batch(i), 3.1, 3.4, "2025-01-01"));
+        report("lazy, unbound", ModelFootprintBench::student);
+        report("lazy, 6 columns bound", i -> {
+            Student s = student(i);
+            // what the table's cell value factories touch
+            s.studentIdProperty();
+            s.fullNameProperty();
+            s.batchProperty();
+            s.cgpaProperty();
+            s.semesterCgpaProperty();
+            s.currentBalanceProperty();
+            return s;
+        });
+        report("StudentRecord", i -> student(i).toRecord());
+        report("strings only (baseline)", i -> new String[]{studentId(i), name(i), batch(i), "2025-01-01"});
+    }
+
+    private static void report(String label, IntFunction<Object> row) {
+        List<Object> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(row.apply(i));
+        }
+
+        // leave out the array holding the rows, which is the same for every layout
+        Object[] array = rows.toArray();
+        GraphLayout graph = GraphLayout.parseInstance((Object) array);
+        long bytes = graph.totalSize() - GraphLayout.parseInstance((Object) new Object[ROWS]).totalSize();
+        long objects = graph.totalCount() - 1;
+
+        System.out.printf("%-28s %14.1f %14.1f %12.1f%n", label,
+                bytes / (double) ROWS, objects / (double) ROWS, bytes / 1e6);
+    }
+
+    private static Student student(int i) {
+        Student s = new Student(i, studentId(i), name(i), batch(i), 3.1, 3.4, "2025-01-01");
+        s.setCurrentBalance(i * 10.0);
+        return s;
+    }
+
+    private static String studentId(int i) {
+        return DatasetGenerator.studentId(i);
+    }
+
+    private static String name(int i) {
+        return "Student " + i;
+    }
+
+    private static String batch(int i) {
+        return DatasetGenerator.batchName(i % 20);
+    }
+
+    /**
+     * Student as it was before the properties became lazy.
+     */
+    static final class EagerStudent {
+
+        final IntegerProperty id = new SimpleIntegerProperty();
+        final StringProperty studentId = new SimpleStringProperty();
+        final StringProperty fullName = new SimpleStringProperty();
+        final StringProperty batch = new SimpleStringProperty();
+        final DoubleProperty cgpa = new SimpleDoubleProperty();
+        final DoubleProperty semesterCgpa = new SimpleDoubleProperty();
+        final StringProperty billingStartMonth = new SimpleStringProperty();
+        final DoubleProperty currentBalance = new SimpleDoubleProperty();
+
+        EagerStudent(int id, String studentId, String fullName, String batch,
+                double cgpa, double semesterCgpa, String billingStartMonth) {
+            this.id.set(id);
+            this.studentId.set(studentId);
+            this.fullName.set(fullName);
+            this.batch.set(batch);
+            this.cgpa.set(cgpa);
+            this.semesterCgpa.set(semesterCgpa);
+            this.billingStartMonth.set(billingStartMonth);
+            this.currentBalance.set(id * 10.0);
+        }
+    }
+}
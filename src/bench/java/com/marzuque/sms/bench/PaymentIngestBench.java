@@ -0,0 +1,90 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.bank.PaymentImporter;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.DbProfile;
+import com.marzuque.sms.db.Schema;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ingests a synthetic bank statement of bench.lines payment lines (a few of
+ * them for unknown students, so the rejects path is exercised) into a
+ * generated roster, then feeds the same file again, which must record
+ * nothing. Prints time and lines/s for both runs and checks the month
+ * balance table against the ledger afterwards. bench.bulk=true runs both
+ * under the bulk_load profile, as SmsCli import-payments --bulk does.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.PaymentIngestBench \
+ *     -Dbench.lines=1000000 -Dsms.payments.chunkSize=5000
+ */
+public class PaymentIngestBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 20_000);
+    private static final int LINES = Integer.getInteger("bench.lines", 1_000_000);
+    private static final boolean BULK = Boolean.getBoolean("bench.bulk");
+    private static final double UNKNOWN_RATE = 0.001;
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = 12;
+        DatasetGenerator.generate(spec);
+
+        File csv = new File(dir, "statement.csv");
+        writeStatement(csv);
+        System.out.printf("statement: %d lines, %.1f MB%n", LINES, csv.length() / 1e6);
+
+        StudentDao dao = new StudentDao();
+        PaymentImporter importer = new PaymentImporter(dao);
+        File rejects = PaymentImporter.rejectsFileFor(csv);
+
+        for (String run : new String[]{"first", "again"}) {
+            PaymentImporter.Result r = BULK
+                    ? Db.withProfile(DbProfile.BULK_LOAD, () -> importer.importFile(csv, rejects))
+                    : importer.importFile(csv, rejects);
+            System.out.printf("%-6s %8d ms %10.0f lines/s   inserted=%d duplicates=%d rejected=%d%n",
+                    run, r.elapsedMs, r.lines * 1000.0 / Math.max(1, r.elapsedMs),
+                    r.inserted, r.duplicates, r.rejected);
+        }
+
+        List<String> drift = dao.verifyMonthBalances(5);
+        System.out.println(drift.isEmpty() ? "month balances: consistent" : "month balances DRIFT: " + drift);
+
+        Db.shutdown();
+    }
+
+    private static void writeStatement(File csv) throws Exception {
+        Random rnd = new Random(7);
+        LocalDate first = LocalDate.now().withDayOfMonth(1).minusMonths(2);
+        try (BufferedWriter w = Files.newBufferedWriter(csv.toPath(), StandardCharsets.UTF_8)) {
+            w.write("Value Date,Reference,Student ID,Credit,Channel,Narration");
+            w.newLine();
+            for (int i = 0; i < LINES; i++) {
+                int student = rnd.nextDouble() < UNKNOWN_RATE ? STUDENTS + 1 + rnd.nextInt(1000) : rnd.nextInt(STUDENTS);
+                w.write(first.plusDays(rnd.nextInt(60)).toString());
+                w.write(",BNK");
+                w.write(String.format("%09d", i));
+                w.write(',');
+                w.write(DatasetGenerator.studentId(student));
+                w.write(",\"");
+                w.write(String.format("%,d", 500 + rnd.nextInt(5000)));
+                w.write(".00\",BANK,\"Tuition, via branch ");
+                w.write(Integer.toString(rnd.nextInt(40)));
+                w.write('"');
+                w.newLine();
+            }
+        }
+    }
+}
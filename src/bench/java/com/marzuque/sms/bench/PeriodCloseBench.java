@@ -0,0 +1,82 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.util.IntDoubleMap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Times the month balance check and rebuild on a generated roster with
+ * bench.months of history, then closes all but the last bench.open months
+ * and times them again: after the close both only read the open months.
+ * Also checks that closing leaves every balance as it was and that a
+ * back-dated adjustment is rejected.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.PeriodCloseBench \
+ *     -Dbench.students=50000 -Dbench.months=36 -Dbench.open=3
+ */
+public class PeriodCloseBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 50_000);
+    private static final int MONTHS = Integer.getInteger("bench.months", 36);
+    private static final int OPEN = Integer.getInteger("bench.open", 3);
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = MONTHS;
+        DatasetGenerator.Result data = DatasetGenerator.generate(spec);
+        System.out.printf("dataset: %d students, %d charges, %d payments, %d adjustments%n",
+                data.students, data.charges, data.payments, data.adjustments);
+
+        StudentDao dao = new StudentDao();
+        YearMonth now = YearMonth.now();
+        IntDoubleMap before = dao.getBalancesAsOf(now);
+        time("before close", dao);
+
+        StudentDao.PeriodCloseResult r = dao.closePeriod(now.minusMonths(OPEN));
+        System.out.printf("closed through %s: %d opening balances in %d ms%n", r.through, r.checkpoints, r.elapsedMs);
+        time("after close", dao);
+
+        IntDoubleMap after = dao.getBalancesAsOf(now);
+        int[] changed = {0};
+        before.forEach((id, balance) -> {
+            if (Math.abs(after.getOrDefault(id, 0) - balance) > 0.000001) {
+                changed[0]++;
+            }
+        });
+        System.out.println(changed[0] == 0 ? "balances unchanged by the close" : changed[0] + " balances CHANGED");
+
+        try {
+            dao.addAdjustment(1, r.through.atEndOfMonth(), 1, "back-dated");
+            System.out.println("back-dated adjustment was NOT rejected");
+        } catch (RuntimeException e) {
+            System.out.println("back-dated adjustment rejected");
+        }
+        dao.addAdjustment(1, LocalDate.now(), 1, "current");
+        List<String> drift = dao.verifyMonthBalances(5);
+        System.out.println(drift.isEmpty() ? "month balances: consistent" : "month balances DRIFT: " + drift);
+
+        Db.shutdown();
+    }
+
+    private static void time(String label, StudentDao dao) {
+        long started = System.nanoTime();
+        List<String> drift = dao.verifyMonthBalances(5);
+        long verified = System.nanoTime();
+        int rows = dao.rebuildMonthBalances();
+        long rebuilt = System.nanoTime();
+        System.out.printf("%-13s verify %5d ms (%s)   rebuild %5d ms (%d rows)%n", label,
+                (verified - started) / 1_000_000, drift.isEmpty() ? "consistent" : "DRIFT", (rebuilt - verified) / 1_000_000, rows);
+    }
+}
@@ -0,0 +1,142 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.bank.PaymentReconciler;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.Student;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reconciles a synthetic statement of bench.lines lines against a generated
+ * roster, then feeds it again (which must record nothing new). Most lines
+ * carry the student ID; the rest only a name and batch, some with a typo in
+ * the name, some for nobody on the roster. The generator's small name pool
+ * is widened with a made-up family name first, as most real names on a
+ * roster are (nearly) unique. Prints the load / match / write
+ * split, the outcome counts and the review reasons, and checks the month
+ * balance table against the ledger afterwards.
+ *
+ * Run with -Djava.util.concurrent.ForkJoinPool.common.parallelism=1 to see
+ * the matching time without parallelism.
+ *
+ * mvn -Pbench compile exec:java -Dbench.main=com.marzuque.sms.bench.ReconcileBench \
+ *     -Dbench.lines=100000 -Dbench.students=20000
+ */
+public class ReconcileBench {
+
+    private static final int STUDENTS = Integer.getInteger("bench.students", 20_000);
+    private static final int LINES = Integer.getInteger("bench.lines", 100_000);
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = STUDENTS;
+        spec.months = 12;
+        DatasetGenerator.generate(spec);
+        giveDistinctNames();
+
+        StudentDao dao = new StudentDao();
+        File csv = new File(dir, "statement.csv");
+        writeStatement(csv, dao.findAll());
+        System.out.printf("statement: %d lines, %.1f MB%n", LINES, csv.length() / 1e6);
+
+        PaymentReconciler reconciler = new PaymentReconciler(dao);
+        for (String run : new String[]{"first", "again"}) {
+            PaymentReconciler.Result r = reconciler.reconcile(csv, YearMonth.now(), false);
+            System.out.printf("%-6s %6d ms (load %d, match %d, write %d)   accepted=%d (id %d, name %d) "
+                            + "duplicates=%d queued=%d%n",
+                    run, r.elapsedMs(), r.loadMs, r.matchMs, r.writeMs, r.accepted(), r.acceptedById,
+                    r.acceptedByName, r.duplicates, r.queued);
+            r.reviewReasons.forEach((reason, n) -> System.out.printf("         %-30s %d%n", reason, n));
+        }
+
+        List<String> drift = dao.verifyMonthBalances(5);
+        System.out.println(drift.isEmpty() ? "month balances: consistent" : "month balances DRIFT: " + drift);
+
+        Db.shutdown();
+    }
+
+    private static void giveDistinctNames() throws Exception {
+        String[] syllables = {"ka", "ri", "mo", "sa", "lu", "ne", "ta", "bi", "do", "fa", "gu", "he", "jo", "pa", "ru", "zi"};
+        try (Connection c = Db.connect();
+             PreparedStatement ps = c.prepareStatement("UPDATE students SET full_name = full_name || ' ' || ? WHERE id = ?")) {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT id FROM students")) {
+                Random rnd = new Random(3);
+                while (rs.next()) {
+                    StringBuilder family = new StringBuilder();
+                    for (int i = 0; i < 3; i++) {
+                        family.append(syllables[rnd.nextInt(syllables.length)]);
+                    }
+                    family.setCharAt(0, Character.toUpperCase(family.charAt(0)));
+                    ps.setString(1, family.toString());
+                    ps.setInt(2, rs.getInt(1));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            c.commit();
+            c.setAutoCommit(true);
+        }
+    }
+
+    private static void writeStatement(File csv, List<Student> students) throws Exception {
+        Random rnd = new Random(11);
+        LocalDate first = LocalDate.now().withDayOfMonth(1).minusMonths(1);
+        try (BufferedWriter w = Files.newBufferedWriter(csv.toPath(), StandardCharsets.UTF_8)) {
+            w.write("Value Date,Reference,Student ID,Payer Name,Batch,Credit,Narration");
+            w.newLine();
+            for (int i = 0; i < LINES; i++) {
+                Student s = students.get(rnd.nextInt(students.size()));
+                int kind = rnd.nextInt(100);
+                String id = kind < 70 ? s.getStudentId() : "";
+                String name = kind < 70 ? "" : kind < 85 ? s.getFullName().toUpperCase()
+                        : kind < 97 ? typo(s.getFullName(), rnd) : "Walk-in Payer " + i;
+                String batch = kind < 70 ? "" : s.getBatch();
+
+                w.write(first.plusDays(rnd.nextInt(28)).toString());
+                w.write(",RCN");
+                w.write(String.format("%09d", i));
+                w.write(',');
+                w.write(id);
+                w.write(",\"");
+                w.write(name);
+                w.write("\",");
+                w.write(batch);
+                w.write(',');
+                w.write(Integer.toString(100 + rnd.nextInt(2000)));
+                w.write(",Tuition");
+                w.newLine();
+            }
+        }
+    }
+
+    // swaps two neighbouring letters, as a hurried teller would
+    private static String typo(String name, Random rnd) {
+        if (name.length() < 4) {
+            return name;
+        }
+        char[] c = name.toCharArray();
+        int i = 1 + rnd.nextInt(c.length - 2);
+        char t = c[i];
+        c[i] = c[i + 1];
+        c[i + 1] = t;
+        return new String(c);
+    }
+}
@@ -0,0 +1,170 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.MonthlySeries;
+import com.marzuque.sms.model.Student;
+import com.marzuque.sms.model.StudentRecord;
+import com.marzuque.sms.util.IntDoubleMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the StudentDao calls behind the main window and
+ * month-end. Runs headless against a fresh DatasetGenerator database; pass
+ * -prof gc (the default jmh.args of the bench profile) for allocation rates.
+ *
+ * mvn -Pbench compile exec:exec@jmh
+ * mvn -Pbench compile exec:exec@jmh -Djmh.args="StudentDaoBench -p students=100000 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class StudentDaoBench {
+
+    /**
+     * Rolls the current month back to uncharged before every invocation so
+     * generateChargesNewMonth measures a real month-end run rather than the
+     * watermark no-op. Kept in its own state so the other benchmarks do not
+     * pay for it.
+     */
+    @State(Scope.Benchmark)
+    public static class UnchargedMonth {
+
+        final YearMonth month = YearMonth.now();
+
+        @Setup(Level.Invocation)
+        public void uncharge(StudentDaoBench fixture) throws SQLException { // fixture: run after its trial setup
+            String first = month.toString() + "-01";
+            try (Connection c = Db.connect()) {
+                c.setAutoCommit(false);
+                try (PreparedStatement del = c.prepareStatement(
+                        "DELETE FROM tuition_charges WHERE charge_month = ?");
+                        PreparedStatement wm = c.prepareStatement(
+                                "UPDATE charge_watermarks SET last_charged_month = ? WHERE last_charged_month = ?")) {
+                    del.setString(1, first);
+                    del.executeUpdate();
+                    wm.setString(1, month.minusMonths(1).toString() + "-01");
+                    wm.setString(2, first);
+                    wm.executeUpdate();
+                    c.commit();
+                } finally {
+                    c.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    @Param("10000")
+    public int students;
+
+    @Param("10")
+    public int batches;
+
+    @Param("24")
+    public int months;
+
+    @Param("1")
+    public int paymentsPerMonth;
+
+    // rows per upsertMany call, matching the Excel import chunk size
+    @Param("1000")
+    public int upsertChunk;
+
+    private final StudentDao dao = new StudentDao();
+    private final YearMonth now = YearMonth.now();
+    private List<StudentRecord> upsertRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = students;
+        spec.batches = batches;
+        spec.months = months;
+        spec.paymentsPerMonth = paymentsPerMonth;
+        DatasetGenerator.generate(spec);
+
+        // existing rows unchanged, so every iteration takes the update path and the data stays put
+        List<Student> all = dao.findAll();
+        upsertRows = all.subList(0, Math.min(upsertChunk, all.size())).stream().map(Student::toRecord).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Db.shutdown();
+    }
+
+    @Benchmark
+    public List<Student> findAll() {
+        return dao.findAll();
+    }
+
+    @Benchmark
+    public IntDoubleMap getBalancesAsOf() {
+        return dao.getBalancesAsOf(now);
+    }
+
+    @Benchmark
+    public StudentDao.ImportResult upsertMany() {
+        return dao.upsertMany(upsertRows);
+    }
+
+    @Benchmark
+    public StudentDao.ChargeGenerationResult generateChargesNewMonth(UnchargedMonth uncharged) {
+        return dao.generateChargesUpToMonthForAllStudents(DatasetGenerator.MONTHLY_FEE, uncharged.month);
+    }
+
+    @Benchmark
+    public MonthlySeries buildStudentReportPreviousMonths() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(students);
+        return dao.buildStudentReportPreviousMonths(id, now, 11);
+    }
+
+    @Benchmark
+    public MonthlySeries buildBatchReportPreviousMonths() {
+        String batch = DatasetGenerator.batchName(ThreadLocalRandom.current().nextInt(batches));
+        return dao.buildBatchReportPreviousMonths(batch, now, 11);
+    }
+
+    /**
+     * Convenience entry point for running from an IDE.
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(StudentDaoBench.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
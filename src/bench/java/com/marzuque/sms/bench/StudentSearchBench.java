@@ -0,0 +1,125 @@
+package com.marzuque.sms.bench;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.dao.StudentQuery;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.model.Student;
+import com.marzuque.sms.util.StudentSearchIndex;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.YearMonth;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One search-box keystroke, three ways: the old FilteredList predicate that
+ * lower-cases every field of every row, the trigram StudentSearchIndex used
+ * for in-memory rosters, and the students_fts query the paged table issues
+ * (count plus the first page).
+ *
+ * Each invocation alternates between two unrelated queries so the index's
+ * narrowing of an extended query does not flatter it.
+ *
+ * mvn -Pbench compile exec:exec@jmh -Djmh.args="StudentSearchBench -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class StudentSearchBench {
+
+    @Param({"10000", "100000", "1000000"})
+    public int students;
+
+    @Param({"rahim", "s-00001"})
+    public String query;
+
+    // no query can contain this one, so the next keystroke is always a fresh search
+    private static final String OTHER_QUERY = "khan";
+    private static final int PAGE_SIZE = 200;
+
+    private final StudentDao dao = new StudentDao();
+    private final YearMonth now = YearMonth.now();
+
+    private ObservableList<Student> master;
+    private FilteredList<Student> filtered;
+    private final StudentSearchIndex index = new StudentSearchIndex();
+    private boolean flip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("sms-bench").toFile();
+        Db.configure(new File(dir, "bench.db").getPath(), 4);
+        Schema.init();
+
+        // roster only: one month of history, no payments or adjustments
+        DatasetGenerator.Spec spec = new DatasetGenerator.Spec();
+        spec.students = students;
+        spec.batches = 20;
+        spec.months = 1;
+        spec.paidMonthRate = 0;
+        spec.adjustmentRate = 0;
+        DatasetGenerator.generate(spec);
+
+        master = FXCollections.observableArrayList(dao.findAll());
+        filtered = new FilteredList<>(master, s -> true);
+        index.sync(master);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Db.shutdown();
+    }
+
+    private String nextQuery() {
+        flip = !flip;
+        return flip ? query : OTHER_QUERY;
+    }
+
+    @Benchmark
+    public int filteredListPredicate() {
+        String q = nextQuery().trim().toLowerCase();
+        filtered.setPredicate(s -> safe(s.getStudentId()).contains(q)
+                || safe(s.getFullName()).contains(q)
+                || safe(s.getBatch()).contains(q));
+        return filtered.size();
+    }
+
+    @Benchmark
+    public int trigramIndex() {
+        BitSet hits = index.search(nextQuery());
+        filtered.setPredicate(s -> hits == null || hits.get(s.getId()));
+        return filtered.size();
+    }
+
+    @Benchmark
+    public int fullTextFirstPage() {
+        StudentQuery q = new StudentQuery(null, nextQuery(), StudentQuery.Sort.RELEVANCE, false, true);
+        int n = dao.count(q);
+        return n + dao.findPage(q, null, 0, PAGE_SIZE, now).rows.size();
+    }
+
+    private static String safe(String v) {
+        return v == null ? "" : v.toLowerCase();
+    }
+}
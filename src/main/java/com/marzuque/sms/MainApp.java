@@ -1,24 +1,61 @@
 package com.marzuque.sms;
 
+import com.marzuque.sms.api.ApiServer;
+import com.marzuque.sms.cli.SmsCli;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
 import com.marzuque.sms.db.Schema;
 import com.marzuque.sms.ui.MainView;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+
 public class MainApp extends Application {
 
+    private MainView view;
+    private ApiServer api;
+
     @Override
     public void start(Stage stage) {
+        Db.configure("data/sms.db", 4);
         Schema.init(); // <-- MUST be before MainView loads students
 
-        Scene scene = new Scene(new MainView().create(), 1100, 650);
+        if (System.getProperty("sms.api.port") != null) {
+            startApi(); // optional JSON API alongside the desktop UI
+        }
+
+        view = new MainView();
+        Scene scene = new Scene(view.create(), 1100, 650);
         stage.setTitle("Student Management System");
         stage.setScene(scene);
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (api != null) {
+            api.close();
+        }
+        if (view != null) {
+            view.shutdown();
+        }
+        Db.shutdown();
+    }
+
+    private void startApi() {
+        try {
+            api = ApiServer.start(new StudentDao(), ApiServer.DEFAULT_HOST, ApiServer.DEFAULT_PORT);
+        } catch (IOException e) {
+            System.err.println("API not started: " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && SmsCli.isCommand(args[0])) {
+            System.exit(SmsCli.run(args)); // headless batch job, no FX toolkit
+        }
         launch(args);
     }
 }
@@ -0,0 +1,532 @@
+package com.marzuque.sms.api;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.dao.StudentQuery;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.model.MonthlySeries;
+import com.marzuque.sms.model.Student;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only JSON API over StudentDao for the finance and portal systems,
+ * on the JDK's built-in HTTP server with one virtual thread per request.
+ *
+ *   GET /students?batch=&q=&fullText=&sort=&desc=&limit=&cursor=&asOf=
+ *   GET /students/{id}/balance?asOf=YYYY-MM
+ *   GET /students/{id}/report?months=12&end=YYYY-MM
+ *   GET /batches/{batch}/report?months=12&end=YYYY-MM
+ *
+ * {id} is the student's db id (the "id" in /students). /students pages by
+ * keyset: pass the returned nextCursor back as cursor. Months default to
+ * the current month.
+ *
+ * Responses are cached by URL and carry an ETag, so a client sending
+ * If-None-Match gets 304 while the data is unchanged (see ResponseCache).
+ * At most maxConcurrent requests run at once; up to maxQueued more wait for
+ * a slot for queueTimeoutMs, and anything beyond gets 503 with Retry-After.
+ * Binds to localhost unless sms.api.host says otherwise.
+ */
+public final class ApiServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = Integer.getInteger("sms.api.port", 8085);
+    public static final String DEFAULT_HOST = System.getProperty("sms.api.host", "127.0.0.1");
+
+    private static final int MAX_CONCURRENT = Integer.getInteger("sms.api.maxConcurrent", 8);
+    private static final int MAX_QUEUED = Integer.getInteger("sms.api.maxQueued", 256);
+    private static final long QUEUE_TIMEOUT_MS = Long.getLong("sms.api.queueTimeoutMs", 2_000);
+    private static final int CACHE_ENTRIES = Integer.getInteger("sms.api.cacheEntries", 2_048);
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final int MAX_REPORT_MONTHS = 120;
+
+    static {
+        // headers and body go out as separate writes; with Nagle on, small responses wait ~40 ms for an ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final StudentDao dao;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("sms-api-", 0).factory());
+    private final Semaphore slots = new Semaphore(MAX_CONCURRENT);
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final DataVersion dataVersion;
+    private final ResponseCache cache = new ResponseCache(CACHE_ENTRIES);
+
+    // metrics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private ApiServer(StudentDao dao, InetSocketAddress address) throws IOException {
+        this.dao = dao;
+        this.dataVersion = new DataVersion(Db.getPath());
+        this.server = HttpServer.create(address, MAX_QUEUED);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts serving on host:port (port 0 picks a free one). Db must be
+     * configured and the schema initialized.
+     */
+    public static ApiServer start(StudentDao dao, String host, int port) throws IOException {
+        ApiServer api = new ApiServer(dao, new InetSocketAddress(host, port));
+        api.server.start();
+        System.err.println(">>> API listening on http://" + host + ":" + api.port());
+        return api;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for the running ones,
+     * and closes the data version watcher.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataVersion.close();
+    }
+
+    public Stats stats() {
+        return new Stats(requests.get(), cacheHits.get(), notModified.get(), rejected.get(), errors.get(),
+                MAX_CONCURRENT - slots.availablePermits(), waiting.get());
+    }
+
+    public static class Stats {
+
+        public final long requests;
+        public final long cacheHits;   // served without querying the database
+        public final long notModified; // 304s
+        public final long rejected;    // 503s: queue full or no slot in time
+        public final long errors;      // 5xx other than the 503s
+        public final int running;
+        public final int waiting;
+
+        public Stats(long requests, long cacheHits, long notModified, long rejected, long errors,
+                int running, int waiting) {
+            this.requests = requests;
+            this.cacheHits = cacheHits;
+            this.notModified = notModified;
+            this.rejected = rejected;
+            this.errors = errors;
+            this.running = running;
+            this.waiting = waiting;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + " cacheHits=" + cacheHits + " notModified=" + notModified
+                    + " rejected=" + rejected + " errors=" + errors + " running=" + running + " waiting=" + waiting;
+        }
+    }
+
+    // ---------- Request handling ----------
+    private void handle(HttpExchange ex) {
+        requests.incrementAndGet();
+        try (ex) {
+            String method = ex.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                ex.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(ex, 405, "Method not allowed");
+                return;
+            }
+
+            if (!acquireSlot()) {
+                rejected.incrementAndGet();
+                ex.getResponseHeaders().set("Retry-After", "1");
+                sendError(ex, 503, "Server busy");
+                return;
+            }
+            try {
+                serve(ex);
+            } finally {
+                slots.release();
+            }
+        } catch (Exception e) {
+            // client went away mid-response; nothing left to send
+        }
+    }
+
+    private boolean acquireSlot() {
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        if (waiting.incrementAndGet() > MAX_QUEUED) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            return slots.tryAcquire(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void serve(HttpExchange ex) throws IOException {
+        // month-relative defaults make the same URL mean something else next month
+        String key = YearMonth.now() + " " + ex.getRequestURI().getRawPath() + "?" + ex.getRequestURI().getRawQuery();
+
+        ResponseCache.Entry entry;
+        try {
+            long version = dataVersion.current();
+            entry = cache.get(key, version);
+            if (entry != null) {
+                cacheHits.incrementAndGet();
+            } else {
+                entry = cache.put(key, version, route(ex.getRequestURI().getRawPath(), ex.getRequestURI().getRawQuery()));
+            }
+        } catch (ApiException e) {
+            sendError(ex, e.status, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            System.err.println("API " + ex.getRequestURI() + " failed: " + e);
+            sendError(ex, 500, "Internal error");
+            return;
+        }
+
+        ex.getResponseHeaders().set("ETag", entry.etag);
+        ex.getResponseHeaders().set("Cache-Control", "no-cache"); // may store, must revalidate
+        if (matches(ex.getRequestHeaders().getFirst("If-None-Match"), entry.etag)) {
+            notModified.incrementAndGet();
+            ex.sendResponseHeaders(304, -1);
+            return;
+        }
+        send(ex, 200, entry.body);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) {
+                t = t.substring(2);
+            }
+            if (t.equals(etag) || t.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendError(HttpExchange ex, int status, String message) throws IOException {
+        send(ex, status, new Json().beginObject().field("error", message).endObject().toString()
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (ex.getRequestMethod().equals("HEAD")) {
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    // ---------- Routes ----------
+    private String route(String rawPath, String rawQuery) {
+        List<String> path = segments(rawPath);
+        Map<String, String> params = params(rawQuery);
+
+        if (path.size() == 1 && path.get(0).equals("students")) {
+            return students(params);
+        }
+        if (path.size() == 3 && path.get(0).equals("students")) {
+            int id = parseId(path.get(1));
+            switch (path.get(2)) {
+                case "balance" -> {
+                    return studentBalance(id, params);
+                }
+                case "report" -> {
+                    return studentReport(id, params);
+                }
+                default -> {
+                }
+            }
+        }
+        if (path.size() == 3 && path.get(0).equals("batches") && path.get(2).equals("report")) {
+            return batchReport(path.get(1), params);
+        }
+        throw new ApiException(404, "No such resource");
+    }
+
+    private String students(Map<String, String> params) {
+        StudentQuery q = new StudentQuery(params.get("batch"), params.get("q"), sort(params.get("sort")),
+                bool(params.get("desc")), bool(params.get("fullText")));
+        int limit = intParam(params, "limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Object[] after = params.containsKey("cursor") ? decodeCursor(params.get("cursor")) : null;
+        if (after != null && after.length != q.keyLength()) {
+            throw new ApiException(400, "Cursor does not match this sort");
+        }
+        YearMonth asOf = month(params, "asOf");
+
+        StudentDao.StudentPage page = dao.findPage(q, after, 0, limit, asOf);
+
+        Json json = new Json().beginObject().field("asOf", asOf.toString()).name("students").beginArray();
+        for (Student s : page.rows) {
+            student(json, s);
+        }
+        json.endArray();
+        json.field("nextCursor", page.rows.size() == limit ? encodeCursor(page.lastKey) : null);
+        return json.endObject().toString();
+    }
+
+    private String studentBalance(int id, Map<String, String> params) {
+        YearMonth asOf = month(params, "asOf");
+        Student s = dao.findById(id, asOf);
+        if (s == null) {
+            throw new ApiException(404, "No student with id " + id);
+        }
+        return new Json().beginObject()
+                .field("id", s.getId())
+                .field("studentId", s.getStudentId())
+                .field("asOf", asOf.toString())
+                .field("balance", s.getCurrentBalance())
+                .endObject().toString();
+    }
+
+    private String studentReport(int id, Map<String, String> params) {
+        YearMonth end = month(params, "end");
+        int months = reportMonths(params);
+        Student s = dao.findById(id, end);
+        if (s == null) {
+            throw new ApiException(404, "No student with id " + id);
+        }
+        MonthlySeries rows = dao.buildStudentReportPreviousMonths(id, end, months - 1);
+
+        Json json = new Json().beginObject().name("student");
+        student(json, s);
+        return series(json, rows).endObject().toString();
+    }
+
+    private String batchReport(String batch, Map<String, String> params) {
+        YearMonth end = month(params, "end");
+        int months = reportMonths(params);
+        // a typo must not read as a batch with nothing owed
+        if (batch.isBlank() || dao.count(new StudentQuery(batch, null, StudentQuery.Sort.BATCH_STUDENT_ID, false)) == 0) {
+            throw new ApiException(404, "No batch " + batch);
+        }
+        MonthlySeries rows = dao.buildBatchReportPreviousMonths(batch, end, months - 1);
+
+        Json json = new Json().beginObject().field("batch", batch);
+        return series(json, rows).endObject().toString();
+    }
+
+    private static void student(Json json, Student s) {
+        json.beginObject()
+                .field("id", s.getId())
+                .field("studentId", s.getStudentId())
+                .field("fullName", s.getFullName())
+                .field("batch", s.getBatch())
+                .field("cgpa", s.getCgpa())
+                .field("semesterCgpa", s.getSemesterCgpa())
+                .field("billingStartMonth", s.getBillingStartMonth())
+                .field("balance", s.getCurrentBalance())
+                .endObject();
+    }
+
+    private static Json series(Json json, MonthlySeries rows) {
+        json.name("months").beginArray();
+        for (int i = 0; i < rows.size(); i++) {
+            json.beginObject()
+                    .field("month", rows.month(i).toString())
+                    .field("charges", rows.charges(i))
+                    .field("adjustments", rows.adjustments(i))
+                    .field("payments", rows.payments(i))
+                    .field("netChange", rows.netChange(i))
+                    .field("endingBalance", rows.endingBalance(i))
+                    .endObject();
+        }
+        return json.endArray();
+    }
+
+    // ---------- Parameters ----------
+    private static final class ApiException extends RuntimeException {
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static List<String> segments(String rawPath) {
+        List<String> out = new ArrayList<>();
+        for (String seg : rawPath.split("/")) {
+            if (!seg.isEmpty()) {
+                out.add(URLDecoder.decode(seg.replace("+", "%2B"), StandardCharsets.UTF_8));
+            }
+        }
+        return out;
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> out = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return out;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            out.putIfAbsent(name, value);
+        }
+        return out;
+    }
+
+    private static int parseId(String seg) {
+        try {
+            return Integer.parseInt(seg);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "No student with id " + seg);
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name, int def) {
+        String v = params.get(name);
+        if (v == null || v.isEmpty()) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    private static int reportMonths(Map<String, String> params) {
+        int months = intParam(params, "months", 12);
+        if (months < 1 || months > MAX_REPORT_MONTHS) {
+            throw new ApiException(400, "months must be between 1 and " + MAX_REPORT_MONTHS);
+        }
+        return months;
+    }
+
+    private static YearMonth month(Map<String, String> params, String name) {
+        String v = params.get(name);
+        if (v == null || v.isEmpty()) {
+            return YearMonth.now();
+        }
+        try {
+            return YearMonth.parse(v.length() > 7 ? v.substring(0, 7) : v);
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, name + " must be YYYY-MM");
+        }
+    }
+
+    private static boolean bool(String v) {
+        return v != null && (v.isEmpty() || Boolean.parseBoolean(v) || v.equals("1"));
+    }
+
+    private static StudentQuery.Sort sort(String v) {
+        if (v == null || v.isEmpty()) {
+            return StudentQuery.Sort.BATCH_STUDENT_ID;
+        }
+        return switch (v.toLowerCase(Locale.ROOT)) {
+            case "batch" -> StudentQuery.Sort.BATCH_STUDENT_ID;
+            case "studentid", "student_id" -> StudentQuery.Sort.STUDENT_ID;
+            case "name", "fullname" -> StudentQuery.Sort.FULL_NAME;
+            case "cgpa" -> StudentQuery.Sort.CGPA;
+            case "semestercgpa", "semester_cgpa" -> StudentQuery.Sort.SEMESTER_CGPA;
+            case "relevance" -> StudentQuery.Sort.RELEVANCE;
+            default -> throw new ApiException(400, "Unknown sort: " + v);
+        };
+    }
+
+    /**
+     * A page's keyset position as an opaque URL-safe token: each key value
+     * tagged with its type (s string, l integer, d real, n null).
+     */
+    private static String encodeCursor(Object[] key) {
+        if (key == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                sb.append('\u001f');
+            }
+            Object k = key[i];
+            if (k == null) {
+                sb.append('n');
+            } else if (k instanceof Integer || k instanceof Long) {
+                sb.append('l').append(k);
+            } else if (k instanceof Number n) {
+                sb.append('d').append(n.doubleValue());
+            } else {
+                sb.append('s').append(k);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\u001f", -1);
+            Object[] key = new Object[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                String p = parts[i];
+                String v = p.substring(1);
+                key[i] = switch (p.charAt(0)) {
+                    case 'n' -> null;
+                    case 'l' -> Long.parseLong(v);
+                    case 'd' -> Double.parseDouble(v);
+                    case 's' -> v;
+                    default -> throw new IllegalArgumentException();
+                };
+            }
+            return key;
+        } catch (RuntimeException e) {
+            throw new ApiException(400, "Invalid cursor");
+        }
+    }
+}
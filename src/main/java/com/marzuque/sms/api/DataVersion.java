@@ -0,0 +1,48 @@
+package com.marzuque.sms.api;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLite's PRAGMA data_version on a connection of its own, outside the pool:
+ * it changes whenever any other connection commits, whether that is the
+ * ledger writer in this process or another process (the desktop app, a CLI
+ * import) on the same file. The watcher connection never writes.
+ */
+final class DataVersion implements AutoCloseable {
+
+    private final Connection connection;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    DataVersion(String dbPath) {
+        try {
+            this.connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open data version watcher", e);
+        }
+    }
+
+    long current() {
+        lock.lock();
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read data version", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // shutting down
+        }
+    }
+}
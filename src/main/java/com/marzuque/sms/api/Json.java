@@ -0,0 +1,122 @@
+package com.marzuque.sms.api;
+
+import java.math.BigDecimal;
+
+/**
+ * Minimal streaming JSON writer for the API responses: objects, arrays,
+ * strings and numbers, with the commas tracked per nesting level. Money is
+ * written as plain decimals (no exponent).
+ */
+final class Json {
+
+    private final StringBuilder sb = new StringBuilder(256);
+    private boolean needComma;
+
+    Json beginObject() {
+        comma();
+        sb.append('{');
+        needComma = false;
+        return this;
+    }
+
+    Json endObject() {
+        sb.append('}');
+        needComma = true;
+        return this;
+    }
+
+    Json beginArray() {
+        comma();
+        sb.append('[');
+        needComma = false;
+        return this;
+    }
+
+    Json endArray() {
+        sb.append(']');
+        needComma = true;
+        return this;
+    }
+
+    Json name(String name) {
+        comma();
+        string(name);
+        sb.append(':');
+        needComma = false;
+        return this;
+    }
+
+    Json value(String v) {
+        comma();
+        if (v == null) {
+            sb.append("null");
+        } else {
+            string(v);
+        }
+        needComma = true;
+        return this;
+    }
+
+    Json value(long v) {
+        comma();
+        sb.append(v);
+        needComma = true;
+        return this;
+    }
+
+    Json value(double v) {
+        comma();
+        if (Double.isFinite(v)) {
+            sb.append(BigDecimal.valueOf(v).stripTrailingZeros().toPlainString());
+        } else {
+            sb.append("null");
+        }
+        needComma = true;
+        return this;
+    }
+
+    Json field(String name, String v) {
+        return name(name).value(v);
+    }
+
+    Json field(String name, long v) {
+        return name(name).value(v);
+    }
+
+    Json field(String name, double v) {
+        return name(name).value(v);
+    }
+
+    private void comma() {
+        if (needComma) {
+            sb.append(',');
+        }
+    }
+
+    private void string(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
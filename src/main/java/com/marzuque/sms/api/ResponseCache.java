@@ -0,0 +1,71 @@
+package com.marzuque.sms.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered JSON bodies by request, each tagged with the database data
+ * version it was computed at and an ETag derived from its bytes. An entry
+ * is only served while the data version is unchanged; after a write it is
+ * recomputed, and if the body came out the same (the write touched other
+ * students) the ETag is too, so clients still get 304 Not Modified.
+ *
+ * LRU over a fixed number of entries; thread-safe.
+ */
+final class ResponseCache {
+
+    static final class Entry {
+
+        final long dataVersion;
+        final byte[] body;
+        final String etag;
+
+        Entry(long dataVersion, byte[] body) {
+            this.dataVersion = dataVersion;
+            this.body = body;
+            this.etag = etagOf(body);
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    ResponseCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The entry for key if it was computed at dataVersion, else null.
+     */
+    synchronized Entry get(String key, long dataVersion) {
+        Entry e = entries.get(key);
+        return e != null && e.dataVersion == dataVersion ? e : null;
+    }
+
+    synchronized Entry put(String key, long dataVersion, String json) {
+        Entry e = new Entry(dataVersion, json.getBytes(StandardCharsets.UTF_8));
+        entries.put(key, e);
+        return e;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.marzuque.sms.bank;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a CSV file line by line through a large buffered NIO channel
+ * reader, splitting each line into fields (RFC 4180 quoting: "a, b" and ""
+ * for a quote; a quoted field may span lines). Memory stays flat whatever
+ * the file size. A UTF-8 byte order mark is skipped.
+ */
+public final class BankCsvReader {
+
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    @FunctionalInterface
+    public interface LineHandler {
+
+        /**
+         * 'fields' is reused for the next line, so handlers must not keep
+         * it. 'raw' is the line as read (without the line break).
+         */
+        void line(long lineNo, String raw, List<String> fields) throws IOException;
+    }
+
+    private BankCsvReader() {
+    }
+
+    /**
+     * Calls the handler for every non-blank line, header included; returns
+     * the number of lines handed over.
+     */
+    public static long read(Path file, LineHandler handler) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)), BUFFER_CHARS)) {
+
+            List<String> fields = new ArrayList<>(8);
+            StringBuilder field = new StringBuilder(32);
+            long lineNo = 0;
+            long lines = 0;
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                long startLine = ++lineNo;
+                if (startLine == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1);
+                }
+
+                // a quote left open continues the field on the next physical line
+                String raw = line;
+                while (!split(raw, fields, field)) {
+                    String next = in.readLine();
+                    if (next == null) {
+                        break; // unterminated quote at EOF: keep what we have
+                    }
+                    lineNo++;
+                    raw = raw + "\n" + next;
+                }
+
+                if (raw.isBlank()) {
+                    continue;
+                }
+                lines++;
+                handler.line(startLine, raw, fields);
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Splits 'line' into 'fields'; false when it ends inside a quoted field.
+     */
+    static boolean split(String line, List<String> fields, StringBuilder field) {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+
+        for (int i = 0, n = line.length(); i < n; i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < n && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '"' && field.isEmpty()) {
+                quoted = true;
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return !quoted;
+    }
+}
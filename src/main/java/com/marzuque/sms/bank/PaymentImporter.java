@@ -0,0 +1,194 @@
+package com.marzuque.sms.bank;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.DbProfile;
+import com.marzuque.sms.model.PaymentRecord;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the payments of a bank statement CSV. Each line's student_id is
+ * resolved through an in-memory index of the roster; valid lines are
+ * inserted in chunks, one ledger writer batch (and transaction) per chunk,
+ * skipping references already on file so a statement can be fed again
+ * safely. Lines that cannot be recorded, including those dated in a
+ * closed period, go to a rejects file with the line number and reason in
+ * front of the original line.
+ *
+ * Under the BULK_LOAD profile the per-row month balance triggers on
+ * payments are dropped for the whole file, and every payment it added is
+ * applied to student_month_balance in one set-based pass at the end (or,
+ * if the process dies first, by Schema.init at the next start).
+ *
+ * Expected columns, found by header name (case-insensitive, any order):
+ * student_id, payment_date (YYYY-MM-DD or DD/MM/YYYY), amount, reference_no,
+ * and optionally method (default BANK) and note. Common aliases such as
+ * "date", "reference" or "narration" are accepted.
+ */
+public final class PaymentImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("sms.payments.chunkSize", 5_000);
+
+    public static class Result {
+
+        public final long lines;      // data lines, header excluded
+        public final long inserted;
+        public final long duplicates; // reference_no already recorded
+        public final long rejected;
+        public final long elapsedMs;
+        public final File rejectsFile; // null when nothing was rejected
+
+        public Result(long lines, long inserted, long duplicates, long rejected, long elapsedMs, File rejectsFile) {
+            this.lines = lines;
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.elapsedMs = elapsedMs;
+            this.rejectsFile = rejectsFile;
+        }
+    }
+
+    private final StudentDao dao;
+    private final int chunkSize;
+
+    public PaymentImporter(StudentDao dao) {
+        this(dao, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PaymentImporter(StudentDao dao, int chunkSize) {
+        this.dao = dao;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Default rejects file: next to the statement, "<name>.rejects.csv".
+     */
+    public static File rejectsFileFor(File csv) {
+        return new File(csv.getAbsoluteFile().getParentFile(), csv.getName() + ".rejects.csv");
+    }
+
+    public Result importFile(File csv, File rejectsFile) throws IOException {
+        long started = System.nanoTime();
+        Files.deleteIfExists(rejectsFile.toPath()); // left over from an earlier run of the same file
+        Run run = new Run(dao.studentIdIndex(), dao.firstOpenDate(), rejectsFile);
+        boolean bulk = Db.profile() == DbProfile.BULK_LOAD;
+        if (bulk) {
+            dao.startPaymentBulkLoad();
+        }
+        try {
+            BankCsvReader.read(csv.toPath(), run::line);
+            run.flush();
+        } finally {
+            try {
+                run.closeRejects();
+            } finally {
+                if (bulk) {
+                    dao.finishPaymentBulkLoad(); // also after a failure, for the chunks already committed
+                }
+            }
+        }
+        return new Result(run.lines, run.inserted, run.duplicates, run.rejected,
+                (System.nanoTime() - started) / 1_000_000, run.rejects == null ? null : rejectsFile);
+    }
+
+    private final class Run {
+
+        private final Map<String, Integer> students;
+        private final String firstOpenDate;
+        private final File rejectsFile;
+        private final List<PaymentRecord> chunk = new ArrayList<>(chunkSize);
+
+        private StatementColumns cols;
+
+        private BufferedWriter rejects;
+        long lines;
+        long inserted;
+        long duplicates;
+        long rejected;
+
+        Run(Map<String, Integer> students, String firstOpenDate, File rejectsFile) {
+            this.students = students;
+            this.firstOpenDate = firstOpenDate;
+            this.rejectsFile = rejectsFile;
+        }
+
+        void line(long lineNo, String raw, List<String> fields) throws IOException {
+            if (cols == null) {
+                cols = StatementColumns.of(raw, fields);
+                cols.requireColumns(false);
+                return;
+            }
+            lines++;
+
+            PaymentRecord p;
+            try {
+                p = parse(fields);
+            } catch (IllegalArgumentException e) {
+                reject(lineNo, raw, e.getMessage());
+                return;
+            }
+
+            chunk.add(p);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        /**
+         * The line as a payment; IllegalArgumentException(reason) if it
+         * cannot be recorded.
+         */
+        private PaymentRecord parse(List<String> fields) {
+            String studentId = StatementColumns.get(fields, cols.student);
+            if (studentId.isEmpty()) {
+                throw new IllegalArgumentException("missing student_id");
+            }
+            Integer id = students.get(studentId);
+            if (id == null) {
+                throw new IllegalArgumentException("unknown student_id");
+            }
+            String reference = cols.reference(fields);
+            double amount = cols.amount(fields);
+            String date = cols.date(fields);
+            if (date.compareTo(firstOpenDate) < 0) {
+                throw new IllegalArgumentException("payment_date in a closed period");
+            }
+            return new PaymentRecord(id, date, amount, cols.method(fields), reference, cols.note(fields));
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            StudentDao.PaymentBatchResult r = dao.insertPayments(chunk);
+            inserted += r.inserted;
+            duplicates += r.duplicates;
+            chunk.clear();
+        }
+
+        private void reject(long lineNo, String raw, String reason) throws IOException {
+            rejected++;
+            if (rejects == null) {
+                rejects = Files.newBufferedWriter(rejectsFile.toPath(), StandardCharsets.UTF_8);
+                rejects.write("line,reason," + cols.header);
+                rejects.newLine();
+            }
+            rejects.write(lineNo + "," + reason + "," + raw);
+            rejects.newLine();
+        }
+
+        void closeRejects() throws IOException {
+            if (rejects != null) {
+                rejects.close();
+            }
+        }
+    }
+}
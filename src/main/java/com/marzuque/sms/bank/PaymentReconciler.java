@@ -0,0 +1,373 @@
+package com.marzuque.sms.bank;
+
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.model.PaymentRecord;
+import com.marzuque.sms.model.PaymentReview;
+import com.marzuque.sms.model.Student;
+import com.marzuque.sms.util.IntDoubleMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Matches the lines of a bank statement to students with an outstanding
+ * balance and records the ones that fit, in one ledger transaction. The
+ * rest go to the payment_review queue with the reason and the closest
+ * student found.
+ *
+ * A line matches by student_id when it has a known one; failing that by
+ * name, narrowed to the line's batch when it has one: an exact (normalized)
+ * name that only one student has, or else the best trigram similarity of
+ * the name (and of a mistyped student_id, if any) when it scores at least
+ * sms.reconcile.minScore and leads the runner-up by sms.reconcile.minMargin.
+ * A matched payment is accepted while it fits within the student's balance
+ * as of the given month, taken in statement order, and is dated in an
+ * open period.
+ *
+ * The roster and balances are loaded once into arrays; matching runs in
+ * parallel on the common fork-join pool, and everything that touches the
+ * balances (statement order matters there) runs after it on one thread.
+ * References already recorded are skipped, so a statement can be fed again.
+ */
+public final class PaymentReconciler {
+
+    public static final double MIN_SCORE = Double.parseDouble(System.getProperty("sms.reconcile.minScore", "0.7"));
+    public static final double MIN_MARGIN = Double.parseDouble(System.getProperty("sms.reconcile.minMargin", "0.1"));
+
+    private static final double ID_WEIGHT = 0.3; // share of the fuzzy score from a mistyped student_id
+    private static final double CENT = 0.005;
+    private static final int MIN_LEAF_LINES = 256;
+
+    public enum MatchedBy {
+        STUDENT_ID, NAME
+    }
+
+    public static class Result {
+
+        public final long lines;           // data lines, header excluded
+        public final long acceptedById;
+        public final long acceptedByName;
+        public final double acceptedAmount;
+        public final long inserted;        // 0 on a dry run
+        public final long duplicates;      // reference_no already recorded or repeated in the statement
+        public final long queued;
+        public final Map<String, Integer> reviewReasons; // reason -> lines queued for it
+        public final long loadMs;
+        public final long matchMs;
+        public final long writeMs;
+        public final boolean dryRun;
+
+        Result(long lines, long acceptedById, long acceptedByName, double acceptedAmount, long inserted,
+                long duplicates, long queued, Map<String, Integer> reviewReasons, long loadMs, long matchMs,
+                long writeMs, boolean dryRun) {
+            this.lines = lines;
+            this.acceptedById = acceptedById;
+            this.acceptedByName = acceptedByName;
+            this.acceptedAmount = acceptedAmount;
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+            this.queued = queued;
+            this.reviewReasons = reviewReasons;
+            this.loadMs = loadMs;
+            this.matchMs = matchMs;
+            this.writeMs = writeMs;
+            this.dryRun = dryRun;
+        }
+
+        public long accepted() {
+            return acceptedById + acceptedByName;
+        }
+
+        public long elapsedMs() {
+            return loadMs + matchMs + writeMs;
+        }
+    }
+
+    private final StudentDao dao;
+
+    public PaymentReconciler(StudentDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Reconciles the statement against balances as of 'asOf'. A dry run
+     * matches and counts but writes nothing.
+     */
+    public Result reconcile(File csv, YearMonth asOf, boolean dryRun) throws IOException {
+        long started = System.nanoTime();
+
+        List<Student> students = dao.findAll();
+        StudentMatchIndex index = new StudentMatchIndex(students);
+        IntDoubleMap balances = dao.getBalancesAsOf(asOf);
+        double[] outstanding = new double[index.size];
+        for (int slot = 0; slot < index.size; slot++) {
+            outstanding[slot] = balances.getOrDefault(index.dbIds[slot], 0);
+        }
+        Line[] lines = read(csv);
+        long loaded = System.nanoTime();
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leaf = Math.max(MIN_LEAF_LINES, lines.length / (pool.getParallelism() * 4));
+        pool.invoke(new MatchTask(index, lines, 0, lines.length, leaf));
+
+        Set<String> references = new HashSet<>();
+        for (Line l : lines) {
+            if (l.reference != null) {
+                references.add(l.reference);
+            }
+        }
+        Set<String> recorded = dao.recordedReferences(references);
+        String firstOpenDate = dao.firstOpenDate();
+
+        // statement order from here on: earlier lines use up a balance first
+        String source = csv.getName();
+        List<PaymentRecord> accepted = new ArrayList<>();
+        List<PaymentReview> review = new ArrayList<>();
+        Map<String, Integer> reasons = new TreeMap<>();
+        Set<String> seen = new HashSet<>();
+        long byId = 0;
+        long byName = 0;
+        long duplicates = 0;
+        double amount = 0;
+
+        for (Line l : lines) {
+            if (l.reference != null && (recorded.contains(l.reference) || !seen.add(l.reference))) {
+                duplicates++;
+                continue;
+            }
+            String reason = l.error != null ? l.error : l.slot < 0 ? l.reason : null;
+            if (reason == null && l.date.compareTo(firstOpenDate) < 0) {
+                reason = "date in a closed period";
+            }
+            if (reason == null) {
+                double owed = outstanding[l.slot];
+                if (owed < CENT) {
+                    reason = "no outstanding balance";
+                } else if (l.amount > owed + CENT) {
+                    reason = "exceeds outstanding balance";
+                }
+            }
+            if (reason != null) {
+                int candidate = l.slot >= 0 ? l.slot : l.candidate;
+                review.add(new PaymentReview(source, l.lineNo, l.reference, l.date, l.amount, blankToNull(l.studentId),
+                        blankToNull(l.name), blankToNull(l.batch), reason,
+                        candidate < 0 ? null : index.dbIds[candidate], l.score, l.raw));
+                reasons.merge(reason, 1, Integer::sum);
+                continue;
+            }
+
+            outstanding[l.slot] -= l.amount;
+            accepted.add(new PaymentRecord(index.dbIds[l.slot], l.date, l.amount, l.method, l.reference, l.note));
+            amount += l.amount;
+            if (l.matchedBy == MatchedBy.STUDENT_ID) {
+                byId++;
+            } else {
+                byName++;
+            }
+        }
+        long matched = System.nanoTime();
+
+        long inserted = 0;
+        if (!dryRun && (!accepted.isEmpty() || !review.isEmpty())) {
+            StudentDao.ReconcileWriteResult w = dao.recordReconciliation(accepted, review);
+            inserted = w.inserted;
+            duplicates += w.duplicates;
+        }
+        long written = System.nanoTime();
+
+        return new Result(lines.length, byId, byName, amount, inserted, duplicates, review.size(), reasons,
+                (loaded - started) / 1_000_000, (matched - loaded) / 1_000_000, (written - matched) / 1_000_000,
+                dryRun);
+    }
+
+    private static Line[] read(File csv) throws IOException {
+        List<Line> lines = new ArrayList<>();
+        StatementColumns[] cols = new StatementColumns[1];
+
+        BankCsvReader.read(csv.toPath(), (lineNo, raw, fields) -> {
+            if (cols[0] == null) {
+                cols[0] = StatementColumns.of(raw, fields);
+                cols[0].requireColumns(true);
+                return;
+            }
+            lines.add(new Line(lineNo, raw, fields, cols[0]));
+        });
+        return lines.toArray(new Line[0]);
+    }
+
+    private static String blankToNull(String v) {
+        return v.isEmpty() ? null : v;
+    }
+
+    /**
+     * A statement line: the fields as read, then the match found for it.
+     */
+    private static final class Line {
+
+        final long lineNo;
+        final String raw;
+        final String studentId;
+        final String name;
+        final String batch;
+        final String reference;
+        final String method;
+        final String note;
+        String date;
+        Double amount;
+        String error; // why the line cannot be recorded whoever it belongs to
+
+        int slot = -1;      // matched student
+        MatchedBy matchedBy;
+        String reason;      // why it did not match
+        int candidate = -1; // closest student when it did not
+        double score;
+
+        Line(long lineNo, String raw, List<String> fields, StatementColumns cols) {
+            this.lineNo = lineNo;
+            this.raw = raw;
+            studentId = StatementColumns.get(fields, cols.student);
+            name = StatementColumns.get(fields, cols.name);
+            batch = StatementColumns.get(fields, cols.batch);
+            method = cols.method(fields);
+            note = cols.note(fields);
+
+            String ref = StatementColumns.get(fields, cols.reference);
+            reference = ref.isEmpty() ? null : ref;
+            try {
+                amount = cols.amount(fields);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            try {
+                date = cols.date(fields);
+            } catch (IllegalArgumentException e) {
+                error = error != null ? error : e.getMessage();
+            }
+            if (reference == null && error == null) {
+                error = "missing reference_no";
+            }
+        }
+
+        void matched(int slot, MatchedBy by, double score) {
+            this.slot = slot;
+            this.matchedBy = by;
+            this.score = score;
+        }
+
+        void unmatched(String reason, int candidate, double score) {
+            this.reason = reason;
+            this.candidate = candidate;
+            this.score = score;
+        }
+    }
+
+    private static final class MatchTask extends RecursiveAction {
+
+        private final StudentMatchIndex index;
+        private final Line[] lines;
+        private final int from;
+        private final int to;
+        private final int leaf;
+
+        MatchTask(StudentMatchIndex index, Line[] lines, int from, int to, int leaf) {
+            this.index = index;
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > leaf) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MatchTask(index, lines, from, mid, leaf), new MatchTask(index, lines, mid, to, leaf));
+                return;
+            }
+            StudentMatchIndex.Scratch scratch = new StudentMatchIndex.Scratch(index);
+            for (int i = from; i < to; i++) {
+                if (lines[i].error == null) {
+                    match(index, lines[i], scratch);
+                }
+            }
+        }
+    }
+
+    private static void match(StudentMatchIndex index, Line l, StudentMatchIndex.Scratch scratch) {
+        String id = StudentMatchIndex.normalize(l.studentId);
+        String name = StudentMatchIndex.normalize(l.name);
+        String batch = StudentMatchIndex.normalize(l.batch);
+
+        if (!id.isEmpty()) {
+            int slot = index.byStudentId(id);
+            if (slot >= 0) {
+                l.matched(slot, MatchedBy.STUDENT_ID, 1.0);
+                return;
+            }
+        }
+        if (name.isEmpty()) {
+            l.unmatched(id.isEmpty() ? "no student_id or name" : "unknown student_id", -1, 0);
+            return;
+        }
+
+        int[] range = index.batchRange(batch);
+        if (range == null) {
+            l.unmatched("unknown batch", -1, 0);
+            return;
+        }
+
+        int only = -1;
+        int sameName = 0;
+        for (int slot : index.byName(name)) {
+            if (slot >= range[0] && slot < range[1]) {
+                only = slot;
+                sameName++;
+            }
+        }
+        if (sameName == 1) {
+            l.matched(only, MatchedBy.NAME, 1.0);
+            return;
+        }
+        if (sameName > 1 && id.isEmpty()) {
+            l.unmatched("ambiguous name", only, 1.0); // only a student_id could tell them apart
+            return;
+        }
+
+        int[] queryGrams = index.countShared(name, id, range, scratch);
+        int best = -1;
+        double bestScore = 0;
+        double secondScore = 0;
+        for (int i = 0; i < scratch.touchedCount; i++) {
+            int slot = scratch.touched[i];
+            double score = index.nameSimilarity(slot, scratch.nameShared[slot], queryGrams[0]);
+            if (!id.isEmpty()) {
+                score = (1 - ID_WEIGHT) * score + ID_WEIGHT * index.idSimilarity(slot, scratch.idShared[slot], queryGrams[1]);
+            }
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = slot;
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+        scratch.clear();
+
+        if (best >= 0 && bestScore >= MIN_SCORE && bestScore - secondScore >= MIN_MARGIN) {
+            l.matched(best, MatchedBy.NAME, bestScore);
+        } else if (best >= 0 && bestScore >= MIN_SCORE) {
+            l.unmatched("ambiguous name", best, bestScore);
+        } else {
+            l.unmatched("no close name match", best, bestScore);
+        }
+    }
+}
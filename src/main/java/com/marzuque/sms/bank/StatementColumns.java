@@ -0,0 +1,132 @@
+package com.marzuque.sms.bank;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Where the fields of a bank statement CSV are, found by header name
+ * (case-insensitive, any order, common bank aliases accepted), and the
+ * parsing shared by the importer and the reconciler. The field getters
+ * throw IllegalArgumentException(reason) for a value that cannot be
+ * recorded.
+ */
+final class StatementColumns {
+
+    private static final String DEFAULT_METHOD = "BANK";
+
+    final String header;
+    int student = -1;
+    int name = -1;
+    int batch = -1;
+    int date = -1;
+    int amount = -1;
+    int reference = -1;
+    int method = -1;
+    int note = -1;
+
+    private StatementColumns(String header) {
+        this.header = header;
+    }
+
+    static StatementColumns of(String raw, List<String> fields) {
+        StatementColumns cols = new StatementColumns(raw);
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase(Locale.ROOT).replace(' ', '_')) {
+                case "student_id", "studentid", "student" -> cols.student = i;
+                case "name", "full_name", "student_name", "payer", "payer_name" -> cols.name = i;
+                case "batch" -> cols.batch = i;
+                case "payment_date", "date", "value_date", "txn_date" -> cols.date = i;
+                case "amount", "credit", "credit_amount" -> cols.amount = i;
+                case "reference_no", "reference", "ref", "ref_no", "txn_id", "transaction_id" -> cols.reference = i;
+                case "method", "channel" -> cols.method = i;
+                case "note", "narration", "description", "remarks" -> cols.note = i;
+                default -> {
+                }
+            }
+        }
+        return cols;
+    }
+
+    /**
+     * IllegalArgumentException naming the columns the header lacks: the
+     * date, amount and reference always, plus student_id or (when
+     * 'nameWillDo') a name.
+     */
+    void requireColumns(boolean nameWillDo) {
+        List<String> missing = new ArrayList<>();
+        if (student < 0 && (!nameWillDo || name < 0)) {
+            missing.add(nameWillDo ? "student_id or name" : "student_id");
+        }
+        if (date < 0) {
+            missing.add("payment_date");
+        }
+        if (amount < 0) {
+            missing.add("amount");
+        }
+        if (reference < 0) {
+            missing.add("reference_no");
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Not a payment statement: no " + String.join(", ", missing)
+                    + " column in header: " + header);
+        }
+    }
+
+    String reference(List<String> fields) {
+        String v = get(fields, reference);
+        if (v.isEmpty()) {
+            throw new IllegalArgumentException("missing reference_no");
+        }
+        return v;
+    }
+
+    double amount(List<String> fields) {
+        double v;
+        try {
+            v = Double.parseDouble(get(fields, amount).replace(",", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad amount");
+        }
+        if (!(v > 0) || Double.isInfinite(v)) {
+            throw new IllegalArgumentException("amount must be positive");
+        }
+        return v;
+    }
+
+    /**
+     * 'YYYY-MM-DD' (optionally followed by a time) or 'DD/MM/YYYY', as
+     * 'YYYY-MM-DD'.
+     */
+    String date(List<String> fields) {
+        String v = get(fields, date);
+        try {
+            if (v.length() >= 10 && v.charAt(2) == '/' && v.charAt(5) == '/') {
+                return LocalDate.of(Integer.parseInt(v.substring(6, 10)), Integer.parseInt(v.substring(3, 5)),
+                        Integer.parseInt(v.substring(0, 2))).toString();
+            }
+            return LocalDate.parse(v.length() > 10 ? v.substring(0, 10) : v).toString();
+        } catch (DateTimeException | NumberFormatException e) {
+            throw new IllegalArgumentException("bad payment_date");
+        }
+    }
+
+    String method(List<String> fields) {
+        String v = get(fields, method);
+        return v.isEmpty() ? DEFAULT_METHOD : v.toUpperCase(Locale.ROOT);
+    }
+
+    String note(List<String> fields) {
+        String v = get(fields, note);
+        return v.isEmpty() ? null : v;
+    }
+
+    /**
+     * The trimmed field, "" when the column is absent or the line short.
+     */
+    static String get(List<String> fields, int col) {
+        return col < 0 || col >= fields.size() ? "" : fields.get(col).trim();
+    }
+}
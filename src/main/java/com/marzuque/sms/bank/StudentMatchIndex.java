@@ -0,0 +1,252 @@
+package com.marzuque.sms.bank;
+
+import com.marzuque.sms.model.Student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only lookup structures over a roster snapshot for matching statement
+ * lines to students: hash indexes on the normalized student ID and full
+ * name, and trigram posting lists over both for fuzzy matches. Students are
+ * addressed by slot; slots are ordered by batch, so a batch is a slot range
+ * and a fuzzy lookup within one only walks that part of each posting list.
+ *
+ * Built once, then safe to query from any number of threads; each thread
+ * brings its own {@link Scratch}.
+ */
+final class StudentMatchIndex {
+
+    private static final int[] NONE = new int[0];
+
+    final int size;
+    final int[] dbIds;
+    final String[] batches; // normalized
+
+    private final Map<String, int[]> batchRanges = new HashMap<>(); // normalized batch -> {from, to}
+    private final Map<String, Integer> slotByStudentId = new HashMap<>();
+    private final Map<String, int[]> slotsByName = new HashMap<>();
+    private final Map<Long, int[]> nameGrams;
+    private final Map<Long, int[]> idGrams;
+    private final int[] nameGramCounts;
+    private final int[] idGramCounts;
+
+    StudentMatchIndex(List<Student> students) {
+        size = students.size();
+        dbIds = new int[size];
+        batches = new String[size];
+        nameGramCounts = new int[size];
+        idGramCounts = new int[size];
+
+        List<Student> byBatch = new ArrayList<>(students);
+        byBatch.sort(Comparator.comparing((Student s) -> normalize(s.getBatch())));
+
+        Map<String, IntList> byName = new HashMap<>();
+        Map<Long, IntList> names = new HashMap<>();
+        Map<Long, IntList> ids = new HashMap<>();
+        for (int slot = 0; slot < size; slot++) {
+            Student s = byBatch.get(slot);
+            dbIds[slot] = s.getId();
+            batches[slot] = normalize(s.getBatch());
+            int[] range = batchRanges.get(batches[slot]);
+            if (range == null) {
+                batchRanges.put(batches[slot], new int[]{slot, slot + 1});
+            } else {
+                range[1] = slot + 1;
+            }
+
+            String id = normalize(s.getStudentId());
+            String name = normalize(s.getFullName());
+            slotByStudentId.put(id, slot);
+            byName.computeIfAbsent(name, k -> new IntList()).add(slot);
+            nameGramCounts[slot] = post(names, name, slot);
+            idGramCounts[slot] = post(ids, id, slot);
+        }
+
+        byName.forEach((k, v) -> slotsByName.put(k, v.toArray()));
+        nameGrams = freeze(names);
+        idGrams = freeze(ids);
+    }
+
+    /**
+     * Lower case, anything but letters and digits as a single space, trimmed:
+     * "Md. Rahim  KHAN" and "md rahim khan" are the same name.
+     */
+    static String normalize(String v) {
+        if (v == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(v.length());
+        boolean space = false;
+        for (int i = 0; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                if (space && !sb.isEmpty()) {
+                    sb.append(' ');
+                }
+                sb.append(Character.toLowerCase(ch));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Slot of the (normalized) student ID, or -1.
+     */
+    int byStudentId(String normalizedId) {
+        Integer slot = slotByStudentId.get(normalizedId);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Slots whose normalized full name is exactly this one.
+     */
+    int[] byName(String normalizedName) {
+        return slotsByName.getOrDefault(normalizedName, NONE);
+    }
+
+    /**
+     * The slots {from, to} of the (normalized) batch, all slots for "", or
+     * null for a batch nobody is in.
+     */
+    int[] batchRange(String normalizedBatch) {
+        return normalizedBatch.isEmpty() ? new int[]{0, size} : batchRanges.get(normalizedBatch);
+    }
+
+    /**
+     * Adds the trigrams 'name' and 'id' share with each student in the
+     * slot range into the scratch counters (either may be ""), and returns
+     * the query's own trigram counts as {name, id}.
+     */
+    int[] countShared(String name, String id, int[] range, Scratch scratch) {
+        return new int[]{
+            count(nameGrams, name, range, scratch.nameShared, scratch),
+            count(idGrams, id, range, scratch.idShared, scratch)
+        };
+    }
+
+    /**
+     * Dice coefficient of the query's and the student's trigram sets.
+     */
+    double nameSimilarity(int slot, int shared, int queryGrams) {
+        return dice(shared, queryGrams, nameGramCounts[slot]);
+    }
+
+    double idSimilarity(int slot, int shared, int queryGrams) {
+        return dice(shared, queryGrams, idGramCounts[slot]);
+    }
+
+    private static double dice(int shared, int a, int b) {
+        return a + b == 0 ? 0 : 2.0 * shared / (a + b);
+    }
+
+    private static int count(Map<Long, int[]> postings, String text, int[] range, int[] shared, Scratch scratch) {
+        long[] grams = trigrams(text);
+        for (long g : grams) {
+            int[] slots = postings.get(g);
+            if (slots == null) {
+                continue;
+            }
+            // posting lists are in slot order
+            int i = range[0] == 0 ? 0 : Arrays.binarySearch(slots, range[0]);
+            for (i = i < 0 ? -i - 1 : i; i < slots.length && slots[i] < range[1]; i++) {
+                int slot = slots[i];
+                if (scratch.nameShared[slot] == 0 && scratch.idShared[slot] == 0) {
+                    scratch.touch(slot);
+                }
+                shared[slot]++;
+            }
+        }
+        return grams.length;
+    }
+
+    private static int post(Map<Long, IntList> postings, String text, int slot) {
+        long[] grams = trigrams(text);
+        for (long g : grams) {
+            postings.computeIfAbsent(g, k -> new IntList()).add(slot);
+        }
+        return grams.length;
+    }
+
+    private static Map<Long, int[]> freeze(Map<Long, IntList> postings) {
+        Map<Long, int[]> out = new HashMap<>(postings.size() * 2);
+        postings.forEach((k, v) -> out.put(k, v.toArray()));
+        return out;
+    }
+
+    /**
+     * Distinct trigrams of " text ", so short names and word edges count.
+     */
+    private static long[] trigrams(String text) {
+        if (text.isEmpty()) {
+            return new long[0];
+        }
+        String t = " " + text + " ";
+        long[] grams = new long[t.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) t.charAt(i) << 32) | ((long) t.charAt(i + 1) << 16) | t.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int n = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[n++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, n);
+    }
+
+    /**
+     * Per-thread shared-trigram counters, one per slot, plus the list of
+     * slots touched by the current query so clearing costs only those.
+     */
+    static final class Scratch {
+
+        final int[] nameShared;
+        final int[] idShared;
+        final int[] touched;
+        int touchedCount;
+
+        Scratch(StudentMatchIndex index) {
+            nameShared = new int[index.size];
+            idShared = new int[index.size];
+            touched = new int[index.size];
+        }
+
+        private void touch(int slot) {
+            touched[touchedCount++] = slot;
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                nameShared[touched[i]] = 0;
+                idShared[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    private static final class IntList {
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.marzuque.sms.cli;
+
+import com.marzuque.sms.api.ApiServer;
+import com.marzuque.sms.bank.PaymentImporter;
+import com.marzuque.sms.bank.PaymentReconciler;
+import com.marzuque.sms.dao.LedgerWriter;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.DbProfile;
+import com.marzuque.sms.db.Schema;
+import com.marzuque.sms.excel.AgingXlsxWriter;
+import com.marzuque.sms.excel.ReportXlsxWriter;
+import com.marzuque.sms.excel.StudentXlsxReader;
+import com.marzuque.sms.excel.StudentXlsxWriter;
+import com.marzuque.sms.model.MonthlySeries;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless entry point for the month-end jobs, so cron can run them without
+ * starting the JavaFX toolkit: every command goes straight to StudentDao and
+ * the excel writers. Status lines go to stderr; stdout only carries data
+ * (the balances CSV when no --out is given).
+ *
+ *   java -cp <classpath> com.marzuque.sms.cli.SmsCli balances --as-of 2025-06
+ *   mvn -q compile exec:java -Dexec.mainClass=com.marzuque.sms.cli.SmsCli \
+ *       -Dexec.args="generate-charges --up-to 2025-06"
+ *
+ * MainApp forwards to this class when its first argument is a command.
+ * Exit status: 0 done, 1 failed (or some import rows failed), 2 bad usage.
+ */
+public final class SmsCli {
+
+    private static final String DEFAULT_DB = "data/sms.db";
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    private static final String USAGE = """
+            Usage: SmsCli <command> [--db data/sms.db] [options]
+
+              generate-charges     [--up-to YYYY-MM] [--fee 5000]
+              import-xlsx          --file roster.xlsx [--bulk]
+              import-payments      --file statement.csv [--rejects statement.csv.rejects.csv] [--bulk]
+              reconcile            --file statement.csv [--as-of YYYY-MM] [--dry-run]
+              export-students      --out students.xlsx [--as-of YYYY-MM]
+              export-batch-report  --batch 50th [--months 12] [--end YYYY-MM] [--out report.xlsx]
+              export-aging         --out aging.xlsx [--as-of YYYY-MM-DD]
+              balances             [--as-of YYYY-MM] [--out balances.csv]
+              close-period         --through YYYY-MM
+              serve                [--host 127.0.0.1] [--port 8085]
+
+            Months default to the current month. --bulk imports under the
+            bulk_load database profile (exclusive lock, no sync). reconcile
+            matches lines by student_id or name and queues the rest for
+            review (see PaymentReconciler). export-aging defaults to
+            today. close-period freezes every month through the given one
+            (see PeriodClose); it cannot be undone. serve runs
+            the JSON API (see ApiServer) until the process is stopped.
+            """;
+
+    private static final Set<String> COMMANDS = Set.of(
+            "generate-charges", "import-xlsx", "import-payments", "reconcile", "export-students", "export-batch-report", "export-aging",
+            "balances", "close-period", "serve");
+
+    private SmsCli() {
+    }
+
+    public static boolean isCommand(String arg) {
+        return COMMANDS.contains(arg);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs one command and returns the exit status.
+     */
+    public static int run(String[] args) {
+        if (args.length == 0 || !isCommand(args[0])) {
+            System.err.print(USAGE);
+            return 2;
+        }
+
+        Options opts;
+        try {
+            opts = Options.parse(args);
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        }
+
+        try {
+            Db.configure(opts.get("db", DEFAULT_DB), 4);
+            Schema.init();
+
+            StudentDao dao = new StudentDao();
+            return switch (args[0]) {
+                case "generate-charges" -> generateCharges(dao, opts);
+                case "import-xlsx" -> importXlsx(dao, opts);
+                case "import-payments" -> importPayments(dao, opts);
+                case "reconcile" -> reconcile(dao, opts);
+                case "export-students" -> exportStudents(dao, opts);
+                case "export-batch-report" -> exportBatchReport(dao, opts);
+                case "export-aging" -> exportAging(dao, opts);
+                case "close-period" -> closePeriod(dao, opts);
+                case "serve" -> serve(dao, opts);
+                default -> balances(dao, opts);
+            };
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        } catch (Exception e) {
+            System.err.println(args[0] + " failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            LedgerWriter.shutdownShared();
+            Db.shutdown();
+        }
+    }
+
+    // ---------- Commands ----------
+    private static int generateCharges(StudentDao dao, Options opts) {
+        YearMonth upTo = opts.month("up-to");
+        double fee = opts.decimal("fee", StudentDao.MONTHLY_TUITION_FEE);
+        opts.checkAllUsed();
+
+        StudentDao.ChargeGenerationResult res = dao.generateChargesUpToMonthForAllStudents(fee, upTo);
+        System.err.println("Generated " + res.inserted + " charges up to " + upTo + " in " + res.elapsedMs + " ms");
+        return 0;
+    }
+
+    private static int importXlsx(StudentDao dao, Options opts) throws Exception {
+        File file = new File(opts.require("file"));
+        boolean bulk = opts.flag("bulk");
+        opts.checkAllUsed();
+        if (!file.isFile()) {
+            throw new UsageException("No such file: " + file);
+        }
+
+        int[] totals = new int[2]; // processed, failed
+        Callable<StudentXlsxReader.ReadResult> work = () ->
+                StudentXlsxReader.read(file, IMPORT_CHUNK_SIZE, chunk -> {
+                    StudentDao.ImportResult r = dao.upsertMany(chunk);
+                    totals[0] += r.processed;
+                    totals[1] += r.failed;
+                });
+        StudentXlsxReader.ReadResult read = bulk ? Db.withProfile(DbProfile.BULK_LOAD, work) : work.call();
+
+        System.err.println("Imported " + totals[0] + " students from " + file.getName()
+                + " (failed: " + totals[1] + ", skipped rows: " + read.rowsSkipped + ")");
+        return totals[1] == 0 ? 0 : 1;
+    }
+
+    private static int importPayments(StudentDao dao, Options opts) throws Exception {
+        File file = new File(opts.require("file"));
+        String rejectsPath = opts.get("rejects", null);
+        boolean bulk = opts.flag("bulk");
+        opts.checkAllUsed();
+        if (!file.isFile()) {
+            throw new UsageException("No such file: " + file);
+        }
+
+        File rejects = rejectsPath == null ? PaymentImporter.rejectsFileFor(file) : new File(rejectsPath);
+        Callable<PaymentImporter.Result> work = () -> new PaymentImporter(dao).importFile(file, rejects);
+        PaymentImporter.Result r = bulk ? Db.withProfile(DbProfile.BULK_LOAD, work) : work.call();
+        System.err.println("Recorded " + r.inserted + " of " + r.lines + " payments from " + file.getName()
+                + " in " + r.elapsedMs + " ms (already recorded: " + r.duplicates + ", rejected: " + r.rejected + ")");
+        if (r.rejectsFile != null) {
+            System.err.println("Rejected lines: " + r.rejectsFile.getAbsolutePath());
+        }
+        return r.rejected == 0 ? 0 : 1;
+    }
+
+    private static int reconcile(StudentDao dao, Options opts) throws Exception {
+        File file = new File(opts.require("file"));
+        YearMonth asOf = opts.month("as-of");
+        boolean dryRun = opts.flag("dry-run");
+        opts.checkAllUsed();
+        if (!file.isFile()) {
+            throw new UsageException("No such file: " + file);
+        }
+
+        PaymentReconciler.Result r = new PaymentReconciler(dao).reconcile(file, asOf, dryRun);
+        System.err.println((dryRun ? "Dry run: reconciled " : "Reconciled ") + r.lines + " lines from " + file.getName()
+                + " against balances as of " + asOf + " in " + r.elapsedMs() + " ms (load " + r.loadMs
+                + " ms, match " + r.matchMs + " ms, write " + r.writeMs + " ms)");
+        System.err.println(String.format(Locale.ROOT, "  accepted:         %d (by student_id %d, by name %d), %.2f",
+                r.accepted(), r.acceptedById, r.acceptedByName, r.acceptedAmount));
+        System.err.println("  already recorded: " + r.duplicates);
+        System.err.println("  queued for review: " + r.queued);
+        r.reviewReasons.forEach((reason, n) -> System.err.println("    " + reason + ": " + n));
+        if (!dryRun) {
+            System.err.println("  review queue now holds " + dao.countPaymentReviews() + " lines");
+        }
+        return 0;
+    }
+
+    private static int exportStudents(StudentDao dao, Options opts) throws Exception {
+        File out = new File(opts.require("out"));
+        YearMonth asOf = opts.month("as-of");
+        opts.checkAllUsed();
+
+        int rows = StudentXlsxWriter.writeReplacing(out, w -> dao.forEachStudent(asOf, w::append));
+        System.err.println("Saved " + rows + " students to " + out.getAbsolutePath());
+        return 0;
+    }
+
+    private static int exportBatchReport(StudentDao dao, Options opts) throws Exception {
+        String batch = opts.require("batch");
+        int months = opts.integer("months", 12);
+        YearMonth end = opts.month("end");
+        File out = new File(opts.get("out", "batch-report-" + batch.trim().replaceAll("[^a-zA-Z0-9-_.]", "_")
+                + "-" + end + ".xlsx"));
+        opts.checkAllUsed();
+        if (months < 1) {
+            throw new UsageException("--months must be at least 1");
+        }
+
+        MonthlySeries rows = dao.buildBatchReportPreviousMonths(batch, end, months - 1);
+        ReportXlsxWriter.writeBatchReport(out, batch, rows);
+        System.err.println("Saved " + rows.size() + " months of batch " + batch + " to " + out.getAbsolutePath());
+        return 0;
+    }
+
+    private static int exportAging(StudentDao dao, Options opts) throws Exception {
+        File out = new File(opts.require("out"));
+        LocalDate asOf = opts.date("as-of");
+        opts.checkAllUsed();
+
+        long started = System.nanoTime();
+        int rows = AgingXlsxWriter.writeReplacing(out, asOf, w -> dao.forEachAging(asOf, w::append));
+        System.err.println("Saved aging of " + rows + " students as of " + asOf + " to " + out.getAbsolutePath()
+                + " in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        return 0;
+    }
+
+    /**
+     * One CSV line per student: student_id, full_name, batch, balance as of
+     * the month.
+     */
+    private static int balances(StudentDao dao, Options opts) throws Exception {
+        YearMonth asOf = opts.month("as-of");
+        String out = opts.get("out", null);
+        opts.checkAllUsed();
+
+        Writer target = out == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(new File(out).toPath(), StandardCharsets.UTF_8);
+        int[] rows = {0};
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(target, 1 << 16))) {
+            pw.println("student_id,full_name,batch,balance");
+            dao.forEachStudent(asOf, s -> {
+                pw.print(csv(s.studentId()));
+                pw.print(',');
+                pw.print(csv(s.fullName()));
+                pw.print(',');
+                pw.print(csv(s.batch()));
+                pw.print(',');
+                pw.println(String.format(Locale.ROOT, "%.2f", s.currentBalance()));
+                rows[0]++;
+            });
+            if (pw.checkError()) {
+                throw new IOException("Failed to write balances");
+            }
+        }
+        System.err.println("Wrote balances of " + rows[0] + " students as of " + asOf);
+        return 0;
+    }
+
+    private static int closePeriod(StudentDao dao, Options opts) {
+        opts.require("through"); // no default: closing is for good
+        YearMonth through = opts.month("through");
+        opts.checkAllUsed();
+
+        StudentDao.PeriodCloseResult r = dao.closePeriod(through);
+        System.err.println("Closed through " + r.through + ": " + r.checkpoints + " opening balances written in "
+                + r.elapsedMs + " ms");
+        return 0;
+    }
+
+    private static int serve(StudentDao dao, Options opts) throws Exception {
+        String host = opts.get("host", ApiServer.DEFAULT_HOST);
+        int port = opts.integer("port", ApiServer.DEFAULT_PORT);
+        opts.checkAllUsed();
+
+        ApiServer api = ApiServer.start(dao, host, port);
+        CountDownLatch stopped = new CountDownLatch(1);
+        // the JVM halts once the hooks are done, so everything is closed here rather than in run()
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.close();
+            System.err.println("API stopped: " + api.stats());
+            LedgerWriter.shutdownShared();
+            Db.shutdown();
+            stopped.countDown();
+        }, "sms-api-shutdown"));
+        stopped.await();
+        return 0;
+    }
+
+    private static String csv(String v) {
+        if (v == null) {
+            return "";
+        }
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) {
+            return v;
+        }
+        return "\"" + v.replace("\"", "\"\"") + "\"";
+    }
+
+    // ---------- Options ----------
+    private static final class UsageException extends RuntimeException {
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * "--name value", "--name=value" or a bare "--flag" after the command.
+     * Every option given must be read by the command, so a typo is an error
+     * rather than silently ignored.
+     */
+    private static final class Options {
+
+        private final Map<String, String> values = new HashMap<>();
+        private final Set<String> used = new HashSet<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 1; i < args.length; i++) {
+                String a = args[i];
+                if (!a.startsWith("--") || a.length() == 2) {
+                    throw new UsageException("Unexpected argument: " + a);
+                }
+                String name = a.substring(2);
+                String value = "";
+                int eq = name.indexOf('=');
+                if (eq >= 0) {
+                    value = name.substring(eq + 1);
+                    name = name.substring(0, eq);
+                } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    value = args[++i];
+                }
+                if (o.values.put(name, value) != null) {
+                    throw new UsageException("Option given twice: --" + name);
+                }
+            }
+            return o;
+        }
+
+        String get(String name, String def) {
+            used.add(name);
+            String v = values.get(name);
+            return v == null || v.isEmpty() ? def : v;
+        }
+
+        String require(String name) {
+            String v = get(name, null);
+            if (v == null) {
+                throw new UsageException("Missing --" + name);
+            }
+            return v;
+        }
+
+        boolean flag(String name) {
+            used.add(name);
+            String v = values.get(name);
+            return v != null && (v.isEmpty() || Boolean.parseBoolean(v));
+        }
+
+        LocalDate date(String name) {
+            String v = get(name, null);
+            if (v == null) {
+                return LocalDate.now();
+            }
+            try {
+                return LocalDate.parse(v);
+            } catch (DateTimeParseException e) {
+                throw new UsageException("--" + name + " must be YYYY-MM-DD, got: " + v);
+            }
+        }
+
+        YearMonth month(String name) {
+            String v = get(name, null);
+            if (v == null) {
+                return YearMonth.now();
+            }
+            try {
+                return YearMonth.parse(v.length() > 7 ? v.substring(0, 7) : v); // accepts YYYY-MM-01 too
+            } catch (DateTimeParseException e) {
+                throw new UsageException("--" + name + " must be YYYY-MM, got: " + v);
+            }
+        }
+
+        int integer(String name, int def) {
+            String v = get(name, null);
+            try {
+                return v == null ? def : Integer.parseInt(v);
+            } catch (NumberFormatException e) {
+                throw new UsageException("--" + name + " must be a number, got: " + v);
+            }
+        }
+
+        double decimal(String name, double def) {
+            String v = get(name, null);
+            try {
+                return v == null ? def : Double.parseDouble(v);
+            } catch (NumberFormatException e) {
+                throw new UsageException("--" + name + " must be a number, got: " + v);
+            }
+        }
+
+        void checkAllUsed() {
+            for (String name : values.keySet()) {
+                if (!used.contains(name)) {
+                    throw new UsageException("Unknown option: --" + name);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.marzuque.sms.dao;
+
+import com.marzuque.sms.model.AgingRow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * Receivables aging for the whole roster in one pass over each ledger table.
+ *
+ * The students and the three ledgers are read side by side, each ordered by
+ * student and date (the ledgers straight off their covering indexes), and
+ * merged per student in date order. Debits (charges, positive adjustments,
+ * negative payments) join a FIFO queue of open amounts; credits pay off the
+ * head of the queue, and credit left over waits for the next debit. What
+ * remains open at the end is aged from its own date. All reads run in one
+ * transaction, so the four cursors see the same snapshot.
+ *
+ * Given a set of student db ids, the same merge runs over just their rows
+ * (index seeks per id), for re-aging the students an edit touched.
+ */
+final class AgingEngine {
+
+    private static final double CENT = 0.005;
+
+    private final LocalDate asOf;
+    private final long asOfDay;
+
+    // open debits of the current student, oldest first: [head, tail)
+    private long[] openDays = new long[64];
+    private double[] openAmounts = new double[64];
+    private int head;
+    private int tail;
+    private double credit;
+
+    AgingEngine(LocalDate asOf) {
+        this.asOf = asOf;
+        this.asOfDay = asOf.toEpochDay();
+    }
+
+    /**
+     * Streams one row per student, in student db id order. Returns the
+     * number of ledger rows read.
+     */
+    long run(Connection c, Consumer<AgingRow> handler) throws SQLException {
+        return run(c, null, handler);
+    }
+
+    /**
+     * Like run(c, handler), but only for the given student db ids (all
+     * students when null).
+     */
+    long run(Connection c, int[] studentDbIds, Consumer<AgingRow> handler) throws SQLException {
+        String until = asOf.toString();
+        String only = studentDbIds == null ? "" : " AND student_id IN (" + placeholders(studentDbIds.length) + ")";
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try (PreparedStatement students = c.prepareStatement("SELECT id, student_id, full_name, batch FROM students"
+                     + (studentDbIds == null ? "" : " WHERE id IN (" + placeholders(studentDbIds.length) + ")")
+                     + " ORDER BY id");
+             Cursor charges = new Cursor(c, "SELECT student_id, charge_month, amount FROM tuition_charges"
+                     + " WHERE charge_month <= ?" + only + " ORDER BY student_id, charge_month", until, studentDbIds, 1);
+             Cursor adjustments = new Cursor(c, "SELECT student_id, adj_date, amount FROM account_adjustments"
+                     + " WHERE adj_date <= ?" + only + " ORDER BY student_id, adj_date", until, studentDbIds, 1);
+             Cursor payments = new Cursor(c, "SELECT student_id, payment_date, amount FROM payments"
+                     + " WHERE payment_date <= ?" + only + " ORDER BY student_id, payment_date", until, studentDbIds, -1);
+             ResultSet rs = bind(students, 1, studentDbIds).executeQuery()) {
+
+            Cursor[] ledgers = {charges, adjustments, payments};
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                head = 0;
+                tail = 0;
+                credit = 0;
+
+                for (Cursor l : ledgers) {
+                    l.skipTo(id); // ledger rows of students that are gone
+                }
+                while (true) {
+                    Cursor next = null;
+                    for (Cursor l : ledgers) {
+                        if (l.studentId == id && (next == null || l.day < next.day)) {
+                            next = l;
+                        }
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    post(next.day, next.amount);
+                    next.advance();
+                }
+
+                handler.accept(age(id, rs.getString(2), rs.getString(3), rs.getString(4)));
+            }
+            return charges.rows + adjustments.rows + payments.rows;
+        } finally {
+            c.rollback(); // read-only; ends the snapshot
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Applies one ledger amount, signed as its effect on the balance.
+     */
+    private void post(long day, double amount) {
+        if (amount < 0) {
+            credit -= amount;
+            settle();
+            return;
+        }
+        if (tail == openDays.length) {
+            compact();
+        }
+        openDays[tail] = day;
+        openAmounts[tail++] = amount;
+        settle();
+    }
+
+    private void settle() {
+        while (credit > CENT && head < tail) {
+            double paid = Math.min(credit, openAmounts[head]);
+            openAmounts[head] -= paid;
+            credit -= paid;
+            if (openAmounts[head] < CENT) {
+                head++;
+            }
+        }
+    }
+
+    private void compact() {
+        int n = tail - head;
+        if (n * 2 > openDays.length) {
+            openDays = Arrays.copyOf(openDays, openDays.length * 2);
+            openAmounts = Arrays.copyOf(openAmounts, openAmounts.length * 2);
+        }
+        System.arraycopy(openDays, head, openDays, 0, n);
+        System.arraycopy(openAmounts, head, openAmounts, 0, n);
+        head = 0;
+        tail = n;
+    }
+
+    private AgingRow age(int id, String studentId, String fullName, String batch) {
+        double[] buckets = new double[AgingRow.BUCKET_LABELS.length];
+        for (int i = head; i < tail; i++) {
+            buckets[AgingRow.bucketOf(asOfDay - openDays[i])] += openAmounts[i];
+        }
+        return new AgingRow(id, studentId, fullName, batch,
+                buckets[0], buckets[1], buckets[2], buckets[3], buckets[4], credit < CENT ? 0 : credit);
+    }
+
+    /**
+     * A ledger table read in (student, date) order; studentId is
+     * Integer.MAX_VALUE once it is exhausted.
+     */
+    private static final class Cursor implements AutoCloseable {
+
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final int sign;
+
+        int studentId;
+        long day;
+        double amount;
+        long rows;
+
+        Cursor(Connection c, String sql, String until, int[] studentDbIds, int sign) throws SQLException {
+            this.ps = c.prepareStatement(sql);
+            this.sign = sign;
+            ps.setString(1, until);
+            this.rs = bind(ps, 2, studentDbIds).executeQuery();
+            advance();
+        }
+
+        void advance() throws SQLException {
+            if (!rs.next()) {
+                studentId = Integer.MAX_VALUE;
+                return;
+            }
+            rows++;
+            studentId = rs.getInt(1);
+            day = epochDay(rs.getString(2));
+            amount = sign * rs.getDouble(3);
+        }
+
+        void skipTo(int id) throws SQLException {
+            while (studentId < id) {
+                advance();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                rs.close();
+            } finally {
+                ps.close();
+            }
+        }
+    }
+
+    private static String placeholders(int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    private static PreparedStatement bind(PreparedStatement ps, int from, int[] ids) throws SQLException {
+        if (ids != null) {
+            for (int i = 0; i < ids.length; i++) {
+                ps.setInt(from + i, ids[i]);
+            }
+        }
+        return ps;
+    }
+
+    /**
+     * 'YYYY-MM-DD...' as an epoch day, without going through a parser.
+     */
+    private static long epochDay(String date) {
+        int y = digits(date, 0, 4);
+        int m = digits(date, 5, 7);
+        int d = digits(date, 8, 10);
+        return LocalDate.of(y, m, d).toEpochDay();
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            v = v * 10 + (s.charAt(i) - '0');
+        }
+        return v;
+    }
+}
@@ -0,0 +1,76 @@
+package com.marzuque.sms.dao;
+
+import com.marzuque.sms.model.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Students a DAO write touched, re-read after the commit (with the balance
+ * as of the current month), so the UI can patch the rows it shows instead of
+ * reloading the whole roster. A write touching more than MAX_ROWS students
+ * comes back as fullReload with no rows.
+ */
+public final class ChangeSet {
+
+    public static final int MAX_ROWS = 500;
+
+    private static final ChangeSet NONE = new ChangeSet(List.of(), List.of(), false);
+    private static final ChangeSet FULL_RELOAD = new ChangeSet(List.of(), List.of(), true);
+
+    public final List<Student> upserted; // inserted or updated, current state
+    public final List<Integer> deleted;  // student db ids
+    public final boolean fullReload;
+
+    private ChangeSet(List<Student> upserted, List<Integer> deleted, boolean fullReload) {
+        this.upserted = upserted;
+        this.deleted = deleted;
+        this.fullReload = fullReload;
+    }
+
+    public static ChangeSet none() {
+        return NONE;
+    }
+
+    public static ChangeSet fullReload() {
+        return FULL_RELOAD;
+    }
+
+    public static ChangeSet upserted(List<Student> students) {
+        return students.size() > MAX_ROWS ? FULL_RELOAD : new ChangeSet(List.copyOf(students), List.of(), false);
+    }
+
+    public static ChangeSet deleted(int studentDbId) {
+        return new ChangeSet(List.of(), List.of(studentDbId), false);
+    }
+
+    public boolean isEmpty() {
+        return !fullReload && upserted.isEmpty() && deleted.isEmpty();
+    }
+
+    /**
+     * This change followed by 'next'. Apply upserted rows in order, then the
+     * deletions: a later row for the same student wins, and a student
+     * deleted after an edit stays deleted.
+     */
+    public ChangeSet merge(ChangeSet next) {
+        if (fullReload || next.fullReload) {
+            return FULL_RELOAD;
+        }
+        if (next.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return next;
+        }
+        if (upserted.size() + deleted.size() + next.upserted.size() + next.deleted.size() > MAX_ROWS) {
+            return FULL_RELOAD;
+        }
+
+        List<Student> u = new ArrayList<>(upserted);
+        u.addAll(next.upserted);
+        List<Integer> d = new ArrayList<>(deleted);
+        d.addAll(next.deleted);
+        return new ChangeSet(List.copyOf(u), List.copyOf(d), false);
+    }
+}
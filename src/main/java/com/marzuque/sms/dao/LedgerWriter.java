@@ -0,0 +1,308 @@
+package com.marzuque.sms.dao;
+
+import com.marzuque.sms.db.Db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single writer thread for DAO mutations. SQLite allows one writer at a time
+ * and every commit pays for a sync, so commands that arrive together are run
+ * in one transaction: the writer takes the first queued command plus
+ * whatever queued up behind it (while the previous batch was committing),
+ * optionally lingering up to maxDelayMs for more, stops at batchSize, runs
+ * them, commits once, and then completes each command's future.
+ *
+ * maxDelayMs defaults to 0: lingering only pays off when callers arrive
+ * faster than a commit, and otherwise adds its full delay to a lone edit.
+ *
+ * Each command runs inside its own savepoint, so a failing command is rolled
+ * back and fails alone while the rest of its batch commits. If the commit
+ * itself fails, every future in the batch fails. A command that is alone in
+ * its batch runs without a savepoint (rolling back the transaction undoes
+ * it just the same): with temp_store=MEMORY the savepoint's journal is kept
+ * in memory and gets slower with every row, which a bulk command of a few
+ * thousand inserts turns into seconds.
+ *
+ * Commands get the writer's connection and must not commit or change
+ * auto-commit themselves, nor submit further commands.
+ */
+public final class LedgerWriter {
+
+    @FunctionalInterface
+    public interface Mutation<T> {
+
+        T apply(Connection c) throws SQLException;
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("sms.ledger.batchSize", 64);
+    public static final long DEFAULT_MAX_DELAY_MS = Long.getLong("sms.ledger.maxDelayMs", 0);
+
+    private static LedgerWriter shared;
+
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Command<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // metrics
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong failedCommands = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong(); // submit -> future completed
+
+    public LedgerWriter(int batchSize, long maxDelayMs) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.thread = new Thread(this::run, "sms-ledger-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * The writer the DAOs share, started on first use with the
+     * sms.ledger.batchSize / sms.ledger.maxDelayMs settings.
+     */
+    public static synchronized LedgerWriter shared() {
+        if (shared == null) {
+            shared = new LedgerWriter(DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY_MS);
+        }
+        return shared;
+    }
+
+    /**
+     * Finishes the queued commands and stops the shared writer; a later
+     * shared() starts a new one.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Queues a mutation; the future completes with its result once the
+     * transaction it ran in has committed.
+     */
+    public <T> CompletableFuture<T> submit(Mutation<T> mutation) {
+        if (Thread.currentThread() == thread) {
+            throw new IllegalStateException("A ledger command cannot submit another command");
+        }
+        if (closed) {
+            throw new IllegalStateException("Ledger writer is shut down");
+        }
+        Command<T> cmd = new Command<>(mutation);
+        queue.add(cmd);
+        return cmd.future;
+    }
+
+    /**
+     * Stops accepting commands, runs the ones already queued and waits for
+     * the writer thread to finish.
+     */
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // submitted while closing, after the writer's last look at the queue
+        for (Command<?> cmd; !thread.isAlive() && (cmd = queue.poll()) != null;) {
+            cmd.future.completeExceptionally(new IllegalStateException("Ledger writer is shut down"));
+        }
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public Stats stats() {
+        long b = batches.get();
+        long n = commands.get();
+        return new Stats(queue.size(), n, failedCommands.get(), b, (int) maxBatch.get(),
+                b == 0 ? 0 : commitNanos.get() / b / 1_000, maxCommitNanos.get() / 1_000,
+                n == 0 ? 0 : latencyNanos.get() / n / 1_000);
+    }
+
+    public static class Stats {
+
+        public final int queueDepth;
+        public final long commands;
+        public final long failedCommands;
+        public final long batches;
+        public final int maxBatchSize;
+        public final long meanCommitMicros;
+        public final long maxCommitMicros;
+        public final long meanLatencyMicros; // submit until the caller's future completes
+
+        public Stats(int queueDepth, long commands, long failedCommands, long batches, int maxBatchSize,
+                long meanCommitMicros, long maxCommitMicros, long meanLatencyMicros) {
+            this.queueDepth = queueDepth;
+            this.commands = commands;
+            this.failedCommands = failedCommands;
+            this.batches = batches;
+            this.maxBatchSize = maxBatchSize;
+            this.meanCommitMicros = meanCommitMicros;
+            this.maxCommitMicros = maxCommitMicros;
+            this.meanLatencyMicros = meanLatencyMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "queue=" + queueDepth + " commands=" + commands + " failed=" + failedCommands
+                    + " batches=" + batches + " maxBatch=" + maxBatchSize
+                    + " commit=" + meanCommitMicros + "us (max " + maxCommitMicros + "us)"
+                    + " latency=" + meanLatencyMicros + "us";
+        }
+    }
+
+    // ---------- writer thread ----------
+    private void run() {
+        List<Command<?>> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                if (!collect(batch)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    continue;
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                if (batch.isEmpty()) {
+                    return;
+                }
+            }
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits for a command, then gathers more until the batch is full or the
+     * delay since the first one is used up. False once closed and drained.
+     */
+    private boolean collect(List<Command<?>> batch) throws InterruptedException {
+        Command<?> first = closed ? queue.poll() : queue.take();
+        if (first == null) {
+            return false;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long left = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || left <= 0) {
+                break;
+            }
+            Command<?> next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return true;
+    }
+
+    private void runBatch(List<Command<?>> batch) {
+        try (Connection c = Db.connect()) {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                if (batch.size() == 1) {
+                    Command<?> cmd = batch.get(0);
+                    try {
+                        cmd.run(c);
+                    } catch (Throwable t) {
+                        c.rollback();
+                        cmd.error = t;
+                    }
+                } else {
+                    for (Command<?> cmd : batch) {
+                        st.execute("SAVEPOINT cmd");
+                        try {
+                            cmd.run(c);
+                            st.execute("RELEASE cmd");
+                        } catch (Throwable t) {
+                            st.execute("ROLLBACK TO cmd");
+                            st.execute("RELEASE cmd");
+                            cmd.error = t;
+                        }
+                    }
+                }
+
+                long started = System.nanoTime();
+                c.commit();
+                recordCommit(System.nanoTime() - started, batch.size());
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (Throwable e) {
+            for (Command<?> cmd : batch) {
+                if (cmd.error == null) {
+                    cmd.error = e;
+                }
+            }
+        }
+
+        for (Command<?> cmd : batch) {
+            if (cmd.error != null) {
+                failedCommands.incrementAndGet();
+            }
+            cmd.complete();
+            latencyNanos.addAndGet(System.nanoTime() - cmd.submitted);
+        }
+        commands.addAndGet(batch.size());
+    }
+
+    private void recordCommit(long nanos, int size) {
+        batches.incrementAndGet();
+        commitNanos.addAndGet(nanos);
+        maxCommitNanos.accumulateAndGet(nanos, Math::max);
+        maxBatch.accumulateAndGet(size, Math::max);
+    }
+
+    private static final class Command<T> {
+
+        final Mutation<T> mutation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+        T result;
+        Throwable error;
+
+        Command(Mutation<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        void run(Connection c) throws SQLException {
+            result = mutation.apply(c);
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
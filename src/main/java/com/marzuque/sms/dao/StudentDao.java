@@ -1,17 +1,63 @@
 package com.marzuque.sms.dao;
 
 import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.MonthBalanceTriggers;
+import com.marzuque.sms.db.PeriodClose;
 import com.marzuque.sms.model.Student;
+import com.marzuque.sms.model.StudentRecord;
 import com.marzuque.sms.model.AccountAdjustment;
-import com.marzuque.sms.model.MonthlyReportRow;
+import com.marzuque.sms.model.AgingRow;
+import com.marzuque.sms.model.MonthlySeries;
+import com.marzuque.sms.model.PaymentRecord;
+import com.marzuque.sms.model.PaymentReview;
+import com.marzuque.sms.util.IntDoubleMap;
+import com.marzuque.sms.util.IntIntMap;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 
 public class StudentDao {
 
+    // Flat fee for now (BDT). Later we’ll move this to a settings table.
+    public static final double MONTHLY_TUITION_FEE = 5000.0;
+
+    // every write (edits, imports, charge runs, maintenance rebuilds) goes through the shared writer
+    private final LedgerWriter writer;
+
+    public StudentDao() {
+        this(null);
+    }
+
+    /**
+     * Uses the given writer for mutations instead of LedgerWriter.shared().
+     */
+    public StudentDao(LedgerWriter writer) {
+        this.writer = writer;
+    }
+
+    private LedgerWriter writer() {
+        return writer != null ? writer : LedgerWriter.shared();
+    }
+
+    /**
+     * Runs the mutation on the ledger writer and waits until it has
+     * committed. SQLExceptions come back wrapped as RuntimeException(message).
+     */
+    private <T> T write(String message, LedgerWriter.Mutation<T> mutation) {
+        try {
+            return writer().submit(mutation).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(message, cause);
+        }
+    }
+
     // ---------- Students CRUD ----------
     public List<Student> findAll() {
         String sql = """
@@ -43,161 +89,501 @@ public class StudentDao {
         }
     }
 
-    public Student insert(Student s) {
+    /**
+     * Streams every student, with its balance as of 'asOf', to the handler
+     * straight from the cursor (same order as findAll) without building a
+     * list. Used by exports.
+     */
+    public void forEachStudent(YearMonth asOf, java.util.function.Consumer<StudentRecord> handler) {
         String sql = """
-            INSERT INTO students (student_id, full_name, batch, cgpa, semester_cgpa, billing_start_month)
-            VALUES (?, ?, ?, ?, ?, ?)
+            SELECT s.id, s.student_id, s.full_name, s.batch, s.cgpa, s.semester_cgpa, s.billing_start_month,
+                   COALESCE((
+                       SELECT b.closing_balance
+                       FROM student_month_balance b
+                       WHERE b.student_id = s.id AND b.ym <= ?
+                       ORDER BY b.ym DESC
+                       LIMIT 1
+                   ), 0) AS balance
+            FROM students s
+            ORDER BY s.batch ASC, s.student_id ASC
             """;
 
         try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setString(1, s.getStudentId());
-            ps.setString(2, s.getFullName());
-            ps.setString(3, s.getBatch());
-            ps.setObject(4, s.getCgpa());
-            ps.setObject(5, s.getSemesterCgpa());
-            ps.setString(6, s.getBillingStartMonth());
-
-            ps.executeUpdate();
+            ps.setString(1, asOf.toString());
 
-            try (PreparedStatement idStmt = c.prepareStatement("SELECT last_insert_rowid() AS id"); ResultSet rs = idStmt.executeQuery()) {
-                if (rs.next()) {
-                    s.setId(rs.getInt("id"));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.accept(new StudentRecord(
+                            rs.getInt("id"),
+                            rs.getString("student_id"),
+                            rs.getString("full_name"),
+                            rs.getString("batch"),
+                            (Double) rs.getObject("cgpa"),
+                            (Double) rs.getObject("semester_cgpa"),
+                            rs.getString("billing_start_month"),
+                            rs.getDouble("balance")
+                    ));
                 }
             }
 
-            return s;
-
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to insert student", e);
+            throw new RuntimeException("Failed to read students", e);
+        }
+    }
+
+    // ---------- Students: paged reads ----------
+    public static class StudentPage {
+
+        public final List<Student> rows;
+        public final Object[] lastKey; // keyset position after the last row; null when the page is empty
+
+        public StudentPage(List<Student> rows, Object[] lastKey) {
+            this.rows = rows;
+            this.lastKey = lastKey;
         }
     }
 
-    public void update(Student s) {
+    /**
+     * One window of students matching q, with balances as of 'asOf'. When
+     * 'after' (the lastKey of the previous page) is given the page starts
+     * right after it using the sort's keyset; otherwise it falls back to
+     * skipping 'offset' rows, which is only meant for jumps.
+     */
+    public StudentPage findPage(StudentQuery q, Object[] after, int offset, int limit, YearMonth asOf) {
+        List<Object> params = new ArrayList<>();
+        params.add(asOf.toString());
+
+        String from = q.from(params);
+        String where = q.where(params);
+        if (after != null) {
+            where += (where.isEmpty() ? " WHERE " : " AND ") + q.after(after, params);
+        }
+
+        StringBuilder keys = new StringBuilder();
+        for (int i = 0; i < q.sort.keyColumns.length; i++) {
+            keys.append(", ").append(q.sort.keyColumns[i]).append(" AS k").append(i);
+        }
+
         String sql = """
-            UPDATE students
-            SET student_id = ?, full_name = ?, batch = ?, cgpa = ?, semester_cgpa = ?, billing_start_month = ?
-            WHERE id = ?
-            """;
+            SELECT s.id, s.student_id, s.full_name, s.batch, s.cgpa, s.semester_cgpa, s.billing_start_month,
+                   COALESCE((
+                       SELECT b.closing_balance
+                       FROM student_month_balance b
+                       WHERE b.student_id = s.id AND b.ym <= ?
+                       ORDER BY b.ym DESC
+                       LIMIT 1
+                   ), 0) AS balance%s%s%s%s
+            LIMIT ? OFFSET ?
+            """.formatted(keys, from, where, q.orderBy());
+
+        params.add(limit);
+        params.add(after != null ? 0 : offset);
+
+        List<Student> rows = new ArrayList<>(limit);
+        Object[] lastKey = null;
 
         try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setString(1, s.getStudentId());
-            ps.setString(2, s.getFullName());
-            ps.setString(3, s.getBatch());
-            ps.setObject(4, s.getCgpa());
-            ps.setObject(5, s.getSemesterCgpa());
-            ps.setString(6, s.getBillingStartMonth());
-            ps.setInt(7, s.getId());
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
 
-            int changed = ps.executeUpdate();
-            if (changed == 0) {
-                throw new RuntimeException("Student not found.");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Student s = new Student(
+                            rs.getInt("id"),
+                            rs.getString("student_id"),
+                            rs.getString("full_name"),
+                            rs.getString("batch"),
+                            (Double) rs.getObject("cgpa"),
+                            (Double) rs.getObject("semester_cgpa"),
+                            rs.getString("billing_start_month")
+                    );
+                    s.setCurrentBalance(rs.getDouble("balance"));
+                    rows.add(s);
+
+                    // the cursor cannot look ahead, so remember every row's key; the last one wins
+                    if (lastKey == null) {
+                        lastKey = new Object[q.sort.keyColumns.length];
+                    }
+                    for (int i = 0; i < lastKey.length; i++) {
+                        lastKey[i] = rs.getObject("k" + i);
+                    }
+                }
             }
+            return new StudentPage(rows, lastKey);
 
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to update student", e);
+            throw new RuntimeException("Failed to load students", e);
         }
     }
 
-    public void deleteById(int id) {
-        String sql = "DELETE FROM students WHERE id = ?";
+    /**
+     * Ranked full-text search over student ID, name and batch: each word of
+     * 'text' matches as a word prefix, best matches first. Pass the lastKey
+     * of the previous page as 'after' to continue, null for the first page.
+     */
+    public StudentPage searchStudents(String text, String batch, Object[] after, int limit, YearMonth asOf) {
+        StudentQuery q = new StudentQuery(batch, text, StudentQuery.Sort.RELEVANCE, false, true);
+        return findPage(q, after, 0, limit, asOf);
+    }
+
+    public int count(StudentQuery q) {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*)" + q.from(params) + q.where(params);
 
         try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setInt(1, id);
-            ps.executeUpdate();
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to delete student", e);
+            throw new RuntimeException("Failed to count students", e);
         }
     }
 
-    // ---------- Tuition: generate monthly charges (flat fee) ----------
-    public void generateChargesUpToMonthForAllStudents(double monthlyFee, YearMonth upTo) {
-        List<Student> students = findAll();
-        for (Student s : students) {
-            generateChargesUpToMonthForStudent(s.getId(), s.getBillingStartMonth(), monthlyFee, upTo);
+    /**
+     * Number of students per batch, for the batch tabs.
+     */
+    public Map<String, Integer> countByBatch() {
+        String sql = "SELECT batch, COUNT(*) FROM students WHERE trim(batch) <> '' GROUP BY batch";
+
+        Map<String, Integer> out = new HashMap<>();
+
+        try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                out.put(rs.getString(1), rs.getInt(2));
+            }
+            return out;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to count students", e);
         }
     }
 
-    private void generateChargesUpToMonthForStudent(int studentDbId, String billingStartMonthText,
-            double monthlyFee, YearMonth upTo) {
-        YearMonth start = YearMonth.parse(billingStartMonthText.substring(0, 7)); // "YYYY-MM"
-        YearMonth cur = start;
+    /**
+     * The student with this db id and its balance as of 'asOf', or null.
+     */
+    public Student findById(int studentDbId, YearMonth asOf) {
+        try (Connection c = Db.connect()) {
+            List<Student> rows = findWhereIn(c, "id", List.of(studentDbId), asOf);
+            return rows.isEmpty() ? null : rows.get(0);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load student", e);
+        }
+    }
 
-        while (!cur.isAfter(upTo)) {
-            String chargeMonth = cur.toString() + "-01"; // 'YYYY-MM-01'
-            insertChargeIfMissing(studentDbId, chargeMonth, monthlyFee);
-            cur = cur.plusMonths(1);
+    /**
+     * Students whose 'column' (id or student_id) is one of 'keys', with their
+     * balance as of 'asOf'. Used to hand back the rows a write touched.
+     */
+    private static List<Student> findWhereIn(Connection c, String column, List<?> keys, YearMonth asOf)
+            throws SQLException {
+        if (keys.isEmpty()) {
+            return List.of();
         }
+
+        String sql = """
+            SELECT s.id, s.student_id, s.full_name, s.batch, s.cgpa, s.semester_cgpa, s.billing_start_month,
+                   COALESCE((
+                       SELECT b.closing_balance
+                       FROM student_month_balance b
+                       WHERE b.student_id = s.id AND b.ym <= ?
+                       ORDER BY b.ym DESC
+                       LIMIT 1
+                   ), 0) AS balance
+            FROM students s
+            WHERE s.%s IN (%s)
+            """.formatted(column, String.join(", ", Collections.nCopies(keys.size(), "?")));
+
+        List<Student> rows = new ArrayList<>(keys.size());
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, asOf.toString());
+            for (int i = 0; i < keys.size(); i++) {
+                ps.setObject(i + 2, keys.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Student s = new Student(
+                            rs.getInt("id"),
+                            rs.getString("student_id"),
+                            rs.getString("full_name"),
+                            rs.getString("batch"),
+                            (Double) rs.getObject("cgpa"),
+                            (Double) rs.getObject("semester_cgpa"),
+                            rs.getString("billing_start_month")
+                    );
+                    s.setCurrentBalance(rs.getDouble("balance"));
+                    rows.add(s);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Inserts the student (setting its id) and returns it as stored.
+     */
+    public ChangeSet insert(Student s) {
+        String sql = """
+            INSERT INTO students (student_id, full_name, batch, cgpa, semester_cgpa, billing_start_month)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+        return write("Failed to insert student", c -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, s.getStudentId());
+                ps.setString(2, s.getFullName());
+                ps.setString(3, s.getBatch());
+                ps.setObject(4, s.getCgpa());
+                ps.setObject(5, s.getSemesterCgpa());
+                ps.setString(6, s.getBillingStartMonth());
+
+                ps.executeUpdate();
+            }
+
+            try (PreparedStatement idStmt = c.prepareStatement("SELECT last_insert_rowid() AS id"); ResultSet rs = idStmt.executeQuery()) {
+                if (rs.next()) {
+                    s.setId(rs.getInt("id"));
+                }
+            }
+
+            return ChangeSet.upserted(findWhereIn(c, "id", List.of(s.getId()), YearMonth.now()));
+        });
     }
 
-    private void insertChargeIfMissing(int studentDbId, String chargeMonth, double amount) {
+    public ChangeSet update(Student s) {
         String sql = """
+            UPDATE students
+            SET student_id = ?, full_name = ?, batch = ?, cgpa = ?, semester_cgpa = ?, billing_start_month = ?
+            WHERE id = ?
+            """;
+
+        return write("Failed to update student", c -> {
+            resetWatermarkIfBillingMovedEarlier(c, s.getId(), s.getBillingStartMonth());
+
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, s.getStudentId());
+                ps.setString(2, s.getFullName());
+                ps.setString(3, s.getBatch());
+                ps.setObject(4, s.getCgpa());
+                ps.setObject(5, s.getSemesterCgpa());
+                ps.setString(6, s.getBillingStartMonth());
+                ps.setInt(7, s.getId());
+
+                int changed = ps.executeUpdate();
+                if (changed == 0) {
+                    throw new RuntimeException("Student not found."); // rolls back the watermark reset too
+                }
+            }
+            return ChangeSet.upserted(findWhereIn(c, "id", List.of(s.getId()), YearMonth.now()));
+        });
+    }
+
+    public ChangeSet deleteById(int id) {
+        String sql = "DELETE FROM students WHERE id = ?";
+
+        return write("Failed to delete student", c -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setInt(1, id);
+                return ps.executeUpdate() == 0 ? ChangeSet.none() : ChangeSet.deleted(id);
+            }
+        });
+    }
+
+    // ---------- Tuition: generate monthly charges (flat fee) ----------
+    /**
+     * Fills tuition_charges for the whole roster in one statement: a recursive
+     * month series per student up to 'upTo'. Each series starts after the
+     * student's charge watermark (or at billing_start_month when there is
+     * none), so a repeat run only touches new months, and never before the
+     * first open month. INSERT OR IGNORE keeps months that already exist
+     * untouched.
+     */
+    public ChargeGenerationResult generateChargesUpToMonthForAllStudents(double monthlyFee, YearMonth upTo) {
+        String upToMonth = upTo.toString() + "-01";
+
+        String insertSql = """
+            WITH RECURSIVE starts(student_id, first_month) AS (
+                SELECT s.id,
+                       MAX(CASE WHEN w.last_charged_month IS NULL
+                                THEN substr(s.billing_start_month, 1, 7) || '-01'
+                                ELSE MAX(substr(s.billing_start_month, 1, 7) || '-01',
+                                         date(w.last_charged_month, '+1 month'))
+                           END, %s)
+                FROM students s
+                LEFT JOIN charge_watermarks w ON w.student_id = s.id
+                WHERE date(substr(s.billing_start_month, 1, 7) || '-01') IS NOT NULL
+                  AND (w.last_charged_month IS NULL OR w.last_charged_month < ?)
+            ),
+            months(student_id, charge_month) AS (
+                SELECT student_id, first_month
+                FROM starts
+                WHERE first_month <= ?
+                UNION ALL
+                SELECT student_id, date(charge_month, '+1 month')
+                FROM months
+                WHERE date(charge_month, '+1 month') <= ?
+            )
             INSERT OR IGNORE INTO tuition_charges (student_id, charge_month, amount, charge_type, note)
-            VALUES (?, ?, ?, 'TUITION', NULL)
+            SELECT student_id, charge_month, ?, 'TUITION', NULL
+            FROM months
+            """.formatted(PeriodClose.OPEN_FROM);
+
+        String advanceSql = """
+            INSERT INTO charge_watermarks (student_id, last_charged_month)
+            SELECT s.id, ?
+            FROM students s
+            LEFT JOIN charge_watermarks w ON w.student_id = s.id
+            WHERE date(substr(s.billing_start_month, 1, 7) || '-01') IS NOT NULL
+              AND substr(s.billing_start_month, 1, 7) || '-01' <= ?
+              AND (w.last_charged_month IS NULL OR w.last_charged_month < ?)
+            ON CONFLICT(student_id) DO UPDATE SET last_charged_month = excluded.last_charged_month
             """;
 
-        try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
+        long started = System.nanoTime();
+
+        int inserted = write("Failed to generate charges", c -> {
+            try (PreparedStatement ins = c.prepareStatement(insertSql);
+                    PreparedStatement adv = c.prepareStatement(advanceSql)) {
 
+                ins.setString(1, upToMonth);
+                ins.setString(2, upToMonth);
+                ins.setString(3, upToMonth);
+                ins.setDouble(4, monthlyFee);
+                int n = ins.executeUpdate();
+
+                adv.setString(1, upToMonth);
+                adv.setString(2, upToMonth);
+                adv.setString(3, upToMonth);
+                adv.executeUpdate();
+                return n;
+            }
+        });
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        return new ChargeGenerationResult(inserted, elapsedMs);
+    }
+
+    /**
+     * Rebuilds charge_watermarks from tuition_charges. A student's watermark
+     * becomes the last month of the unbroken run of TUITION charges starting
+     * at billing_start_month, so a gap is re-filled by the next generation run.
+     * Returns the number of watermarks written.
+     */
+    public int rebuildChargeWatermarks() {
+        String sql = """
+            WITH RECURSIVE charged AS (
+                SELECT s.id AS student_id,
+                       substr(s.billing_start_month, 1, 7) || '-01' AS first_month,
+                       MAX(tc.charge_month) AS last_month
+                FROM students s
+                JOIN tuition_charges tc ON tc.student_id = s.id AND tc.charge_type = 'TUITION'
+                WHERE date(substr(s.billing_start_month, 1, 7) || '-01') IS NOT NULL
+                GROUP BY s.id
+            ),
+            expected(student_id, charge_month, last_month) AS (
+                SELECT student_id, first_month, last_month
+                FROM charged
+                WHERE first_month <= last_month
+                UNION ALL
+                SELECT student_id, date(charge_month, '+1 month'), last_month
+                FROM expected
+                WHERE date(charge_month, '+1 month') <= last_month
+            ),
+            first_gap AS (
+                SELECT e.student_id, MIN(e.charge_month) AS missing_month
+                FROM expected e
+                LEFT JOIN tuition_charges tc
+                       ON tc.student_id = e.student_id
+                      AND tc.charge_month = e.charge_month
+                      AND tc.charge_type = 'TUITION'
+                WHERE tc.id IS NULL
+                GROUP BY e.student_id
+            )
+            INSERT INTO charge_watermarks (student_id, last_charged_month)
+            SELECT ch.student_id,
+                   CASE WHEN g.missing_month IS NULL THEN ch.last_month
+                        ELSE date(g.missing_month, '-1 month')
+                   END
+            FROM charged ch
+            LEFT JOIN first_gap g ON g.student_id = ch.student_id
+            WHERE ch.first_month <= ch.last_month
+              AND (g.missing_month IS NULL OR g.missing_month > ch.first_month)
+            """;
+
+        return write("Failed to rebuild charge watermarks", c -> {
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("DELETE FROM charge_watermarks");
+                return st.executeUpdate(sql);
+            }
+        });
+    }
+
+    /**
+     * Moving billing_start_month earlier opens months before the watermark;
+     * dropping the watermark makes the next run backfill them.
+     */
+    private static void resetWatermarkIfBillingMovedEarlier(Connection c, int studentDbId,
+            String newBillingStartMonth) throws SQLException {
+        String sql = """
+            DELETE FROM charge_watermarks
+            WHERE student_id = ?
+              AND (SELECT substr(billing_start_month, 1, 7) FROM students WHERE id = ?) > substr(?, 1, 7)
+            """;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, studentDbId);
-            ps.setString(2, chargeMonth);
-            ps.setDouble(3, amount);
+            ps.setInt(2, studentDbId);
+            ps.setString(3, newBillingStartMonth);
             ps.executeUpdate();
+        }
+    }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to generate charge", e);
+    public static class ChargeGenerationResult {
+
+        public final int inserted;
+        public final long elapsedMs;
+
+        public ChargeGenerationResult(int inserted, long elapsedMs) {
+            this.inserted = inserted;
+            this.elapsedMs = elapsedMs;
         }
     }
 
     // ---------- Balance: as-of this month ----------
     /**
-     * Returns balance for each student db-id as of end of month 'asOf'.
+     * Returns balance for each student db-id as of end of month 'asOf'. Reads
+     * the closing balance of the latest student_month_balance row at or
+     * before 'asOf' instead of summing the raw ledger.
      */
-    public Map<Integer, Double> getBalancesAsOf(YearMonth asOf) {
-        String asOfMonth = asOf.toString() + "-01";
-        LocalDate endOfMonth = asOf.atEndOfMonth();
-        String endDate = endOfMonth.toString(); // 'YYYY-MM-DD'
-
+    public IntDoubleMap getBalancesAsOf(YearMonth asOf) {
         String sql = """
     SELECT s.id AS student_id,
-           COALESCE(ch.total_charges, 0)
-         + COALESCE(adj.total_adjustments, 0)
-         - COALESCE(p.total_payments, 0) AS balance
+           COALESCE((
+               SELECT b.closing_balance
+               FROM student_month_balance b
+               WHERE b.student_id = s.id AND b.ym <= ?
+               ORDER BY b.ym DESC
+               LIMIT 1
+           ), 0) AS balance
     FROM students s
-    LEFT JOIN (
-        SELECT student_id, SUM(amount) AS total_charges
-        FROM tuition_charges
-        WHERE charge_month <= ?
-        GROUP BY student_id
-    ) ch ON ch.student_id = s.id
-    LEFT JOIN (
-        SELECT student_id, SUM(amount) AS total_adjustments
-        FROM account_adjustments
-        WHERE adj_date <= ?
-        GROUP BY student_id
-    ) adj ON adj.student_id = s.id
-    LEFT JOIN (
-        SELECT student_id, SUM(amount) AS total_payments
-        FROM payments
-        WHERE payment_date <= ?
-        GROUP BY student_id
-    ) p ON p.student_id = s.id
     """;
 
-
-        Map<Integer, Double> out = new HashMap<>();
+        IntDoubleMap out = new IntDoubleMap();
 
         try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setString(1, asOfMonth);
-            ps.setString(2, endDate);
-            ps.setString(3, endDate);
+            ps.setString(1, asOf.toString());
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    out.put(rs.getInt("student_id"), rs.getDouble("balance"));
+                    out.put(rs.getInt(1), rs.getDouble(2));
                 }
             }
 
@@ -208,8 +594,210 @@ public class StudentDao {
         }
     }
 
+    // ---------- Aging: receivables by days overdue ----------
+    /**
+     * Streams an aging row for every student as of 'asOf', in db id order,
+     * from one ordered pass over each ledger table (see AgingEngine).
+     * Returns the number of ledger rows read.
+     */
+    public long forEachAging(LocalDate asOf, java.util.function.Consumer<AgingRow> handler) {
+        try (Connection c = Db.connect()) {
+            return new AgingEngine(asOf).run(c, handler);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to compute aging", e);
+        }
+    }
+
+    /**
+     * Oldest overdue bucket (AgingRow.BUCKET_LABELS index, or
+     * AgingRow.NOTHING_DUE) for each student db-id as of 'asOf'.
+     */
+    public IntIntMap getAgingBuckets(LocalDate asOf) {
+        IntIntMap out = new IntIntMap();
+        forEachAging(asOf, row -> out.put(row.studentDbId(), row.oldestBucket()));
+        return out;
+    }
+
+    /**
+     * Same as getAgingBuckets(asOf), for just the given students: only
+     * their ledger rows are read, so the cost follows the number of ids
+     * (at most a ChangeSet or a page of them), not the roster.
+     */
+    public IntIntMap getAgingBuckets(LocalDate asOf, Collection<Integer> studentDbIds) {
+        IntIntMap out = new IntIntMap(studentDbIds.size());
+        if (studentDbIds.isEmpty()) {
+            return out;
+        }
+        int[] ids = studentDbIds.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        try (Connection c = Db.connect()) {
+            new AgingEngine(asOf).run(c, ids, row -> out.put(row.studentDbId(), row.oldestBucket()));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to compute aging", e);
+        }
+        return out;
+    }
+
+    // ---------- Month balance table: verification / repair ----------
+    /**
+     * Recomputes the open months of student_month_balance from the last
+     * period close's checkpoint and the raw ledger, and returns one line per
+     * (student, month) whose stored totals or closing balance drift from it.
+     * Closed months are frozen and not read. At most 'limit' lines are
+     * returned.
+     */
+    public List<String> verifyMonthBalances(int limit) {
+        String sql = """
+        WITH expected AS (
+        """ + PeriodClose.RECOMPUTED_OPEN_SELECT + """
+        )
+        SELECT COALESCE(e.student_id, b.student_id) AS student_id,
+               COALESCE(e.ym, b.ym) AS ym,
+               COALESCE(e.charges, 0) AS e_charges, COALESCE(b.charges, 0) AS b_charges,
+               COALESCE(e.adjustments, 0) AS e_adjustments, COALESCE(b.adjustments, 0) AS b_adjustments,
+               COALESCE(e.payments, 0) AS e_payments, COALESCE(b.payments, 0) AS b_payments,
+               e.closing_balance AS e_closing, b.closing_balance AS b_closing
+        FROM expected e
+        FULL OUTER JOIN student_month_balance b ON b.student_id = e.student_id AND b.ym = e.ym
+        WHERE COALESCE(e.ym, b.ym) >= substr(%s, 1, 7)
+        """.formatted(PeriodClose.OPEN_FROM);
+
+        List<String> drift = new ArrayList<>();
+
+        try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next() && drift.size() < limit) {
+                double eCharges = rs.getDouble("e_charges");
+                double eAdj = rs.getDouble("e_adjustments");
+                double ePay = rs.getDouble("e_payments");
+                double bCharges = rs.getDouble("b_charges");
+                double bAdj = rs.getDouble("b_adjustments");
+                double bPay = rs.getDouble("b_payments");
+
+                // a stored month whose ledger rows were all deleted only has to be zero
+                Double eClosing = (Double) rs.getObject("e_closing");
+                Double bClosing = (Double) rs.getObject("b_closing");
+                boolean closingDrift = eClosing != null && (bClosing == null || differs(eClosing, bClosing));
+
+                if (differs(eCharges, bCharges) || differs(eAdj, bAdj) || differs(ePay, bPay) || closingDrift) {
+                    drift.add("student " + rs.getInt("student_id") + " " + rs.getString("ym")
+                            + ": expected charges/adj/payments/closing "
+                            + eCharges + "/" + eAdj + "/" + ePay + "/" + eClosing
+                            + " but table has "
+                            + bCharges + "/" + bAdj + "/" + bPay + "/" + bClosing);
+                }
+            }
+            return drift;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to verify month balances", e);
+        }
+    }
+
+    /**
+     * Rebuilds the open months of student_month_balance from the last
+     * checkpoint and the raw ledger. Returns the number of (student, month)
+     * rows written.
+     */
+    public int rebuildMonthBalances() {
+        return write("Failed to rebuild month balances", PeriodClose::rebuildOpen);
+    }
+
+    private static boolean differs(double a, double b) {
+        return Math.abs(a - b) > 0.000001;
+    }
+
+    // ---------- Period close ----------
+    /**
+     * Last closed month, or null when no month has been closed.
+     */
+    public YearMonth closedThrough() {
+        try (Connection c = Db.connect(); Statement st = c.createStatement();
+                ResultSet rs = st.executeQuery("SELECT MAX(ym) FROM period_close")) {
+            String ym = rs.next() ? rs.getString(1) : null;
+            return ym == null ? null : YearMonth.parse(ym);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read closed period", e);
+        }
+    }
+
+    /**
+     * First day of the first open month as 'YYYY-MM-DD', or "" when nothing
+     * is closed. Ledger rows dated before it are rejected.
+     */
+    public String firstOpenDate() {
+        YearMonth closed = closedThrough();
+        return closed == null ? "" : closed.plusMonths(1).atDay(1).toString();
+    }
+
+    /**
+     * Closes every month up to 'through', which must be after the last
+     * closed month and before the current one. Writes each student's
+     * balance at the end of it as the opening balance of the next month;
+     * from then on ledger writes dated up to 'through' are rejected.
+     */
+    public PeriodCloseResult closePeriod(YearMonth through) {
+        if (!through.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException("Only months before the current one can be closed.");
+        }
+
+        String checkpointSql = """
+            INSERT INTO opening_balance (student_id, ym, balance)
+            SELECT id, ?, balance
+            FROM (
+                SELECT s.id, (
+                    SELECT b.closing_balance
+                    FROM student_month_balance b
+                    WHERE b.student_id = s.id AND b.ym <= ?
+                    ORDER BY b.ym DESC
+                    LIMIT 1
+                ) AS balance
+                FROM students s
+            )
+            WHERE balance IS NOT NULL
+            """;
+
+        long started = System.nanoTime();
+
+        int students = write("Failed to close period", c -> {
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT MAX(ym) FROM period_close")) {
+                String closed = rs.next() ? rs.getString(1) : null;
+                if (closed != null && closed.compareTo(through.toString()) >= 0) {
+                    throw new IllegalArgumentException("Months up to " + closed + " are already closed.");
+                }
+            }
+
+            int n;
+            try (PreparedStatement ps = c.prepareStatement(checkpointSql)) {
+                ps.setString(1, through.plusMonths(1).toString());
+                ps.setString(2, through.toString());
+                n = ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO period_close (ym, students) VALUES (?, ?)")) {
+                ps.setString(1, through.toString());
+                ps.setInt(2, n);
+                ps.executeUpdate();
+            }
+            return n;
+        });
+
+        return new PeriodCloseResult(through, students, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public static class PeriodCloseResult {
+
+        public final YearMonth through;
+        public final int checkpoints; // students with an opening balance written
+        public final long elapsedMs;
+
+        public PeriodCloseResult(YearMonth through, int checkpoints, long elapsedMs) {
+            this.through = through;
+            this.checkpoints = checkpoints;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
     // ---------- Excel import helper (upsert by student_id) ----------
-    public ImportResult upsertMany(List<Student> students) {
+    public ImportResult upsertMany(List<StudentRecord> students) {
         String sql = """
             INSERT INTO students (student_id, full_name, batch, cgpa, semester_cgpa, billing_start_month)
             VALUES (?, ?, ?, ?, ?, ?)
@@ -221,51 +809,287 @@ public class StudentDao {
                 billing_start_month = excluded.billing_start_month
             """;
 
-        int processed = 0;
-        int failed = 0;
+        String resetWatermarkSql = """
+            DELETE FROM charge_watermarks
+            WHERE student_id = (
+                SELECT id FROM students
+                WHERE student_id = ? AND substr(billing_start_month, 1, 7) > substr(?, 1, 7)
+            )
+            """;
+
+        return write("Failed to import students", c -> {
+            int processed = 0;
+            int failed = 0;
+            List<String> keys = new ArrayList<>();
 
-        try (Connection c = Db.connect(); PreparedStatement ps = c.prepareStatement(sql)) {
+            try (PreparedStatement ps = c.prepareStatement(sql);
+                    PreparedStatement reset = c.prepareStatement(resetWatermarkSql)) {
 
-            c.setAutoCommit(false);
-            try {
-                for (Student s : students) {
+                for (StudentRecord s : students) {
                     try {
-                        ps.setString(1, s.getStudentId());
-                        ps.setString(2, s.getFullName());
-                        ps.setString(3, s.getBatch());
-                        ps.setObject(4, s.getCgpa());
-                        ps.setObject(5, s.getSemesterCgpa());
-                        ps.setString(6, s.getBillingStartMonth());
+                        reset.setString(1, s.studentId());
+                        reset.setString(2, s.billingStartMonth());
+                        reset.addBatch();
+
+                        ps.setString(1, s.studentId());
+                        ps.setString(2, s.fullName());
+                        ps.setString(3, s.batch());
+                        ps.setObject(4, s.cgpa());
+                        ps.setObject(5, s.semesterCgpa());
+                        ps.setString(6, s.billingStartMonth());
                         ps.addBatch();
+                        keys.add(s.studentId());
                         processed++;
                     } catch (Exception ex) {
                         failed++;
                     }
                 }
+                reset.executeBatch();
                 ps.executeBatch();
-                c.commit();
-            } catch (Exception e) {
-                c.rollback();
-                throw e;
-            } finally {
-                c.setAutoCommit(true);
             }
 
-            return new ImportResult(processed, failed);
-
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to import students", e);
-        }
+            ChangeSet changes = keys.size() > ChangeSet.MAX_ROWS
+                    ? ChangeSet.fullReload()
+                    : ChangeSet.upserted(findWhereIn(c, "student_id", keys, YearMonth.now()));
+            return new ImportResult(processed, failed, changes);
+        });
     }
 
     public static class ImportResult {
 
         public final int processed;
         public final int failed;
+        public final ChangeSet changes;
 
-        public ImportResult(int processed, int failed) {
+        public ImportResult(int processed, int failed, ChangeSet changes) {
             this.processed = processed;
             this.failed = failed;
+            this.changes = changes;
+        }
+    }
+
+    // ---------- Payments: bank statement ingestion ----------
+    /**
+     * student_id -> db id for the whole roster, so bank lines can be
+     * resolved in memory instead of with a lookup per line.
+     */
+    public Map<String, Integer> studentIdIndex() {
+        String sql = "SELECT id, student_id FROM students";
+
+        try (Connection c = Db.connect(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+
+            Map<String, Integer> index = new HashMap<>();
+            while (rs.next()) {
+                index.put(rs.getString(2), rs.getInt(1));
+            }
+            return index;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to index students", e);
+        }
+    }
+
+    /**
+     * Inserts the payments in one batch on the ledger writer, skipping any
+     * whose reference_no is already recorded (earlier in this batch too), so
+     * feeding the same statement twice adds nothing. Payments without a
+     * reference_no cannot be matched and are always inserted.
+     */
+    public PaymentBatchResult insertPayments(List<PaymentRecord> payments) {
+        return write("Failed to insert payments", c -> {
+            int inserted = insertNewPayments(c, payments);
+            return new PaymentBatchResult(inserted, payments.size() - inserted);
+        });
+    }
+
+    /**
+     * Inserts the payments whose reference_no is not on file yet; returns
+     * how many were inserted.
+     */
+    private static int insertNewPayments(Connection c, List<PaymentRecord> payments) throws SQLException {
+        String insertSql = """
+            INSERT INTO payments (student_id, payment_date, amount, method, reference_no, note)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+        List<String> references = new ArrayList<>(payments.size());
+        for (PaymentRecord p : payments) {
+            if (p.referenceNo() != null) {
+                references.add(p.referenceNo());
+            }
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(insertSql)) {
+
+            // a plain insert behind the references looked up a few hundred at a time: INSERT ... SELECT
+            // ... WHERE NOT EXISTS on the same table materialises its row first and runs at half the speed
+            Set<String> seen = recordedReferences(c, references);
+            int inserted = 0;
+            for (PaymentRecord p : payments) {
+                if (p.referenceNo() != null && !seen.add(p.referenceNo())) {
+                    continue;
+                }
+                ps.setInt(1, p.studentDbId());
+                ps.setString(2, p.paymentDate());
+                ps.setDouble(3, p.amount());
+                ps.setString(4, p.method());
+                ps.setString(5, p.referenceNo());
+                ps.setString(6, p.note());
+                ps.addBatch();
+                inserted++;
+            }
+            if (inserted > 0) {
+                ps.executeBatch();
+            }
+            return inserted;
+        }
+    }
+
+    /**
+     * Defers the month balance triggers on payments for a bulk load (see
+     * MonthBalanceTriggers.defer); finishPaymentBulkLoad applies everything
+     * inserted since in one pass and puts the triggers back. Only for loads
+     * that have the database to themselves (the BULK_LOAD profile): a
+     * payment deleted in between would never reach the month table. If the
+     * process dies first, Schema.init finishes the load at the next start.
+     */
+    public void startPaymentBulkLoad() {
+        write("Failed to start payment bulk load", c -> MonthBalanceTriggers.defer(c, "payments"));
+    }
+
+    /**
+     * Applies the payments inserted since startPaymentBulkLoad to
+     * student_month_balance and re-creates the triggers. Returns the number
+     * of (student, month) balance rows updated.
+     */
+    public int finishPaymentBulkLoad() {
+        return write("Failed to finish payment bulk load", c -> MonthBalanceTriggers.resume(c, "payments"));
+    }
+
+    public static class PaymentBatchResult {
+
+        public final int inserted;
+        public final int duplicates; // reference_no already recorded
+
+        public PaymentBatchResult(int inserted, int duplicates) {
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+        }
+    }
+
+    // ---------- Payments: reconciliation ----------
+    /**
+     * The given references that are already recorded in payments.
+     */
+    public Set<String> recordedReferences(Collection<String> references) {
+        try (Connection c = Db.connect()) {
+            return recordedReferences(c, references);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to look up payment references", e);
+        }
+    }
+
+    private static Set<String> recordedReferences(Connection c, Collection<String> references) throws SQLException {
+        Set<String> found = new HashSet<>();
+        List<String> refs = new ArrayList<>(references);
+        int chunk = 500;
+
+        for (int from = 0; from < refs.size(); from += chunk) {
+            List<String> part = refs.subList(from, Math.min(refs.size(), from + chunk));
+            String sql = "SELECT reference_no FROM payments WHERE reference_no IN ("
+                    + "?,".repeat(part.size() - 1) + "?)";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (int i = 0; i < part.size(); i++) {
+                    ps.setString(i + 1, part.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        found.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Records a reconciliation run in one transaction: the accepted
+     * payments (skipping references already on file) and the lines queued
+     * for review. A line queued again replaces its earlier entry (same
+     * reference, or same source and line when it has none), and queue
+     * entries for references now accepted are resolved.
+     */
+    public ReconcileWriteResult recordReconciliation(List<PaymentRecord> accepted, List<PaymentReview> review) {
+        String dequeueSql = "DELETE FROM payment_review WHERE reference_no = ?";
+        String dequeueLineSql = "DELETE FROM payment_review WHERE reference_no IS NULL AND source = ? AND line_no = ?";
+        String queueSql = """
+            INSERT INTO payment_review (source, line_no, reference_no, payment_date, amount, student_id, full_name,
+                                        batch, reason, candidate_id, score, raw_line)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        return write("Failed to record reconciliation", c -> {
+            int inserted = insertNewPayments(c, accepted);
+
+            try (PreparedStatement dequeue = c.prepareStatement(dequeueSql);
+                 PreparedStatement dequeueLine = c.prepareStatement(dequeueLineSql);
+                 PreparedStatement queue = c.prepareStatement(queueSql)) {
+
+                for (PaymentRecord p : accepted) {
+                    dequeue.setString(1, p.referenceNo());
+                    dequeue.addBatch();
+                }
+                for (PaymentReview r : review) {
+                    if (r.referenceNo() != null) {
+                        dequeue.setString(1, r.referenceNo());
+                        dequeue.addBatch();
+                    } else {
+                        dequeueLine.setString(1, r.source());
+                        dequeueLine.setLong(2, r.lineNo());
+                        dequeueLine.addBatch();
+                    }
+
+                    queue.setString(1, r.source());
+                    queue.setLong(2, r.lineNo());
+                    queue.setString(3, r.referenceNo());
+                    queue.setString(4, r.paymentDate());
+                    queue.setObject(5, r.amount());
+                    queue.setString(6, r.studentId());
+                    queue.setString(7, r.fullName());
+                    queue.setString(8, r.batch());
+                    queue.setString(9, r.reason());
+                    queue.setObject(10, r.candidateDbId());
+                    queue.setDouble(11, r.score());
+                    queue.setString(12, r.rawLine());
+                    queue.addBatch();
+                }
+                dequeue.executeBatch();
+                dequeueLine.executeBatch();
+                queue.executeBatch();
+            }
+            return new ReconcileWriteResult(inserted, accepted.size() - inserted, review.size());
+        });
+    }
+
+    public static class ReconcileWriteResult {
+
+        public final int inserted;
+        public final int duplicates; // reference_no already recorded
+        public final int queued;
+
+        public ReconcileWriteResult(int inserted, int duplicates, int queued) {
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+            this.queued = queued;
+        }
+    }
+
+    public int countPaymentReviews() {
+        try (Connection c = Db.connect(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM payment_review")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to count payment reviews", e);
         }
     }
     // List adjustments for a student
@@ -304,23 +1128,22 @@ public class StudentDao {
     }
 
 // Add a raw adjustment (+ or -)
-    public void addAdjustment(int studentDbId, LocalDate date, double amount, String note) {
+    public ChangeSet addAdjustment(int studentDbId, LocalDate date, double amount, String note) {
         String sql = """
         INSERT INTO account_adjustments (student_id, adj_date, amount, note)
         VALUES (?, ?, ?, ?)
         """;
 
-        try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
-
-            ps.setInt(1, studentDbId);
-            ps.setString(2, date.toString()); // YYYY-MM-DD
-            ps.setDouble(3, amount);
-            ps.setString(4, (note == null || note.trim().isEmpty()) ? null : note.trim());
-            ps.executeUpdate();
-
-        } catch (java.sql.SQLException e) {
-            throw new RuntimeException("Failed to add adjustment", e);
-        }
+        return write("Failed to add adjustment", c -> {
+            try (java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setInt(1, studentDbId);
+                ps.setString(2, date.toString()); // YYYY-MM-DD
+                ps.setDouble(3, amount);
+                ps.setString(4, (note == null || note.trim().isEmpty()) ? null : note.trim());
+                ps.executeUpdate();
+            }
+            return ChangeSet.upserted(findWhereIn(c, "id", List.of(studentDbId), YearMonth.now()));
+        });
     }
 
     /**
@@ -328,14 +1151,14 @@ public class StudentDao {
      * one adjustment = (desired - current). This is your “manual edit current
      * balance” feature.
      */
-    public void setBalanceAsOfCurrentMonth(int studentDbId, double desiredBalance, String note) {
+    public ChangeSet setBalanceAsOfCurrentMonth(int studentDbId, double desiredBalance, String note) {
         YearMonth asOf = YearMonth.now();
-        double current = getBalancesAsOf(asOf).getOrDefault(studentDbId, 0.0);
+        double current = getStudentBalanceAsOf(studentDbId, asOf);
         double delta = desiredBalance - current;
 
         // if already equal (within a tiny tolerance), do nothing
         if (Math.abs(delta) < 0.000001) {
-            return;
+            return ChangeSet.none();
         }
 
         String finalNote = (note == null ? "" : note.trim());
@@ -343,120 +1166,105 @@ public class StudentDao {
             finalNote = "Set balance to " + desiredBalance;
         }
 
-        addAdjustment(studentDbId, LocalDate.now(), delta, finalNote);
+        return addAdjustment(studentDbId, LocalDate.now(), delta, finalNote);
     }
     
     // -------------------- REPORTS (LAST 12 MONTHS) --------------------
-    public java.util.List<com.marzuque.sms.model.MonthlyReportRow> buildStudentReportPreviousMonths(
-            int studentDbId, YearMonth endMonthInclusive, int monthsBack) {
+    public MonthlySeries buildStudentReportPreviousMonths(int studentDbId, YearMonth endMonthInclusive, int monthsBack) {
 
         if (monthsBack < 0) {
             monthsBack = 0;
         }
 
-        YearMonth startMonth = endMonthInclusive.minusMonths(monthsBack);
-
-        // Starting balance = end of month BEFORE startMonth
-        double running = getStudentBalanceAsOf(studentDbId, startMonth.minusMonths(1));
-
-        java.util.Map<String, Double> charges = sumChargesByYmForStudent(studentDbId, startMonth, endMonthInclusive);
-        java.util.Map<String, Double> adjs = sumAdjustmentsByYmForStudent(studentDbId, startMonth, endMonthInclusive);
-        java.util.Map<String, Double> pays = sumPaymentsByYmForStudent(studentDbId, startMonth, endMonthInclusive);
-
-        java.util.List<com.marzuque.sms.model.MonthlyReportRow> rows = new java.util.ArrayList<>();
-        YearMonth cur = startMonth;
-
-        while (!cur.isAfter(endMonthInclusive)) {
-            String ym = cur.toString(); // "YYYY-MM"
-            double c = charges.getOrDefault(ym, 0.0);
-            double a = adjs.getOrDefault(ym, 0.0);
-            double p = pays.getOrDefault(ym, 0.0);
-
-            running = running + c + a - p;
-            rows.add(new com.marzuque.sms.model.MonthlyReportRow(ym, c, a, p, running));
-
-            cur = cur.plusMonths(1);
-        }
-
-        return rows;
+        return queryMonthlyReport("id = ?1", studentDbId, endMonthInclusive.minusMonths(monthsBack), monthsBack + 1);
     }
 
-    public java.util.List<com.marzuque.sms.model.MonthlyReportRow> buildBatchReportPreviousMonths(
-            String batch, YearMonth endMonthInclusive, int monthsBack) {
+    public MonthlySeries buildBatchReportPreviousMonths(String batch, YearMonth endMonthInclusive, int monthsBack) {
 
         if (monthsBack < 0) {
             monthsBack = 0;
         }
 
-        YearMonth startMonth = endMonthInclusive.minusMonths(monthsBack);
+        return queryMonthlyReport("batch = ?1", batch, endMonthInclusive.minusMonths(monthsBack), monthsBack + 1);
+    }
 
-        // Starting balance = end of month BEFORE startMonth
-        double running = getBatchBalanceAsOf(batch, startMonth.minusMonths(1));
+    /**
+     * Whole report series in one statement: the opening balance (closing
+     * balance before startMonth, labelled '') followed by each month's summed
+     * flows. Months without rows stay zero in the series and the running
+     * ending balance is accumulated in MonthlySeries.
+     *
+     * scopeWhere filters students and refers to its value as ?1.
+     */
+    private MonthlySeries queryMonthlyReport(String scopeWhere, Object scopeValue, YearMonth startMonth, int months) {
+        YearMonth endMonthInclusive = startMonth.plusMonths(months - 1);
 
-        java.util.Map<String, Double> charges = sumChargesByYmForBatch(batch, startMonth, endMonthInclusive);
-        java.util.Map<String, Double> adjs = sumAdjustmentsByYmForBatch(batch, startMonth, endMonthInclusive);
-        java.util.Map<String, Double> pays = sumPaymentsByYmForBatch(batch, startMonth, endMonthInclusive);
+        String sql = """
+        WITH scope(id) AS (
+            SELECT id FROM students WHERE %s
+        )
+        SELECT '' AS ym, 0, 0, 0, COALESCE(SUM((
+            SELECT b.closing_balance
+            FROM student_month_balance b
+            WHERE b.student_id = scope.id AND b.ym < ?2
+            ORDER BY b.ym DESC
+            LIMIT 1
+        )), 0)
+        FROM scope
+        UNION ALL
+        SELECT b.ym, SUM(b.charges), SUM(b.adjustments), SUM(b.payments), 0
+        FROM student_month_balance b
+        JOIN scope ON scope.id = b.student_id
+        WHERE b.ym >= ?2 AND b.ym <= ?3
+        GROUP BY b.ym
+        """.formatted(scopeWhere);
+
+        MonthlySeries series = new MonthlySeries(startMonth, months);
+        double opening = 0;
 
-        java.util.List<com.marzuque.sms.model.MonthlyReportRow> rows = new java.util.ArrayList<>();
-        YearMonth cur = startMonth;
+        try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
 
-        while (!cur.isAfter(endMonthInclusive)) {
-            String ym = cur.toString();
-            double c = charges.getOrDefault(ym, 0.0);
-            double a = adjs.getOrDefault(ym, 0.0);
-            double p = pays.getOrDefault(ym, 0.0);
+            ps.setObject(1, scopeValue);
+            ps.setString(2, startMonth.toString());
+            ps.setString(3, endMonthInclusive.toString());
 
-            running = running + c + a - p;
-            rows.add(new com.marzuque.sms.model.MonthlyReportRow(ym, c, a, p, running));
+            try (java.sql.ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String ym = rs.getString(1);
+                    if (ym.isEmpty()) {
+                        opening = rs.getDouble(5);
+                    } else {
+                        series.set(series.offsetOf(ym), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4));
+                    }
+                }
+            }
 
-            cur = cur.plusMonths(1);
-        }
+            series.setRunningBalances(opening);
+            return series;
 
-        return rows;
+        } catch (java.sql.SQLException e) {
+            throw new RuntimeException("Failed to build monthly report", e);
+        }
     }
 
 // ---- balances as-of (single student / batch) ----
     public double getStudentBalanceAsOf(int studentDbId, YearMonth asOf) {
-        String asOfMonth = asOf.toString() + "-01";
-        String endDate = asOf.atEndOfMonth().toString();
-
         String sql = """
-        SELECT
-           COALESCE(ch.total_charges, 0)
-         + COALESCE(adj.total_adjustments, 0)
-         - COALESCE(p.total_payments, 0) AS balance
-        FROM students s
-        LEFT JOIN (
-            SELECT student_id, SUM(amount) AS total_charges
-            FROM tuition_charges
-            WHERE charge_month <= ?
-            GROUP BY student_id
-        ) ch ON ch.student_id = s.id
-        LEFT JOIN (
-            SELECT student_id, SUM(amount) AS total_adjustments
-            FROM account_adjustments
-            WHERE adj_date <= ?
-            GROUP BY student_id
-        ) adj ON adj.student_id = s.id
-        LEFT JOIN (
-            SELECT student_id, SUM(amount) AS total_payments
-            FROM payments
-            WHERE payment_date <= ?
-            GROUP BY student_id
-        ) p ON p.student_id = s.id
-        WHERE s.id = ?
+        SELECT closing_balance
+        FROM student_month_balance
+        WHERE student_id = ? AND ym <= ?
+        ORDER BY ym DESC
+        LIMIT 1
         """;
 
         try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setString(1, asOfMonth);
-            ps.setString(2, endDate);
-            ps.setString(3, endDate);
-            ps.setInt(4, studentDbId);
+            ps.setInt(1, studentDbId);
+            ps.setString(2, asOf.toString());
 
             try (java.sql.ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("balance");
+                    return rs.getDouble("closing_balance");
                 }
                 return 0.0;
             }
@@ -467,252 +1275,30 @@ public class StudentDao {
     }
 
     public double getBatchBalanceAsOf(String batch, YearMonth asOf) {
-        String asOfMonth = asOf.toString() + "-01";
-        String endDate = asOf.atEndOfMonth().toString();
-
-        String sql = """
-        SELECT
-           COALESCE(ch.total_charges, 0)
-         + COALESCE(adj.total_adjustments, 0)
-         - COALESCE(p.total_payments, 0) AS balance
-        FROM (
-            SELECT id
-            FROM students
-            WHERE batch = ?
-        ) s
-        LEFT JOIN (
-            SELECT s2.id AS student_id, SUM(tc.amount) AS total_charges
-            FROM students s2
-            JOIN tuition_charges tc ON tc.student_id = s2.id
-            WHERE s2.batch = ? AND tc.charge_month <= ?
-            GROUP BY s2.id
-        ) ch ON ch.student_id = s.id
-        LEFT JOIN (
-            SELECT s2.id AS student_id, SUM(a.amount) AS total_adjustments
-            FROM students s2
-            JOIN account_adjustments a ON a.student_id = s2.id
-            WHERE s2.batch = ? AND a.adj_date <= ?
-            GROUP BY s2.id
-        ) adj ON adj.student_id = s.id
-        LEFT JOIN (
-            SELECT s2.id AS student_id, SUM(p.amount) AS total_payments
-            FROM students s2
-            JOIN payments p ON p.student_id = s2.id
-            WHERE s2.batch = ? AND p.payment_date <= ?
-            GROUP BY s2.id
-        ) p ON p.student_id = s.id
-        """;
-
-        // That query returns one row per student; we need SUM across all of them.
-        // Easiest: compute totals directly with three separate SUM queries, then combine.
-        double totalCharges = sumChargesUpToForBatch(batch, asOfMonth);
-        double totalAdj = sumAdjustmentsUpToForBatch(batch, endDate);
-        double totalPay = sumPaymentsUpToForBatch(batch, endDate);
-        return totalCharges + totalAdj - totalPay;
-    }
-
-// ---- grouped sums (by YYYY-MM) ----
-    private java.util.Map<String, Double> sumChargesByYmForStudent(int studentDbId, YearMonth start, YearMonth end) {
-        String startMonth = start.toString() + "-01";
-        String endMonth = end.toString() + "-01";
-
-        String sql = """
-        SELECT substr(charge_month, 1, 7) AS ym, SUM(amount) AS total
-        FROM tuition_charges
-        WHERE student_id = ?
-          AND charge_month >= ?
-          AND charge_month <= ?
-        GROUP BY ym
-        """;
-
-        return queryYmSum(sql, ps -> {
-            ps.setInt(1, studentDbId);
-            ps.setString(2, startMonth);
-            ps.setString(3, endMonth);
-        });
-    }
-
-    private java.util.Map<String, Double> sumAdjustmentsByYmForStudent(int studentDbId, YearMonth start, YearMonth end) {
-        LocalDate startDate = start.atDay(1);
-        LocalDate endDate = end.atEndOfMonth();
-
-        String sql = """
-        SELECT substr(adj_date, 1, 7) AS ym, SUM(amount) AS total
-        FROM account_adjustments
-        WHERE student_id = ?
-          AND adj_date >= ?
-          AND adj_date <= ?
-        GROUP BY ym
-        """;
-
-        return queryYmSum(sql, ps -> {
-            ps.setInt(1, studentDbId);
-            ps.setString(2, startDate.toString());
-            ps.setString(3, endDate.toString());
-        });
-    }
-
-    private java.util.Map<String, Double> sumPaymentsByYmForStudent(int studentDbId, YearMonth start, YearMonth end) {
-        LocalDate startDate = start.atDay(1);
-        LocalDate endDate = end.atEndOfMonth();
-
-        String sql = """
-        SELECT substr(payment_date, 1, 7) AS ym, SUM(amount) AS total
-        FROM payments
-        WHERE student_id = ?
-          AND payment_date >= ?
-          AND payment_date <= ?
-        GROUP BY ym
-        """;
-
-        return queryYmSum(sql, ps -> {
-            ps.setInt(1, studentDbId);
-            ps.setString(2, startDate.toString());
-            ps.setString(3, endDate.toString());
-        });
-    }
-
-    private java.util.Map<String, Double> sumChargesByYmForBatch(String batch, YearMonth start, YearMonth end) {
-        String startMonth = start.toString() + "-01";
-        String endMonth = end.toString() + "-01";
-
-        String sql = """
-        SELECT substr(tc.charge_month, 1, 7) AS ym, SUM(tc.amount) AS total
-        FROM students s
-        JOIN tuition_charges tc ON tc.student_id = s.id
-        WHERE s.batch = ?
-          AND tc.charge_month >= ?
-          AND tc.charge_month <= ?
-        GROUP BY ym
-        """;
-
-        return queryYmSum(sql, ps -> {
-            ps.setString(1, batch);
-            ps.setString(2, startMonth);
-            ps.setString(3, endMonth);
-        });
-    }
-
-    private java.util.Map<String, Double> sumAdjustmentsByYmForBatch(String batch, YearMonth start, YearMonth end) {
-        LocalDate startDate = start.atDay(1);
-        LocalDate endDate = end.atEndOfMonth();
-
-        String sql = """
-        SELECT substr(a.adj_date, 1, 7) AS ym, SUM(a.amount) AS total
-        FROM students s
-        JOIN account_adjustments a ON a.student_id = s.id
-        WHERE s.batch = ?
-          AND a.adj_date >= ?
-          AND a.adj_date <= ?
-        GROUP BY ym
-        """;
-
-        return queryYmSum(sql, ps -> {
-            ps.setString(1, batch);
-            ps.setString(2, startDate.toString());
-            ps.setString(3, endDate.toString());
-        });
-    }
-
-    private java.util.Map<String, Double> sumPaymentsByYmForBatch(String batch, YearMonth start, YearMonth end) {
-        LocalDate startDate = start.atDay(1);
-        LocalDate endDate = end.atEndOfMonth();
-
         String sql = """
-        SELECT substr(p.payment_date, 1, 7) AS ym, SUM(p.amount) AS total
+        SELECT COALESCE(SUM((
+            SELECT b.closing_balance
+            FROM student_month_balance b
+            WHERE b.student_id = s.id AND b.ym <= ?
+            ORDER BY b.ym DESC
+            LIMIT 1
+        )), 0) AS balance
         FROM students s
-        JOIN payments p ON p.student_id = s.id
         WHERE s.batch = ?
-          AND p.payment_date >= ?
-          AND p.payment_date <= ?
-        GROUP BY ym
         """;
 
-        return queryYmSum(sql, ps -> {
-            ps.setString(1, batch);
-            ps.setString(2, startDate.toString());
-            ps.setString(3, endDate.toString());
-        });
-    }
-
-// ---- totals up to a cutoff (for batch starting balance) ----
-    private double sumChargesUpToForBatch(String batch, String asOfMonthInclusiveYYYYMM01) {
-        String sql = """
-        SELECT COALESCE(SUM(tc.amount), 0) AS total
-        FROM students s
-        JOIN tuition_charges tc ON tc.student_id = s.id
-        WHERE s.batch = ? AND tc.charge_month <= ?
-        """;
         try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, batch);
-            ps.setString(2, asOfMonthInclusiveYYYYMM01);
-            try (java.sql.ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? rs.getDouble("total") : 0.0;
-            }
-        } catch (java.sql.SQLException e) {
-            throw new RuntimeException("Failed to sum batch charges", e);
-        }
-    }
 
-    private double sumAdjustmentsUpToForBatch(String batch, String asOfDateInclusiveYYYYMMDD) {
-        String sql = """
-        SELECT COALESCE(SUM(a.amount), 0) AS total
-        FROM students s
-        JOIN account_adjustments a ON a.student_id = s.id
-        WHERE s.batch = ? AND a.adj_date <= ?
-        """;
-        try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, batch);
-            ps.setString(2, asOfDateInclusiveYYYYMMDD);
-            try (java.sql.ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? rs.getDouble("total") : 0.0;
-            }
-        } catch (java.sql.SQLException e) {
-            throw new RuntimeException("Failed to sum batch adjustments", e);
-        }
-    }
+            ps.setString(1, asOf.toString());
+            ps.setString(2, batch);
 
-    private double sumPaymentsUpToForBatch(String batch, String asOfDateInclusiveYYYYMMDD) {
-        String sql = """
-        SELECT COALESCE(SUM(p.amount), 0) AS total
-        FROM students s
-        JOIN payments p ON p.student_id = s.id
-        WHERE s.batch = ? AND p.payment_date <= ?
-        """;
-        try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, batch);
-            ps.setString(2, asOfDateInclusiveYYYYMMDD);
             try (java.sql.ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? rs.getDouble("total") : 0.0;
-            }
-        } catch (java.sql.SQLException e) {
-            throw new RuntimeException("Failed to sum batch payments", e);
-        }
-    }
-
-// ---- tiny helper for "SELECT ym, SUM(...) GROUP BY ym" ----
-    @FunctionalInterface
-    private interface Binder {
-
-        void bind(java.sql.PreparedStatement ps) throws java.sql.SQLException;
-    }
-
-    private java.util.Map<String, Double> queryYmSum(String sql, Binder binder) {
-        java.util.Map<String, Double> map = new java.util.HashMap<>();
-        try (java.sql.Connection c = Db.connect(); java.sql.PreparedStatement ps = c.prepareStatement(sql)) {
-
-            binder.bind(ps);
-
-            try (java.sql.ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    map.put(rs.getString("ym"), rs.getDouble("total"));
-                }
+                return rs.next() ? rs.getDouble("balance") : 0.0;
             }
-            return map;
 
         } catch (java.sql.SQLException e) {
-            throw new RuntimeException("Failed to query monthly sums", e);
+            throw new RuntimeException("Failed to compute batch balance", e);
         }
     }
 
-}
\ No newline at end of file
+}
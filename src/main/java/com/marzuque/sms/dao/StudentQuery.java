@@ -0,0 +1,148 @@
+package com.marzuque.sms.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Filter and sort for the paged student queries. Every sort ends in a unique
+ * column so it doubles as a keyset: a page is fetched as "rows after the last
+ * key of the previous page" rather than by OFFSET.
+ *
+ * The search is a case-insensitive substring match (LIKE), or with fullText
+ * a prefix match of each word through the students_fts index, which can
+ * also rank the hits (Sort.RELEVANCE).
+ */
+public final class StudentQuery {
+
+    public enum Sort {
+        BATCH_STUDENT_ID("s.batch", "s.student_id"),
+        STUDENT_ID("s.student_id"),
+        FULL_NAME("s.full_name", "s.id"),
+        CGPA("COALESCE(s.cgpa, 0)", "s.id"),
+        SEMESTER_CGPA("COALESCE(s.semester_cgpa, 0)", "s.id"),
+        RELEVANCE("f.rank", "s.id"); // full-text search only
+
+        final String[] keyColumns;
+
+        Sort(String... keyColumns) {
+            this.keyColumns = keyColumns;
+        }
+    }
+
+    public final String batch;  // exact batch key, null = all
+    public final String search; // ID / name / batch text, case-insensitive; null = none
+    public final Sort sort;
+    public final boolean descending;
+    public final boolean fullText;
+
+    public StudentQuery(String batch, String search, Sort sort, boolean descending) {
+        this(batch, search, sort, descending, false);
+    }
+
+    public StudentQuery(String batch, String search, Sort sort, boolean descending, boolean fullText) {
+        String text = (search == null || search.isBlank()) ? null : search.trim();
+        if (fullText && text != null && matchExpression(text) == null) {
+            text = null; // nothing but punctuation: no usable words to match
+        }
+
+        this.batch = (batch == null || batch.isBlank()) ? null : batch;
+        this.search = text;
+        this.fullText = fullText;
+        this.descending = descending;
+
+        Sort s = sort == null ? Sort.BATCH_STUDENT_ID : sort;
+        this.sort = (s == Sort.RELEVANCE && !(fullText && text != null)) ? Sort.BATCH_STUDENT_ID : s;
+    }
+
+    public static StudentQuery all() {
+        return new StudentQuery(null, null, Sort.BATCH_STUDENT_ID, false);
+    }
+
+    /**
+     * Number of values in this query's keyset positions (StudentPage.lastKey).
+     */
+    public int keyLength() {
+        return sort.keyColumns.length;
+    }
+
+    /**
+     * FTS5 query for the words in text: every word must occur as a word
+     * prefix ("rah kh" finds "Rahim Khan"). Null when text has no words.
+     */
+    public static String matchExpression(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                terms.add("\"" + word + "\"*");
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    /**
+     * FROM clause over alias s, joined to the matching students_fts rows
+     * (alias f, with its bm25 rank) for a full-text search; appends its
+     * parameters to params.
+     */
+    String from(List<Object> params) {
+        if (!fullText || search == null) {
+            return " FROM students s";
+        }
+        params.add(matchExpression(search));
+        // weights: student_id, full_name, batch
+        return " FROM students s JOIN (SELECT rowid AS id, bm25(students_fts, 10.0, 5.0, 1.0) AS rank"
+                + " FROM students_fts WHERE students_fts MATCH ?) f ON f.id = s.id";
+    }
+
+    /**
+     * WHERE clause (starting with " WHERE", or empty) over alias s; appends
+     * its parameters to params.
+     */
+    String where(List<Object> params) {
+        List<String> terms = new ArrayList<>();
+        if (batch != null) {
+            terms.add("s.batch = ?");
+            params.add(batch);
+        }
+        if (search != null && !fullText) {
+            String like = "%" + search.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            terms.add("(s.student_id LIKE ? ESCAPE '\\' OR s.full_name LIKE ? ESCAPE '\\' OR s.batch LIKE ? ESCAPE '\\')");
+            params.add(like);
+            params.add(like);
+            params.add(like);
+        }
+        return terms.isEmpty() ? "" : " WHERE " + String.join(" AND ", terms);
+    }
+
+    String orderBy() {
+        String dir = descending ? " DESC" : " ASC";
+        return " ORDER BY " + String.join(dir + ", ", sort.keyColumns) + dir;
+    }
+
+    /**
+     * Row-value comparison selecting the rows after 'key' in this order.
+     */
+    String after(Object[] key, List<Object> params) {
+        for (Object k : key) {
+            params.add(k);
+        }
+        return "(" + String.join(", ", sort.keyColumns) + ") " + (descending ? "<" : ">")
+                + " (" + String.join(", ", Collections.nCopies(key.length, "?")) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof StudentQuery q)) {
+            return false;
+        }
+        return Objects.equals(batch, q.batch) && Objects.equals(search, q.search)
+                && sort == q.sort && descending == q.descending && fullText == q.fullText;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(batch, search, sort, descending, fullText);
+    }
+}
@@ -0,0 +1,234 @@
+package com.marzuque.sms.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small bounded pool of SQLite connections. Callers get a proxy whose close()
+ * hands the physical connection back instead of closing it, so existing
+ * try-with-resources code keeps working unchanged.
+ */
+final class ConnectionPool {
+
+    private static final long BORROW_TIMEOUT_MS = 30_000;
+
+    private final String url;
+    private final int maxConnections;
+    private final long leakThresholdMs;
+    private final boolean captureStacks;
+    private final DbProfile profile;
+
+    private final ArrayBlockingQueue<Connection> idle;
+    private final Semaphore permits;
+    private final Map<Borrowed, Borrow> borrowed = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakChecker;
+
+    private volatile boolean closed;
+
+    ConnectionPool(String url, int maxConnections, long leakThresholdMs, boolean captureStacks, DbProfile profile) {
+        this.url = url;
+        this.maxConnections = maxConnections;
+        this.leakThresholdMs = leakThresholdMs;
+        this.captureStacks = captureStacks;
+        this.profile = profile;
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+        this.permits = new Semaphore(maxConnections, true);
+
+        this.leakChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sms-db-leak-checker");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, leakThresholdMs / 2);
+        leakChecker.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    Connection borrow() {
+        if (closed) {
+            throw new IllegalStateException("Connection pool is shut down");
+        }
+
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Timed out waiting for a database connection ("
+                        + borrowed.size() + "/" + maxConnections + " in use). Possible connection leak:\n"
+                        + describeBorrows());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Connection physical = idle.poll();
+            if (physical == null || physical.isClosed()) {
+                physical = DriverManager.getConnection(url);
+                try {
+                    profile.apply(physical);
+                } catch (SQLException e) {
+                    closeQuietly(physical);
+                    throw e;
+                }
+            }
+
+            Borrowed handle = new Borrowed(physical);
+            Throwable site = captureStacks ? new Throwable("Connection borrowed here") : null;
+            borrowed.put(handle, new Borrow(Thread.currentThread().getName(), System.currentTimeMillis(), site));
+
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    handle);
+
+        } catch (SQLException e) {
+            permits.release();
+            throw new RuntimeException("Failed to open DB connection", e);
+        }
+    }
+
+    void shutdown() {
+        closed = true;
+        leakChecker.shutdownNow();
+
+        if (!borrowed.isEmpty()) {
+            System.err.println(">>> Db shutdown with " + borrowed.size() + " connection(s) still in use:\n"
+                    + describeBorrows());
+        }
+
+        Connection c;
+        while ((c = idle.poll()) != null) {
+            closeQuietly(c);
+        }
+    }
+
+    int inUse() {
+        return borrowed.size();
+    }
+
+    int idleCount() {
+        return idle.size();
+    }
+
+    private void giveBack(Borrowed handle) {
+        if (borrowed.remove(handle) == null) {
+            return; // already returned
+        }
+
+        Connection physical = handle.physical;
+        try {
+            boolean reusable = !closed && !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                // caller left a transaction open; never leak it into the next borrower
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (!reusable || !idle.offer(physical)) {
+                closeQuietly(physical);
+            }
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        for (Borrow b : borrowed.values()) {
+            long heldMs = now - b.since;
+            if (heldMs >= leakThresholdMs && !b.reported) {
+                b.reported = true;
+                System.err.println(">>> Possible DB connection leak: held " + heldMs + " ms by thread '"
+                        + b.thread + "'");
+                if (b.site != null) {
+                    b.site.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private String describeBorrows() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        for (Borrow b : borrowed.values()) {
+            sb.append("  - thread '").append(b.thread).append("' for ").append(now - b.since).append(" ms\n");
+        }
+        return sb.toString();
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static final class Borrow {
+
+        final String thread;
+        final long since;
+        final Throwable site;
+        volatile boolean reported;
+
+        Borrow(String thread, long since, Throwable site) {
+            this.thread = thread;
+            this.since = since;
+            this.site = site;
+        }
+    }
+
+    /**
+     * Proxy handler for one checkout. Identity-based so each borrow is tracked
+     * separately even when the same physical connection is reused.
+     */
+    private final class Borrowed implements InvocationHandler {
+
+        private final Connection physical;
+        private volatile boolean returned;
+
+        Borrowed(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Connection already returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
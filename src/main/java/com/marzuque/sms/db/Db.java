@@ -3,24 +3,139 @@ package com.marzuque.sms.db;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 
 public class Db {
 
     private static final String DB_RELATIVE_PATH = "data/sms.db";
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+    private static final long DEFAULT_LEAK_THRESHOLD_MS = 60_000;
 
-    public static Connection connect() {
+    private static volatile ConnectionPool pool;
+    private static volatile String unpooledUrl;
+    private static volatile DbProfile profile = DbProfile.DEFAULT;
+    private static String dbPath;
+    private static int configuredConnections;
+
+    /**
+     * Configures the connection pool with the profile chosen by the
+     * sms.db.profile property. Call once at startup (before Schema.init());
+     * calling again closes the previous pool first. maxConnections <= 0
+     * disables pooling (one physical connection per connect() call, as
+     * before) and is only meant for benchmarking.
+     */
+    public static synchronized void configure(String path, int maxConnections) {
+        configure(path, maxConnections, DbProfile.configured());
+    }
+
+    /**
+     * As configure(path, maxConnections), with the pragmas of 'dbProfile' on
+     * every connection. A single-connection profile caps the pool at one.
+     */
+    public static synchronized void configure(String path, int maxConnections, DbProfile dbProfile) {
+        shutdown();
+
+        File file = new File(path).getAbsoluteFile();
+        // Ensure folder exists
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        dbPath = file.getPath();
+        System.err.println(">>> SQLite DB path: " + dbPath);
+
+        long leakThresholdMs = Long.getLong("sms.db.leakThresholdMs", DEFAULT_LEAK_THRESHOLD_MS);
+        boolean captureStacks = Boolean.getBoolean("sms.db.leakStacks");
+
+        profile = dbProfile;
+        configuredConnections = maxConnections;
+        System.err.println(">>> SQLite profile: " + dbProfile.key);
+
+        String url = "jdbc:sqlite:" + dbPath;
+        if (maxConnections <= 0) {
+            unpooledUrl = url;
+            return;
+        }
+        int size = dbProfile.singleConnection ? 1 : maxConnections;
+        pool = new ConnectionPool(url, size, leakThresholdMs, captureStacks, dbProfile);
+    }
+
+    /**
+     * Runs 'work' with the database reopened under 'dbProfile' (typically
+     * BULK_LOAD for a large import), then reopens it with the previous
+     * profile and pool size. Nothing else may be using the database
+     * meanwhile: connections still borrowed when the pool switches are
+     * closed when they are returned.
+     */
+    public static synchronized <T> T withProfile(DbProfile dbProfile, java.util.concurrent.Callable<T> work)
+            throws Exception {
+        if (dbPath == null) {
+            configure(DB_RELATIVE_PATH, DEFAULT_MAX_CONNECTIONS);
+        }
+        String path = dbPath;
+        int connections = configuredConnections;
+        DbProfile previous = profile;
+
+        configure(path, connections, dbProfile);
         try {
-            // Ensure folder exists
-            new File("data").mkdirs();
+            return work.call();
+        } finally {
+            configure(path, connections, previous);
+        }
+    }
 
-            String absPath = new File(DB_RELATIVE_PATH).getAbsolutePath();
-            System.out.println(">>> SQLite DB path: " + absPath);
+    public static DbProfile profile() {
+        return profile;
+    }
 
-            String url = "jdbc:sqlite:" + absPath;
-            return DriverManager.getConnection(url);
+    /**
+     * Borrows a pooled connection. Closing it returns it to the pool.
+     */
+    public static Connection connect() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (Db.class) {
+                if (pool == null && unpooledUrl == null) {
+                    configure(DB_RELATIVE_PATH, DEFAULT_MAX_CONNECTIONS);
+                }
+                p = pool;
+            }
+        }
+        if (p == null) {
+            try {
+                Connection c = DriverManager.getConnection(unpooledUrl);
+                profile.apply(c);
+                return c;
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to connect DB", e);
+            }
+        }
+        return p.borrow();
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to connect DB", e);
+    /**
+     * Closes idle connections and stops the leak checker. Safe to call more
+     * than once.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
+        unpooledUrl = null;
+    }
+
+    public static synchronized String getPath() {
+        return dbPath;
+    }
+
+    public static int connectionsInUse() {
+        ConnectionPool p = pool;
+        return p == null ? 0 : p.inUse();
+    }
+
+    public static int idleConnections() {
+        ConnectionPool p = pool;
+        return p == null ? 0 : p.idleCount();
     }
 }
@@ -0,0 +1,82 @@
+package com.marzuque.sms.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Named sets of SQLite pragmas applied to every connection Db opens.
+ * Chosen with -Dsms.db.profile=interactive|bulk-load|default (interactive
+ * when unset).
+ *
+ * INTERACTIVE is for the app: WAL so readers never wait for the writer,
+ * synchronous=NORMAL (a power cut can lose the last few commits but never
+ * corrupts the file), a 64 MB page cache and 256 MB of memory-mapped I/O
+ * for the aggregate scans.
+ *
+ * BULK_LOAD is for unattended loads run on their own (see
+ * Db.withProfile): one connection holding an exclusive lock, the rollback
+ * journal kept in memory and no syncs. A crash mid-load can corrupt the
+ * file, so only use it on a database that can be rebuilt or restored. The
+ * journal stays in memory rather than off because the ledger writer rolls
+ * back to savepoints when a command fails.
+ *
+ * DEFAULT applies nothing: SQLite's own defaults (rollback journal, full
+ * sync, 2 MB cache).
+ */
+public enum DbProfile {
+
+    DEFAULT("default", false),
+
+    INTERACTIVE("interactive", false,
+            "PRAGMA journal_mode = WAL",
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -65536",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY",
+            "PRAGMA busy_timeout = 5000"),
+
+    BULK_LOAD("bulk-load", true,
+            "PRAGMA locking_mode = EXCLUSIVE",
+            "PRAGMA journal_mode = MEMORY",
+            "PRAGMA synchronous = OFF",
+            "PRAGMA cache_size = -262144",
+            "PRAGMA temp_store = MEMORY");
+
+    public final String key;
+    /** Holds an exclusive lock, so Db keeps a single connection. */
+    public final boolean singleConnection;
+    private final String[] pragmas;
+
+    DbProfile(String key, boolean singleConnection, String... pragmas) {
+        this.key = key;
+        this.singleConnection = singleConnection;
+        this.pragmas = pragmas;
+    }
+
+    /**
+     * The profile named by the sms.db.profile system property.
+     */
+    public static DbProfile configured() {
+        return fromKey(System.getProperty("sms.db.profile", INTERACTIVE.key));
+    }
+
+    public static DbProfile fromKey(String key) {
+        String k = key.trim().toLowerCase(Locale.ROOT);
+        for (DbProfile p : values()) {
+            if (p.key.equals(k) || p.name().toLowerCase(Locale.ROOT).equals(k)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown database profile: " + key);
+    }
+
+    void apply(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String pragma : pragmas) {
+                st.execute(pragma);
+            }
+        }
+    }
+}
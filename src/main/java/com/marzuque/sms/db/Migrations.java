@@ -0,0 +1,193 @@
+package com.marzuque.sms.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Numbered schema migrations tracked in PRAGMA user_version. Each migration
+ * runs in its own transaction together with the version bump, so a failed
+ * step leaves the database at the previous version.
+ *
+ * Append new migrations at the end; never renumber or edit shipped ones.
+ */
+public final class Migrations {
+
+    @FunctionalInterface
+    interface Step {
+
+        void apply(Connection c) throws SQLException;
+    }
+
+    private static final class Migration {
+
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "covering index for payments by student and date", sql("""
+                CREATE INDEX IF NOT EXISTS idx_payments_student_date
+                ON payments(student_id, payment_date, amount)
+                """)),
+            new Migration(2, "covering index for adjustments by student and date", sql("""
+                CREATE INDEX IF NOT EXISTS idx_adjustments_student_date
+                ON account_adjustments(student_id, adj_date, amount)
+                """)),
+            new Migration(3, "index for students by batch", sql("""
+                CREATE INDEX IF NOT EXISTS idx_students_batch
+                ON students(batch, student_id)
+                """)),
+            new Migration(4, "covering index for charges by student and month", sql("""
+                CREATE INDEX IF NOT EXISTS idx_charges_student_month
+                ON tuition_charges(student_id, charge_month, amount)
+                """)),
+            new Migration(5, "materialized student_month_balance kept by triggers", c -> {
+                try (Statement st = c.createStatement()) {
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS student_month_balance (
+                            student_id INTEGER NOT NULL,
+                            ym TEXT NOT NULL,
+                            charges REAL NOT NULL DEFAULT 0,
+                            adjustments REAL NOT NULL DEFAULT 0,
+                            payments REAL NOT NULL DEFAULT 0,
+                            closing_balance REAL NOT NULL DEFAULT 0,
+                            PRIMARY KEY (student_id, ym)
+                        ) WITHOUT ROWID
+                        """);
+                    MonthBalanceTriggers.create(st);
+                }
+                MonthBalanceTriggers.rebuild(c);
+            }),
+            new Migration(6, "index for paging students by name", sql("""
+                CREATE INDEX IF NOT EXISTS idx_students_name
+                ON students(full_name)
+                """)),
+            new Migration(7, "students_fts full-text index kept by triggers", sql("""
+                CREATE VIRTUAL TABLE IF NOT EXISTS students_fts USING fts5(
+                    student_id, full_name, batch,
+                    content = 'students', content_rowid = 'id',
+                    tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'
+                )
+                """, """
+                CREATE TRIGGER IF NOT EXISTS trg_students_fts_ins AFTER INSERT ON students BEGIN
+                    INSERT INTO students_fts (rowid, student_id, full_name, batch)
+                    VALUES (NEW.id, NEW.student_id, NEW.full_name, NEW.batch);
+                END
+                """, """
+                CREATE TRIGGER IF NOT EXISTS trg_students_fts_del AFTER DELETE ON students BEGIN
+                    INSERT INTO students_fts (students_fts, rowid, student_id, full_name, batch)
+                    VALUES ('delete', OLD.id, OLD.student_id, OLD.full_name, OLD.batch);
+                END
+                """, """
+                CREATE TRIGGER IF NOT EXISTS trg_students_fts_upd AFTER UPDATE OF student_id, full_name, batch ON students BEGIN
+                    INSERT INTO students_fts (students_fts, rowid, student_id, full_name, batch)
+                    VALUES ('delete', OLD.id, OLD.student_id, OLD.full_name, OLD.batch);
+                    INSERT INTO students_fts (rowid, student_id, full_name, batch)
+                    VALUES (NEW.id, NEW.student_id, NEW.full_name, NEW.batch);
+                END
+                """, """
+                INSERT INTO students_fts (students_fts) VALUES ('rebuild')
+                """)),
+            new Migration(8, "index for payments by bank reference", sql("""
+                CREATE INDEX IF NOT EXISTS idx_payments_reference
+                ON payments(reference_no) WHERE reference_no IS NOT NULL
+                """)),
+            new Migration(9, "payment_review queue for unmatched statement lines", sql("""
+                CREATE TABLE IF NOT EXISTS payment_review (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    source TEXT NOT NULL,
+                    line_no INTEGER NOT NULL,
+                    reference_no TEXT,
+                    payment_date TEXT,
+                    amount REAL,
+                    student_id TEXT,
+                    full_name TEXT,
+                    batch TEXT,
+                    reason TEXT NOT NULL,
+                    candidate_id INTEGER,
+                    score REAL,
+                    raw_line TEXT NOT NULL,
+                    queued_at TEXT NOT NULL DEFAULT (datetime('now')),
+                    FOREIGN KEY(candidate_id) REFERENCES students(id) ON DELETE SET NULL
+                )
+                """, """
+                CREATE INDEX IF NOT EXISTS idx_payment_review_reference
+                ON payment_review(reference_no)
+                """, """
+                CREATE INDEX IF NOT EXISTS idx_payment_review_source_line
+                ON payment_review(source, line_no)
+                """)),
+            new Migration(10, "period close: opening balance checkpoints and closed-month guards", c -> {
+                try (Statement st = c.createStatement()) {
+                    PeriodClose.createTables(st);
+                    PeriodClose.createTriggers(st);
+                }
+            }),
+            new Migration(11, "month_balance_deferred record of bulk loads running without month balance triggers", c -> {
+                try (Statement st = c.createStatement()) {
+                    MonthBalanceTriggers.createDeferredTable(st);
+                }
+            })
+    );
+
+    private Migrations() {
+    }
+
+    /**
+     * Applies every migration newer than the database's user_version.
+     */
+    public static void migrate(Connection c) throws SQLException {
+        int current = currentVersion(c);
+
+        for (Migration m : MIGRATIONS) {
+            if (m.version <= current) {
+                continue;
+            }
+
+            System.err.println(">>> Migration " + m.version + ": " + m.description);
+
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                m.step.apply(c);
+                st.execute("PRAGMA user_version = " + m.version);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw new SQLException("Migration " + m.version + " failed: " + m.description, e);
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    public static int currentVersion(Connection c) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static Step sql(String... statements) {
+        return c -> {
+            try (Statement st = c.createStatement()) {
+                for (String s : statements) {
+                    st.execute(s);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,286 @@
+package com.marzuque.sms.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Keeps student_month_balance in step with the three ledger tables. Every
+ * insert, update and delete on tuition_charges, account_adjustments and
+ * payments adjusts the month's totals and shifts the closing balance of that
+ * month and every later month, inside the writer's own transaction.
+ * A bulk load that has the database to itself can defer a table instead:
+ * its triggers are dropped for the length of the load and all its rows
+ * applied at once by resume. The deferral is recorded in
+ * month_balance_deferred in the same transaction as the drop, so a load
+ * that dies half way is caught up by restore at the next start.
+ */
+public final class MonthBalanceTriggers {
+
+    private static final class Ledger {
+
+        final String table;
+        final String dateColumn;
+        final String totalColumn;
+        final String sign; // effect on the balance
+
+        Ledger(String table, String dateColumn, String totalColumn, String sign) {
+            this.table = table;
+            this.dateColumn = dateColumn;
+            this.totalColumn = totalColumn;
+            this.sign = sign;
+        }
+    }
+
+    private static final Ledger[] LEDGERS = {
+        new Ledger("tuition_charges", "charge_month", "charges", "+"),
+        new Ledger("account_adjustments", "adj_date", "adjustments", "+"),
+        new Ledger("payments", "payment_date", "payments", "-")
+    };
+
+    /**
+     * Per-student, per-month totals and running closing balance computed
+     * straight from the whole ledger. See PeriodClose.RECOMPUTED_OPEN_SELECT
+     * for the open months only.
+     */
+    public static final String RECOMPUTED_SELECT = """
+        SELECT student_id, ym,
+               SUM(c) AS charges,
+               SUM(a) AS adjustments,
+               SUM(p) AS payments,
+               SUM(SUM(c) + SUM(a) - SUM(p)) OVER (PARTITION BY student_id ORDER BY ym) AS closing_balance
+        FROM (
+            SELECT student_id, substr(charge_month, 1, 7) AS ym, amount AS c, 0 AS a, 0 AS p FROM tuition_charges
+            UNION ALL
+            SELECT student_id, substr(adj_date, 1, 7), 0, amount, 0 FROM account_adjustments
+            UNION ALL
+            SELECT student_id, substr(payment_date, 1, 7), 0, 0, amount FROM payments
+        )
+        GROUP BY student_id, ym
+        """;
+
+    private MonthBalanceTriggers() {
+    }
+
+    public static void create(Statement st) throws SQLException {
+        for (Ledger l : LEDGERS) {
+            create(st, l);
+        }
+    }
+
+    /**
+     * Drops the triggers, e.g. before a bulk load that rebuilds the table
+     * afterwards with {@link #rebuild(Connection)}.
+     */
+    public static void drop(Statement st) throws SQLException {
+        for (Ledger l : LEDGERS) {
+            drop(st, l);
+        }
+    }
+
+    /**
+     * Drops one ledger table's triggers, or re-creates them; see
+     * applyInserted.
+     */
+    public static void drop(Statement st, String table) throws SQLException {
+        drop(st, ledger(table));
+    }
+
+    public static void create(Statement st, String table) throws SQLException {
+        create(st, ledger(table));
+    }
+
+    public static void createDeferredTable(Statement st) throws SQLException {
+        st.execute("""
+            CREATE TABLE IF NOT EXISTS month_balance_deferred (
+                ledger TEXT PRIMARY KEY,
+                after_id INTEGER NOT NULL,
+                deferred_at TEXT NOT NULL DEFAULT (datetime('now'))
+            )
+            """);
+    }
+
+    /**
+     * Drops the triggers of one ledger table for a bulk load and records the
+     * last id before it; returns that id. A deferral left over from a load
+     * that never finished is resumed first. Call resume(c, table) once the
+     * load is done.
+     */
+    public static long defer(Connection c, String table) throws SQLException {
+        Ledger l = ledger(table);
+        resume(c, table);
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + l.table)) {
+            long lastId = rs.next() ? rs.getLong(1) : 0;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO month_balance_deferred (ledger, after_id) VALUES (?, ?)")) {
+                ps.setString(1, l.table);
+                ps.setLong(2, lastId);
+                ps.executeUpdate();
+            }
+            drop(st, l);
+            return lastId;
+        }
+    }
+
+    /**
+     * Ends a deferral of 'table': applies the rows inserted since it began,
+     * clears it and re-creates the table's triggers (which it also does when
+     * nothing was deferred). Returns the number of (student, month) rows
+     * whose closing balance moved.
+     */
+    public static int resume(Connection c, String table) throws SQLException {
+        Ledger l = ledger(table);
+        Long afterId = null;
+        try (PreparedStatement ps = c.prepareStatement("SELECT after_id FROM month_balance_deferred WHERE ledger = ?")) {
+            ps.setString(1, l.table);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    afterId = rs.getLong(1);
+                }
+            }
+        }
+
+        int rows = 0;
+        if (afterId != null) {
+            rows = applyInserted(c, l.table, afterId);
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM month_balance_deferred WHERE ledger = ?")) {
+                ps.setString(1, l.table);
+                ps.executeUpdate();
+            }
+        }
+        try (Statement st = c.createStatement()) {
+            create(st, l);
+        }
+        return rows;
+    }
+
+    /**
+     * Run at startup: resumes every deferral a bulk load left behind (a
+     * process killed mid-load) and makes sure all triggers exist. Returns
+     * the number of tables that had to be caught up.
+     */
+    public static int restore(Connection c) throws SQLException {
+        int resumed = 0;
+        for (Ledger l : LEDGERS) {
+            boolean deferred;
+            try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM month_balance_deferred WHERE ledger = ?")) {
+                ps.setString(1, l.table);
+                try (ResultSet rs = ps.executeQuery()) {
+                    deferred = rs.next();
+                }
+            }
+            resume(c, l.table);
+            if (deferred) {
+                resumed++;
+            }
+        }
+        return resumed;
+    }
+
+    /**
+     * Applies the rows of 'table' with id > afterId, inserted while its
+     * triggers were dropped, to student_month_balance as the triggers would
+     * have: the new rows are summed per student and month first, then one
+     * statement each opens the missing months, adds the month totals and
+     * shifts the closing balances, instead of three statements per row.
+     * Returns the number of (student, month) rows whose closing balance
+     * moved.
+     */
+    public static int applyInserted(Connection c, String table, long afterId) throws SQLException {
+        Ledger l = ledger(table);
+        // NOT INDEXED: read just the new rows by rowid, not the whole (student_id, date) index for its order
+        String delta = "WITH d AS (SELECT student_id, substr(" + l.dateColumn + ", 1, 7) AS ym, SUM(amount) AS amount"
+                + " FROM " + l.table + " NOT INDEXED WHERE id > ? GROUP BY student_id, ym) ";
+
+        try (PreparedStatement open = c.prepareStatement(delta
+                + "INSERT INTO student_month_balance (student_id, ym, closing_balance)"
+                + " SELECT d.student_id, d.ym, COALESCE((SELECT b.closing_balance FROM student_month_balance b"
+                + " WHERE b.student_id = d.student_id AND b.ym < d.ym ORDER BY b.ym DESC LIMIT 1), 0)"
+                + " FROM d WHERE NOT EXISTS (SELECT 1 FROM student_month_balance b"
+                + " WHERE b.student_id = d.student_id AND b.ym = d.ym)");
+             PreparedStatement totals = c.prepareStatement(delta
+                + "UPDATE student_month_balance AS b SET " + l.totalColumn + " = b." + l.totalColumn + " + d.amount"
+                + " FROM d WHERE b.student_id = d.student_id AND b.ym = d.ym");
+             PreparedStatement closing = c.prepareStatement(delta
+                + "UPDATE student_month_balance AS b SET closing_balance = b.closing_balance " + l.sign + " s.amount"
+                + " FROM (SELECT m.student_id, m.ym, SUM(d.amount) AS amount"
+                + " FROM d JOIN student_month_balance m ON m.student_id = d.student_id AND m.ym >= d.ym"
+                + " GROUP BY m.student_id, m.ym) s"
+                + " WHERE b.student_id = s.student_id AND b.ym = s.ym")) {
+
+            for (PreparedStatement ps : new PreparedStatement[]{open, totals, closing}) {
+                ps.setLong(1, afterId);
+            }
+            open.executeUpdate();
+            totals.executeUpdate();
+            return closing.executeUpdate();
+        }
+    }
+
+    private static void create(Statement st, Ledger l) throws SQLException {
+        st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + l.table + "_ins_month_balance"
+                + " AFTER INSERT ON " + l.table + " BEGIN "
+                + apply(l, "NEW", "") + " END");
+
+        st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + l.table + "_del_month_balance"
+                + " AFTER DELETE ON " + l.table + " BEGIN "
+                + apply(l, "OLD", "-") + " END");
+
+        st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + l.table + "_upd_month_balance"
+                + " AFTER UPDATE OF student_id, " + l.dateColumn + ", amount ON " + l.table + " BEGIN "
+                + apply(l, "OLD", "-") + " " + apply(l, "NEW", "") + " END");
+    }
+
+    private static void drop(Statement st, Ledger l) throws SQLException {
+        st.execute("DROP TRIGGER IF EXISTS trg_" + l.table + "_ins_month_balance");
+        st.execute("DROP TRIGGER IF EXISTS trg_" + l.table + "_del_month_balance");
+        st.execute("DROP TRIGGER IF EXISTS trg_" + l.table + "_upd_month_balance");
+    }
+
+    private static Ledger ledger(String table) {
+        for (Ledger l : LEDGERS) {
+            if (l.table.equals(table)) {
+                return l;
+            }
+        }
+        throw new IllegalArgumentException("Not a ledger table: " + table);
+    }
+
+    /**
+     * Recomputes student_month_balance from the raw ledger rows.
+     */
+    public static int rebuild(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("DELETE FROM student_month_balance");
+            return st.executeUpdate("""
+                INSERT INTO student_month_balance
+                    (student_id, ym, charges, adjustments, payments, closing_balance)
+                """ + RECOMPUTED_SELECT);
+        }
+    }
+
+    /**
+     * Trigger statements applying one ledger row's effect. negate is "" or
+     * "-" to add or remove the row.
+     */
+    private static String apply(Ledger l, String row, String negate) {
+        String student = row + ".student_id";
+        String ym = "substr(" + row + "." + l.dateColumn + ", 1, 7)";
+        String amount = negate + row + ".amount";
+
+        // NOT EXISTS rather than OR IGNORE: an outer "INSERT OR ..." would override a trigger's conflict clause
+        return "INSERT INTO student_month_balance (student_id, ym, closing_balance)"
+                + " SELECT " + student + ", " + ym + ", COALESCE((SELECT b.closing_balance"
+                + " FROM student_month_balance b WHERE b.student_id = " + student
+                + " AND b.ym < " + ym + " ORDER BY b.ym DESC LIMIT 1), 0)"
+                + " WHERE NOT EXISTS (SELECT 1 FROM student_month_balance b"
+                + " WHERE b.student_id = " + student + " AND b.ym = " + ym + ");"
+                + " UPDATE student_month_balance SET " + l.totalColumn + " = " + l.totalColumn + " + (" + amount + ")"
+                + " WHERE student_id = " + student + " AND ym = " + ym + ";"
+                + " UPDATE student_month_balance SET closing_balance = closing_balance " + l.sign + " (" + amount + ")"
+                + " WHERE student_id = " + student + " AND ym >= " + ym + ";";
+    }
+}
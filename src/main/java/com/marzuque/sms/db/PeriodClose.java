@@ -0,0 +1,136 @@
+package com.marzuque.sms.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Closed periods of the ledger. Closing a month records it in period_close
+ * and writes each student's balance at its end to opening_balance, keyed by
+ * the first open month. From then on every month up to it is frozen: the
+ * triggers here abort any insert, update or delete of a ledger row dated in
+ * it, so its student_month_balance rows and the checkpoint never change
+ * again, and checks and rebuilds only have to cover the open months on top
+ * of the checkpoint.
+ */
+public final class PeriodClose {
+
+    /**
+     * First day of the first open month as 'YYYY-MM-DD', or '' when nothing
+     * is closed (so every date compares as open).
+     */
+    public static final String OPEN_FROM = """
+        (SELECT COALESCE(date(MAX(ym) || '-01', '+1 month'), '') FROM period_close)""";
+
+    private static final String CLOSED_MESSAGE
+            = "'period closed: ledger rows dated in a closed month cannot be added, changed or removed'";
+
+    private static final String[][] LEDGERS = {
+        {"tuition_charges", "charge_month"},
+        {"account_adjustments", "adj_date"},
+        {"payments", "payment_date"}
+    };
+
+    /**
+     * Open months recomputed from the raw ledger, in the shape of
+     * MonthBalanceTriggers.RECOMPUTED_SELECT: each student's rows from the
+     * first open month on, read through the (student_id, date) indexes, with
+     * the running closing balance starting at the student's checkpoint.
+     *
+     * The student ids of each ledger table are walked one index seek per
+     * student (deleted students' rows included, as the triggers keep them),
+     * so nothing before the first open month is read.
+     */
+    public static final String RECOMPUTED_OPEN_SELECT = """
+        WITH RECURSIVE %2$s, %3$s, %4$s
+        SELECT student_id, ym,
+               SUM(c) AS charges,
+               SUM(a) AS adjustments,
+               SUM(p) AS payments,
+               COALESCE((SELECT o.balance FROM opening_balance o
+                         WHERE o.student_id = x.student_id AND o.ym = substr(%1$s, 1, 7)), 0)
+                 + SUM(SUM(c) + SUM(a) - SUM(p)) OVER (PARTITION BY student_id ORDER BY ym) AS closing_balance
+        FROM (
+            SELECT t.student_id, substr(t.charge_month, 1, 7) AS ym, t.amount AS c, 0 AS a, 0 AS p
+            FROM charge_students s JOIN tuition_charges t ON t.student_id = s.sid AND t.charge_month >= %1$s
+            UNION ALL
+            SELECT t.student_id, substr(t.adj_date, 1, 7), 0, t.amount, 0
+            FROM adjustment_students s JOIN account_adjustments t ON t.student_id = s.sid AND t.adj_date >= %1$s
+            UNION ALL
+            SELECT t.student_id, substr(t.payment_date, 1, 7), 0, 0, t.amount
+            FROM payment_students s JOIN payments t ON t.student_id = s.sid AND t.payment_date >= %1$s
+        ) x
+        GROUP BY student_id, ym
+        """.formatted(OPEN_FROM, studentIds("charge_students", "tuition_charges"),
+            studentIds("adjustment_students", "account_adjustments"), studentIds("payment_students", "payments"));
+
+    private PeriodClose() {
+    }
+
+    public static void createTables(Statement st) throws SQLException {
+        st.execute("""
+            CREATE TABLE IF NOT EXISTS period_close (
+                ym TEXT PRIMARY KEY,
+                closed_at TEXT NOT NULL DEFAULT (datetime('now')),
+                students INTEGER NOT NULL
+            )
+            """);
+        st.execute("""
+            CREATE TABLE IF NOT EXISTS opening_balance (
+                student_id INTEGER NOT NULL,
+                ym TEXT NOT NULL,
+                balance REAL NOT NULL,
+                PRIMARY KEY (student_id, ym)
+            ) WITHOUT ROWID
+            """);
+    }
+
+    /**
+     * Guards the ledger tables against writes dated in a closed month.
+     */
+    public static void createTriggers(Statement st) throws SQLException {
+        for (String[] l : LEDGERS) {
+            String table = l[0];
+            String date = l[1];
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_ins_closed"
+                    + " BEFORE INSERT ON " + table
+                    + " WHEN NEW." + date + " < " + OPEN_FROM
+                    + " BEGIN SELECT RAISE(ABORT, " + CLOSED_MESSAGE + "); END");
+
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_del_closed"
+                    + " BEFORE DELETE ON " + table
+                    + " WHEN OLD." + date + " < " + OPEN_FROM
+                    + " BEGIN SELECT RAISE(ABORT, " + CLOSED_MESSAGE + "); END");
+
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_upd_closed"
+                    + " BEFORE UPDATE OF student_id, " + date + ", amount ON " + table
+                    + " WHEN OLD." + date + " < " + OPEN_FROM + " OR NEW." + date + " < " + OPEN_FROM
+                    + " BEGIN SELECT RAISE(ABORT, " + CLOSED_MESSAGE + "); END");
+        }
+    }
+
+    /**
+     * Recursive CTE listing the distinct student_ids of a ledger table by
+     * skipping from one to the next through its index.
+     */
+    private static String studentIds(String name, String table) {
+        // not "id": the ledger tables have an id column of their own
+        return name + "(sid) AS (SELECT MIN(student_id) FROM " + table
+                + " UNION ALL SELECT (SELECT MIN(student_id) FROM " + table + " WHERE student_id > " + name + ".sid)"
+                + " FROM " + name + " WHERE sid IS NOT NULL)";
+    }
+
+    /**
+     * Recomputes the open months of student_month_balance from the
+     * checkpoint and the ledger; closed months are left as they are.
+     */
+    public static int rebuildOpen(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("DELETE FROM student_month_balance WHERE ym >= substr(" + OPEN_FROM + ", 1, 7)");
+            return st.executeUpdate("""
+                INSERT INTO student_month_balance
+                    (student_id, ym, charges, adjustments, payments, closing_balance)
+                """ + RECOMPUTED_OPEN_SELECT);
+        }
+    }
+}
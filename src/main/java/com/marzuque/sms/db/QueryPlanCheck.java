@@ -0,0 +1,110 @@
+package com.marzuque.sms.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over the ledger queries StudentDao issues and
+ * reports any that do not use the indexes the migrations create for them.
+ * Keep the queries here in step with the DAO.
+ */
+public final class QueryPlanCheck {
+
+    private static final class Probe {
+
+        final String name;
+        final String sql;
+        final Object[] params;
+        final String[] expectedIndexes;
+
+        Probe(String name, String sql, Object[] params, String... expectedIndexes) {
+            this.name = name;
+            this.sql = sql;
+            this.params = params;
+            this.expectedIndexes = expectedIndexes;
+        }
+    }
+
+    private static final List<Probe> PROBES = List.of(
+            new Probe("balances as of month", """
+                SELECT s.id, COALESCE((SELECT b.closing_balance FROM student_month_balance b
+                    WHERE b.student_id = s.id AND b.ym <= ? ORDER BY b.ym DESC LIMIT 1), 0)
+                FROM students s
+                """, new Object[]{"2025-01"}, "PRIMARY KEY"),
+            new Probe("batch balance as of month", """
+                SELECT COALESCE(SUM((SELECT b.closing_balance FROM student_month_balance b
+                    WHERE b.student_id = s.id AND b.ym <= ? ORDER BY b.ym DESC LIMIT 1)), 0)
+                FROM students s WHERE s.batch = ?
+                """, new Object[]{"2025-01", "50th"}, "idx_students_batch", "PRIMARY KEY"),
+            new Probe("student report months", """
+                SELECT ym, charges, adjustments, payments FROM student_month_balance
+                WHERE student_id = ? AND ym >= ? AND ym <= ?
+                """, new Object[]{1, "2024-01", "2024-12"}, "PRIMARY KEY"),
+            new Probe("batch report months", """
+                SELECT b.ym, SUM(b.charges), SUM(b.adjustments), SUM(b.payments)
+                FROM students s JOIN student_month_balance b ON b.student_id = s.id
+                WHERE s.batch = ? AND b.ym >= ? AND b.ym <= ? GROUP BY b.ym
+                """, new Object[]{"50th", "2024-01", "2024-12"}, "idx_students_batch", "PRIMARY KEY"),
+            new Probe("students page after key", """
+                SELECT s.id FROM students s
+                WHERE (s.batch, s.student_id) > (?, ?)
+                ORDER BY s.batch ASC, s.student_id ASC LIMIT 200
+                """, new Object[]{"50th", "S-0000001"}, "idx_students_batch"),
+            new Probe("students page by name", """
+                SELECT s.id FROM students s
+                WHERE (s.full_name, s.id) > (?, ?)
+                ORDER BY s.full_name ASC, s.id ASC LIMIT 200
+                """, new Object[]{"A", 0}, "idx_students_name"),
+            new Probe("adjustments list", """
+                SELECT id, student_id, adj_date, amount, note FROM account_adjustments
+                WHERE student_id = ? ORDER BY adj_date DESC, id DESC
+                """, new Object[]{1}, "idx_adjustments_student_date"),
+            new Probe("open months since checkpoint", "SELECT COUNT(*) FROM (" + PeriodClose.RECOMPUTED_OPEN_SELECT + ")",
+                    new Object[0], "idx_charges_student_month (student_id=? AND charge_month>?)",
+                    "idx_adjustments_student_date (student_id=? AND adj_date>?)",
+                    "idx_payments_student_date (student_id=? AND payment_date>?)")
+    );
+
+    private QueryPlanCheck() {
+    }
+
+    /**
+     * Returns one line per probe that misses an expected index; empty when
+     * every plan looks right.
+     */
+    public static List<String> run(Connection c) throws SQLException {
+        List<String> problems = new ArrayList<>();
+
+        for (Probe p : PROBES) {
+            String plan = explain(c, p);
+            for (String idx : p.expectedIndexes) {
+                if (!plan.contains(idx)) {
+                    problems.add(p.name + ": expected " + idx + " but plan was [" + plan + "]");
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static String explain(Connection c, Probe p) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        try (PreparedStatement ps = c.prepareStatement("EXPLAIN QUERY PLAN " + p.sql)) {
+            for (int i = 0; i < p.params.length; i++) {
+                ps.setObject(i + 1, p.params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (sb.length() > 0) {
+                        sb.append("; ");
+                    }
+                    sb.append(rs.getString("detail"));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
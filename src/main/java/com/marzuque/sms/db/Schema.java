@@ -8,7 +8,7 @@ public class Schema {
     public static void init() {
         try (Connection c = Db.connect(); Statement st = c.createStatement()) {
 
-            System.out.println(">>> Running Schema.init()");
+            System.err.println(">>> Running Schema.init()");
 
             st.execute("""
                 CREATE TABLE IF NOT EXISTS students (
@@ -59,7 +59,33 @@ public class Schema {
                 );
             """);
 
-            System.out.println(">>> Schema.init() done");
+            // last month already charged per student; lets charge generation skip history
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS charge_watermarks (
+                    student_id INTEGER PRIMARY KEY,
+                    last_charged_month TEXT NOT NULL,
+                    FOREIGN KEY(student_id) REFERENCES students(id) ON DELETE CASCADE
+                );
+            """);
+
+            Migrations.migrate(c);
+
+            // triggers a killed bulk load left dropped, and the rows it inserted meanwhile
+            c.setAutoCommit(false);
+            try {
+                int resumed = MonthBalanceTriggers.restore(c);
+                c.commit();
+                if (resumed > 0) {
+                    System.err.println(">>> Caught up month balances of " + resumed + " unfinished bulk load(s)");
+                }
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+
+            System.err.println(">>> Schema.init() done (schema version " + Migrations.currentVersion(c) + ")");
 
         } catch (Exception e) {
             throw new RuntimeException("DB init failed", e);
@@ -0,0 +1,192 @@
+package com.marzuque.sms.excel;
+
+import com.marzuque.sms.model.AgingRow;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streams aging rows into an .xlsx file with SXSSF. "By Student" gets one
+ * row per student as it is appended; the per-batch totals are summed along
+ * the way and written as "By Batch" (placed first) on close().
+ *
+ * Columns: identity, then Current, 30-59, 60-89, 90-119, 120+, Unapplied
+ * Credit and Total (the balance).
+ */
+public final class AgingXlsxWriter implements AutoCloseable {
+
+    private static final int ROW_WINDOW = 200;
+    private static final String NO_BATCH = "(none)";
+
+    @FunctionalInterface
+    public interface Rows {
+
+        void writeTo(AgingXlsxWriter w) throws Exception;
+    }
+
+    private final File file;
+    private final LocalDate asOf;
+    private final SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+    private final SXSSFSheet students = wb.createSheet("By Student");
+    private final ColumnWidths studentWidths;
+    private final Map<String, double[]> batchTotals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, Integer> batchStudents = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int nextRow;
+
+    public AgingXlsxWriter(File file, LocalDate asOf) {
+        this.file = file;
+        this.asOf = asOf;
+
+        String[] headers = headers("Student ID", "Full Name", "Batch");
+        studentWidths = new ColumnWidths(headers.length);
+        nextRow = writeHeader(students, studentWidths, headers);
+    }
+
+    /**
+     * Writes into a sibling temp file first and moves it over 'file' once
+     * complete, like StudentXlsxWriter.writeReplacing. Returns the number
+     * of students written.
+     */
+    public static int writeReplacing(File file, LocalDate asOf, Rows rows) throws Exception {
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), ".sms-export-", ".xlsx");
+        try {
+            int written;
+            try (AgingXlsxWriter w = new AgingXlsxWriter(tmp.toFile(), asOf)) {
+                rows.writeTo(w);
+                written = w.rowsWritten();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public void append(AgingRow a) {
+        Row row = students.createRow(nextRow++);
+        row.createCell(0).setCellValue(n(a.studentId()));
+        row.createCell(1).setCellValue(n(a.fullName()));
+        row.createCell(2).setCellValue(n(a.batch()));
+        double[] amounts = amounts(a);
+        for (int i = 0; i < amounts.length; i++) {
+            row.createCell(3 + i).setCellValue(amounts[i]);
+        }
+        studentWidths.sample(texts(amounts, a.studentId(), a.fullName(), a.batch()));
+
+        String batch = a.batch() == null || a.batch().isBlank() ? NO_BATCH : a.batch();
+        double[] totals = batchTotals.computeIfAbsent(batch, k -> new double[amounts.length]);
+        for (int i = 0; i < amounts.length; i++) {
+            totals[i] += amounts[i];
+        }
+        batchStudents.merge(batch, 1, Integer::sum);
+    }
+
+    public int rowsWritten() {
+        return nextRow - 2; // "as of" line and header
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            studentWidths.apply(students);
+            writeBatches();
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                wb.write(fos);
+            }
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private void writeBatches() {
+        SXSSFSheet sheet = wb.createSheet("By Batch");
+        wb.setSheetOrder("By Batch", 0);
+        wb.setActiveSheet(0);
+
+        String[] headers = headers("Batch", "Students");
+        ColumnWidths widths = new ColumnWidths(headers.length);
+        int r = writeHeader(sheet, widths, headers);
+
+        double[] all = new double[headers.length - 2];
+        int allStudents = 0;
+        for (Map.Entry<String, double[]> e : batchTotals.entrySet()) {
+            int count = batchStudents.get(e.getKey());
+            writeBatchRow(sheet.createRow(r++), widths, e.getKey(), count, e.getValue());
+            for (int i = 0; i < all.length; i++) {
+                all[i] += e.getValue()[i];
+            }
+            allStudents += count;
+        }
+        writeBatchRow(sheet.createRow(r), widths, "All", allStudents, all);
+        widths.apply(sheet);
+    }
+
+    private static void writeBatchRow(Row row, ColumnWidths widths, String batch, int count, double[] amounts) {
+        row.createCell(0).setCellValue(batch);
+        row.createCell(1).setCellValue(count);
+        for (int i = 0; i < amounts.length; i++) {
+            row.createCell(2 + i).setCellValue(amounts[i]);
+        }
+        widths.sample(texts(amounts, batch, String.valueOf(count)));
+    }
+
+    /**
+     * "As of" line, then the header row; returns the next free row.
+     */
+    private int writeHeader(SXSSFSheet sheet, ColumnWidths widths, String[] headers) {
+        Row meta = sheet.createRow(0);
+        meta.createCell(0).setCellValue("Aging as of");
+        meta.createCell(1).setCellValue(asOf.toString());
+
+        Row h = sheet.createRow(1);
+        for (int i = 0; i < headers.length; i++) {
+            h.createCell(i).setCellValue(headers[i]);
+        }
+        widths.sample(headers);
+        return 2;
+    }
+
+    private static String[] headers(String... leading) {
+        String[] out = new String[leading.length + AgingRow.BUCKET_LABELS.length + 2];
+        System.arraycopy(leading, 0, out, 0, leading.length);
+        System.arraycopy(AgingRow.BUCKET_LABELS, 0, out, leading.length, AgingRow.BUCKET_LABELS.length);
+        out[out.length - 2] = "Unapplied Credit";
+        out[out.length - 1] = "Total";
+        return out;
+    }
+
+    private static double[] amounts(AgingRow a) {
+        double[] out = new double[AgingRow.BUCKET_LABELS.length + 2];
+        for (int i = 0; i < AgingRow.BUCKET_LABELS.length; i++) {
+            out[i] = a.bucket(i);
+        }
+        out[out.length - 2] = a.unappliedCredit();
+        out[out.length - 1] = a.total();
+        return out;
+    }
+
+    private static String[] texts(double[] amounts, String... leading) {
+        String[] out = new String[leading.length + amounts.length];
+        System.arraycopy(leading, 0, out, 0, leading.length);
+        for (int i = 0; i < amounts.length; i++) {
+            out[leading.length + i] = String.valueOf(amounts[i]);
+        }
+        return out;
+    }
+
+    private static String n(String v) {
+        return v == null ? "" : v;
+    }
+}
@@ -0,0 +1,44 @@
+package com.marzuque.sms.excel;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Estimates column widths from the first rows written instead of
+ * Sheet.autoSizeColumn, which measures every cell with font metrics and is
+ * unusable on streamed sheets whose rows are already flushed.
+ */
+final class ColumnWidths {
+
+    private static final int SAMPLE_ROWS = 200;
+    private static final int MAX_CHARS = 60;
+
+    private final int[] maxChars;
+    private int sampled;
+
+    ColumnWidths(int columns) {
+        this.maxChars = new int[columns];
+    }
+
+    /**
+     * Records one row's cell texts (headers included); ignored once enough
+     * rows are sampled.
+     */
+    void sample(String... texts) {
+        if (sampled >= SAMPLE_ROWS) {
+            return;
+        }
+        sampled++;
+        for (int i = 0; i < texts.length && i < maxChars.length; i++) {
+            if (texts[i] != null) {
+                maxChars[i] = Math.max(maxChars[i], texts[i].length());
+            }
+        }
+    }
+
+    void apply(Sheet sheet) {
+        for (int i = 0; i < maxChars.length; i++) {
+            int chars = Math.min(MAX_CHARS, Math.max(8, maxChars[i] + 2));
+            sheet.setColumnWidth(i, chars * 256);
+        }
+    }
+}
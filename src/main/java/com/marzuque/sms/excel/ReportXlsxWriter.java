@@ -0,0 +1,108 @@
+package com.marzuque.sms.excel;
+
+import com.marzuque.sms.model.MonthlySeries;
+import com.marzuque.sms.model.Student;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Writes the student / batch monthly account reports. Title and sheet name
+ * carry the number of months in the series ("12-Month Report").
+ */
+public final class ReportXlsxWriter {
+
+    private static final int ROW_WINDOW = 200;
+
+    private ReportXlsxWriter() {
+    }
+
+    public static void writeStudentReport(File file, Student s, MonthlySeries rows) throws IOException {
+        write(file, rows,
+                new String[]{"Student " + span(rows) + " Account Report"},
+                new String[]{"Generated", LocalDate.now().toString()},
+                new String[]{"Student ID", n(s.getStudentId())},
+                new String[]{"Name", n(s.getFullName())},
+                new String[]{"Batch", n(s.getBatch())});
+    }
+
+    public static void writeBatchReport(File file, String batch, MonthlySeries rows) throws IOException {
+        write(file, rows,
+                new String[]{"Batch " + span(rows) + " Account Report"},
+                new String[]{"Generated", LocalDate.now().toString()},
+                new String[]{"Batch", n(batch)});
+    }
+
+    /**
+     * Title/meta lines, a blank row, then the month table.
+     */
+    private static void write(File file, MonthlySeries rows, String[]... metaRows) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+        try {
+            SXSSFSheet sheet = wb.createSheet(span(rows) + " Report");
+            ColumnWidths widths = new ColumnWidths(6);
+
+            int r = 0;
+
+            for (String[] meta : metaRows) {
+                Row row = sheet.createRow(r++);
+                for (int i = 0; i < meta.length; i++) {
+                    row.createCell(i).setCellValue(meta[i]);
+                }
+                if (meta.length > 1) {
+                    widths.sample(meta); // the one-cell title may overflow into its neighbours
+                }
+            }
+
+            r++; // blank row
+
+            String[] headers = {"Month", "Charges", "Adjustments", "Payments", "Net Change", "Ending Balance"};
+            Row h = sheet.createRow(r++);
+            for (int i = 0; i < headers.length; i++) {
+                h.createCell(i).setCellValue(headers[i]);
+            }
+            widths.sample(headers);
+
+            for (int i = 0; i < rows.size(); i++) {
+                String month = rows.month(i).toString();
+                Row rr = sheet.createRow(r++);
+                rr.createCell(0).setCellValue(month);
+                rr.createCell(1).setCellValue(rows.charges(i));
+                rr.createCell(2).setCellValue(rows.adjustments(i));
+                rr.createCell(3).setCellValue(rows.payments(i));
+                rr.createCell(4).setCellValue(rows.netChange(i));
+                rr.createCell(5).setCellValue(rows.endingBalance(i));
+
+                widths.sample(month, String.valueOf(rows.charges(i)),
+                        String.valueOf(rows.adjustments(i)), String.valueOf(rows.payments(i)),
+                        String.valueOf(rows.netChange(i)), String.valueOf(rows.endingBalance(i)));
+            }
+
+            widths.apply(sheet);
+
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                wb.write(fos);
+            }
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    /**
+     * "12-Month" and the like, from the number of months actually in the
+     * report.
+     */
+    private static String span(MonthlySeries rows) {
+        return rows.size() + "-Month";
+    }
+
+    private static String n(String v) {
+        return v == null ? "" : v;
+    }
+}
@@ -0,0 +1,230 @@
+package com.marzuque.sms.excel;
+
+import com.marzuque.sms.model.StudentRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams students out of the first sheet of an .xlsx file with POI's SAX
+ * event API, handing them over in chunks so memory stays flat regardless of
+ * the file size.
+ *
+ * Expected format (first sheet): A: Student ID (required), B: Full Name
+ * (required), C: Batch (required) e.g. "50th", D: CGPA (optional), E: Semester
+ * CGPA (optional), F: Billing Start Month as 'YYYY-MM-01' (blank/invalid
+ * defaults to the current month). The first row can be headers; we try to
+ * detect and skip it.
+ */
+public final class StudentXlsxReader {
+
+    private static final int COLUMNS = 6;
+
+    public static class ReadResult {
+
+        public final int rowsRead;   // valid rows handed to the consumer
+        public final int rowsSkipped; // rows missing a required column
+
+        public ReadResult(int rowsRead, int rowsSkipped) {
+            this.rowsRead = rowsRead;
+            this.rowsSkipped = rowsSkipped;
+        }
+    }
+
+    private StudentXlsxReader() {
+    }
+
+    /**
+     * Parses the file row by row and calls onChunk with at most chunkSize
+     * students at a time. The list passed to onChunk is reused afterwards,
+     * so consumers must not keep it.
+     */
+    public static ReadResult read(File file, int chunkSize, Consumer<List<StudentRecord>> onChunk) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return new ReadResult(0, 0);
+            }
+
+            RowCollector collector = new RowCollector(chunkSize, onChunk);
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, collector, new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+
+            collector.flush();
+            return new ReadResult(collector.read, collector.skipped);
+        }
+    }
+
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final int chunkSize;
+        private final Consumer<List<StudentRecord>> onChunk;
+        private final List<StudentRecord> chunk;
+
+        private final String[] cells = new String[COLUMNS];
+        private int nextCol;
+        private boolean firstRow = true;
+
+        int read;
+        int skipped;
+
+        RowCollector(int chunkSize, Consumer<List<StudentRecord>> onChunk) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.onChunk = onChunk;
+            this.chunk = new ArrayList<>(this.chunkSize);
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(cells, "");
+            nextCol = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference == null ? nextCol : new CellReference(cellReference).getCol();
+            nextCol = col + 1;
+            if (col < COLUMNS && formattedValue != null) {
+                cells[col] = formattedValue;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (firstRow) {
+                firstRow = false;
+                if (isHeader()) {
+                    return;
+                }
+            }
+
+            String studentId = cells[0].trim();
+            String fullName = cells[1].trim();
+            String batch = cells[2].trim();
+
+            // required: studentId + fullName + batch
+            if (studentId.isEmpty() || fullName.isEmpty() || batch.isEmpty()) {
+                skipped++;
+                return;
+            }
+
+            chunk.add(new StudentRecord(0, studentId, fullName, batch,
+                    parseDoubleOrZero(cells[3]), parseDoubleOrZero(cells[4]),
+                    normalizeBillingStartMonth(cells[5]), 0.0));
+            read++;
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!chunk.isEmpty()) {
+                onChunk.accept(chunk);
+                chunk.clear();
+            }
+        }
+
+        // Header detection heuristic: if first row includes "student" / "name" / "batch"
+        private boolean isHeader() {
+            String a = cells[0].toLowerCase();
+            String b = cells[1].toLowerCase();
+            String c = cells[2].toLowerCase();
+            String f = cells[5].toLowerCase();
+            return a.contains("student") || a.contains("id")
+                    || b.contains("name")
+                    || c.contains("batch")
+                    || f.contains("billing");
+        }
+    }
+
+    static String normalizeBillingStartMonth(String billingText) {
+        // desired: 'YYYY-MM-01'
+        // if blank/invalid -> current month
+        String fallback = YearMonth.now().toString() + "-01";
+        if (billingText == null) {
+            return fallback;
+        }
+
+        String t = billingText.trim();
+        if (t.isEmpty()) {
+            return fallback;
+        }
+
+        // Accept:
+        // 1) 'YYYY-MM-01'
+        // 2) 'YYYY-MM'   -> append '-01'
+        // 3) 'YYYY/MM/01' or 'YYYY/MM' -> normalize to '-'
+        t = t.replace('/', '-');
+
+        try {
+            if (t.length() == 7) {
+                // 'YYYY-MM'
+                YearMonth.parse(t);
+                return t + "-01";
+            }
+            if (t.length() == 10) {
+                // 'YYYY-MM-01' expected
+                YearMonth.parse(t.substring(0, 7));
+                if (t.endsWith("-01")) {
+                    return t;
+                }
+                // if they put another day, still normalize to first day
+                return t.substring(0, 7) + "-01";
+            }
+
+            // Sometimes Excel numeric date gets formatted weirdly; attempt best-effort:
+            // If it starts with YYYY-MM, take that
+            if (t.length() >= 7) {
+                String ym = t.substring(0, 7);
+                YearMonth.parse(ym);
+                return ym + "-01";
+            }
+
+            return fallback;
+        } catch (Exception e) {
+            return fallback;
+        }
+    }
+
+    private static double parseDoubleOrZero(String t) {
+        try {
+            if (t == null) {
+                return 0.0;
+            }
+            String s = t.trim();
+            if (s.isEmpty()) {
+                return 0.0;
+            }
+            return Double.parseDouble(s);
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+}
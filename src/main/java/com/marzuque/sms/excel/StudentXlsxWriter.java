@@ -0,0 +1,114 @@
+package com.marzuque.sms.excel;
+
+import com.marzuque.sms.model.StudentRecord;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Streams students into an .xlsx file with SXSSF: only the last ROW_WINDOW
+ * rows stay in memory, the rest are flushed to a temp file. Rows are
+ * appended one at a time (typically straight from a JDBC cursor) and the
+ * workbook is written on close().
+ *
+ * Export format (round-trip compatible with import): A: Student ID B: Full
+ * Name C: Batch D: CGPA E: Semester CGPA F: Billing Start Month (YYYY-MM-01)
+ * G: Current Balance (optional, helpful for admins)
+ */
+public final class StudentXlsxWriter implements AutoCloseable {
+
+    private static final int ROW_WINDOW = 200;
+
+    private static final String[] HEADERS = {
+        "Student ID", "Full Name", "Batch", "CGPA", "Semester CGPA", "Billing Start Month", "Current Balance"
+    };
+
+    @FunctionalInterface
+    public interface Rows {
+
+        void writeTo(StudentXlsxWriter w) throws Exception;
+    }
+
+    private final File file;
+    private final SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+    private final SXSSFSheet sheet = wb.createSheet("Students");
+    private final ColumnWidths widths = new ColumnWidths(HEADERS.length);
+    private int nextRow;
+
+    public StudentXlsxWriter(File file) {
+        this.file = file;
+
+        Row h = sheet.createRow(nextRow++);
+        for (int i = 0; i < HEADERS.length; i++) {
+            h.createCell(i).setCellValue(HEADERS[i]);
+        }
+        widths.sample(HEADERS);
+    }
+
+    /**
+     * Writes the rows into a sibling temp file first and moves it over
+     * 'file' once complete, so a failed or cancelled write leaves the
+     * existing file untouched. Returns the number of students written.
+     */
+    public static int writeReplacing(File file, Rows rows) throws Exception {
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), ".sms-export-", ".xlsx");
+        try {
+            int written;
+            try (StudentXlsxWriter w = new StudentXlsxWriter(tmp.toFile())) {
+                rows.writeTo(w);
+                written = w.rowsWritten();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public void append(StudentRecord s) {
+        double cgpa = s.cgpa() == null ? 0.0 : s.cgpa();
+        double semesterCgpa = s.semesterCgpa() == null ? 0.0 : s.semesterCgpa();
+
+        Row row = sheet.createRow(nextRow++);
+        row.createCell(0).setCellValue(n(s.studentId()));
+        row.createCell(1).setCellValue(n(s.fullName()));
+        row.createCell(2).setCellValue(n(s.batch()));
+        row.createCell(3).setCellValue(cgpa);
+        row.createCell(4).setCellValue(semesterCgpa);
+        row.createCell(5).setCellValue(n(s.billingStartMonth()));
+        row.createCell(6).setCellValue(s.currentBalance());
+
+        widths.sample(s.studentId(), s.fullName(), s.batch(),
+                String.valueOf(cgpa), String.valueOf(semesterCgpa),
+                s.billingStartMonth(), String.valueOf(s.currentBalance()));
+    }
+
+    public int rowsWritten() {
+        return nextRow - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            widths.apply(sheet);
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                wb.write(fos);
+            }
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private static String n(String v) {
+        return v == null ? "" : v;
+    }
+}
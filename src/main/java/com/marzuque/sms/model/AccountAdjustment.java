@@ -2,82 +2,126 @@ package com.marzuque.sms.model;
 
 import javafx.beans.property.*;
 
+/**
+ * One account adjustment; like Student, properties are created on first use.
+ */
 public class AccountAdjustment {
 
-    private final IntegerProperty id = new SimpleIntegerProperty();
-    private final IntegerProperty studentDbId = new SimpleIntegerProperty();
-    private final StringProperty adjDate = new SimpleStringProperty();
-    private final DoubleProperty amount = new SimpleDoubleProperty();
-    private final StringProperty note = new SimpleStringProperty();
+    private int id;
+    private int studentDbId;
+    private String adjDate;
+    private double amount;
+    private String note;
+
+    private IntegerProperty idProperty;
+    private IntegerProperty studentDbIdProperty;
+    private StringProperty adjDateProperty;
+    private DoubleProperty amountProperty;
+    private StringProperty noteProperty;
 
     public AccountAdjustment() {
     }
 
     public AccountAdjustment(int id, int studentDbId, String adjDate, double amount, String note) {
-        setId(id);
-        setStudentDbId(studentDbId);
-        setAdjDate(adjDate);
-        setAmount(amount);
-        setNote(note);
+        this.id = id;
+        this.studentDbId = studentDbId;
+        this.adjDate = adjDate;
+        this.amount = amount;
+        this.note = note;
     }
 
     public int getId() {
-        return id.get();
+        return idProperty == null ? id : idProperty.get();
     }
 
     public void setId(int v) {
-        id.set(v);
+        if (idProperty == null) {
+            id = v;
+        } else {
+            idProperty.set(v);
+        }
     }
 
     public IntegerProperty idProperty() {
-        return id;
+        if (idProperty == null) {
+            idProperty = new SimpleIntegerProperty(this, "id", id);
+        }
+        return idProperty;
     }
 
     public int getStudentDbId() {
-        return studentDbId.get();
+        return studentDbIdProperty == null ? studentDbId : studentDbIdProperty.get();
     }
 
     public void setStudentDbId(int v) {
-        studentDbId.set(v);
+        if (studentDbIdProperty == null) {
+            studentDbId = v;
+        } else {
+            studentDbIdProperty.set(v);
+        }
     }
 
     public IntegerProperty studentDbIdProperty() {
-        return studentDbId;
+        if (studentDbIdProperty == null) {
+            studentDbIdProperty = new SimpleIntegerProperty(this, "studentDbId", studentDbId);
+        }
+        return studentDbIdProperty;
     }
 
     public String getAdjDate() {
-        return adjDate.get();
+        return adjDateProperty == null ? adjDate : adjDateProperty.get();
     }
 
     public void setAdjDate(String v) {
-        adjDate.set(v);
+        if (adjDateProperty == null) {
+            adjDate = v;
+        } else {
+            adjDateProperty.set(v);
+        }
     }
 
     public StringProperty adjDateProperty() {
-        return adjDate;
+        if (adjDateProperty == null) {
+            adjDateProperty = new SimpleStringProperty(this, "adjDate", adjDate);
+        }
+        return adjDateProperty;
     }
 
     public double getAmount() {
-        return amount.get();
+        return amountProperty == null ? amount : amountProperty.get();
     }
 
     public void setAmount(double v) {
-        amount.set(v);
+        if (amountProperty == null) {
+            amount = v;
+        } else {
+            amountProperty.set(v);
+        }
     }
 
     public DoubleProperty amountProperty() {
-        return amount;
+        if (amountProperty == null) {
+            amountProperty = new SimpleDoubleProperty(this, "amount", amount);
+        }
+        return amountProperty;
     }
 
     public String getNote() {
-        return note.get();
+        return noteProperty == null ? note : noteProperty.get();
     }
 
     public void setNote(String v) {
-        note.set(v);
+        if (noteProperty == null) {
+            note = v;
+        } else {
+            noteProperty.set(v);
+        }
     }
 
     public StringProperty noteProperty() {
-        return note;
+        if (noteProperty == null) {
+            noteProperty = new SimpleStringProperty(this, "note", note);
+        }
+        return noteProperty;
     }
 }
@@ -0,0 +1,59 @@
+package com.marzuque.sms.model;
+
+/**
+ * What a student owes as of a date, split by how long it has been due:
+ * payments and credits are set against the oldest charges first (FIFO), and
+ * whatever is left of each charge is aged from its date. unappliedCredit is
+ * paid beyond everything charged so far.
+ */
+public record AgingRow(int studentDbId, String studentId, String fullName, String batch,
+        double current, double days30, double days60, double days90, double days120, double unappliedCredit) {
+
+    public static final String[] BUCKET_LABELS = {"Current", "30-59", "60-89", "90-119", "120+"};
+
+    /** oldestBucket() when nothing is due. */
+    public static final int NOTHING_DUE = -1;
+
+    /**
+     * Bucket index (into BUCKET_LABELS) for an amount due 'days' days ago.
+     */
+    public static int bucketOf(long days) {
+        return days < 30 ? 0 : days < 60 ? 1 : days < 90 ? 2 : days < 120 ? 3 : 4;
+    }
+
+    public double bucket(int i) {
+        return switch (i) {
+            case 0 -> current;
+            case 1 -> days30;
+            case 2 -> days60;
+            case 3 -> days90;
+            default -> days120;
+        };
+    }
+
+    /**
+     * Amount due 30 days or more.
+     */
+    public double overdue() {
+        return days30 + days60 + days90 + days120;
+    }
+
+    /**
+     * The balance: everything due less unapplied credit.
+     */
+    public double total() {
+        return current + overdue() - unappliedCredit;
+    }
+
+    /**
+     * Index of the oldest bucket with something due, or NOTHING_DUE.
+     */
+    public int oldestBucket() {
+        for (int i = BUCKET_LABELS.length - 1; i >= 0; i--) {
+            if (bucket(i) > 0) {
+                return i;
+            }
+        }
+        return NOTHING_DUE;
+    }
+}
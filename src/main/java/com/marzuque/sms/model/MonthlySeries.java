@@ -0,0 +1,86 @@
+package com.marzuque.sms.model;
+
+import java.time.YearMonth;
+
+/**
+ * Month-by-month ledger totals for a report, one slot per calendar month
+ * from 'start' on (index = months since start), so empty months are just
+ * zeros and no per-month objects are built.
+ */
+public final class MonthlySeries {
+
+    private final YearMonth start;
+    private final int startIndex; // start as a month count, for offsetOf
+    private final double[] charges;
+    private final double[] adjustments;
+    private final double[] payments;
+    private final double[] endingBalance;
+
+    public MonthlySeries(YearMonth start, int months) {
+        this.start = start;
+        this.startIndex = start.getYear() * 12 + start.getMonthValue() - 1;
+        this.charges = new double[months];
+        this.adjustments = new double[months];
+        this.payments = new double[months];
+        this.endingBalance = new double[months];
+    }
+
+    public int size() {
+        return charges.length;
+    }
+
+    public YearMonth month(int i) {
+        return start.plusMonths(i);
+    }
+
+    /**
+     * Index of a "YYYY-MM" month text, parsed in place; may fall outside
+     * [0, size).
+     */
+    public int offsetOf(String ym) {
+        int year = (ym.charAt(0) - '0') * 1000 + (ym.charAt(1) - '0') * 100
+                + (ym.charAt(2) - '0') * 10 + (ym.charAt(3) - '0');
+        int month = (ym.charAt(5) - '0') * 10 + (ym.charAt(6) - '0');
+        return year * 12 + month - 1 - startIndex;
+    }
+
+    /**
+     * Records month i's flows; call setRunningBalances once all are in.
+     */
+    public void set(int i, double charges, double adjustments, double payments) {
+        this.charges[i] = charges;
+        this.adjustments[i] = adjustments;
+        this.payments[i] = payments;
+    }
+
+    /**
+     * Fills the ending balances from the balance before the first month.
+     */
+    public void setRunningBalances(double openingBalance) {
+        double balance = openingBalance;
+        for (int i = 0; i < charges.length; i++) {
+            balance += netChange(i);
+            endingBalance[i] = balance;
+        }
+    }
+
+    public double charges(int i) {
+        return charges[i];
+    }
+
+    public double adjustments(int i) {
+        return adjustments[i];
+    }
+
+    public double payments(int i) {
+        return payments[i];
+    }
+
+    public double netChange(int i) {
+        return charges[i] + adjustments[i] - payments[i];
+    }
+
+    public double endingBalance(int i) {
+        return endingBalance[i];
+    }
+}
@@ -0,0 +1,10 @@
+package com.marzuque.sms.model;
+
+/**
+ * One payment to record, already resolved to the student's db id (bank
+ * statement ingestion). paymentDate is 'YYYY-MM-DD'; referenceNo is the
+ * bank's transaction reference that makes re-ingesting a file a no-op.
+ */
+public record PaymentRecord(int studentDbId, String paymentDate, double amount, String method,
+        String referenceNo, String note) {
+}
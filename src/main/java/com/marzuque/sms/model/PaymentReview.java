@@ -0,0 +1,12 @@
+package com.marzuque.sms.model;
+
+/**
+ * A statement line the reconciler could not record, queued for someone to
+ * look at. The payment fields are as far as they could be read (amount and
+ * paymentDate are null when they were the problem); candidateDbId is the
+ * closest student found, if any, with its match score (0..1).
+ */
+public record PaymentReview(String source, long lineNo, String referenceNo, String paymentDate, Double amount,
+        String studentId, String fullName, String batch, String reason, Integer candidateDbId, double score,
+        String rawLine) {
+}
@@ -2,129 +2,234 @@ package com.marzuque.sms.model;
 
 import javafx.beans.property.*;
 
+/**
+ * A student row as the UI sees it. Values live in plain fields; the JavaFX
+ * property for a field is only created the first time something asks for it
+ * (a table cell binding to it), and from then on holds the value. Rows that
+ * are loaded but never shown cost no property objects.
+ */
 public class Student {
 
-    private final IntegerProperty id = new SimpleIntegerProperty();
-    private final StringProperty studentId = new SimpleStringProperty();
-    private final StringProperty fullName = new SimpleStringProperty();
+    private int id;
+    private String studentId;
+    private String fullName;
 
-    private final StringProperty batch = new SimpleStringProperty();
-    private final DoubleProperty cgpa = new SimpleDoubleProperty();
-    private final DoubleProperty semesterCgpa = new SimpleDoubleProperty();
+    private String batch;
+    private double cgpa;
+    private double semesterCgpa;
 
     // store as 'YYYY-MM-01' text for simplicity
-    private final StringProperty billingStartMonth = new SimpleStringProperty();
+    private String billingStartMonth;
 
     // calculated (not stored)
-    private final DoubleProperty currentBalance = new SimpleDoubleProperty();
+    private double currentBalance;
+    private int agingBucket = AgingRow.NOTHING_DUE; // oldest AgingRow bucket with something due
+
+    // created on first xxxProperty() call; null until then
+    private IntegerProperty idProperty;
+    private StringProperty studentIdProperty;
+    private StringProperty fullNameProperty;
+    private StringProperty batchProperty;
+    private DoubleProperty cgpaProperty;
+    private DoubleProperty semesterCgpaProperty;
+    private StringProperty billingStartMonthProperty;
+    private DoubleProperty currentBalanceProperty;
+    private IntegerProperty agingBucketProperty;
 
     public Student() {
     }
 
     public Student(int id, String studentId, String fullName,
             String batch, Double cgpa, Double semesterCgpa, String billingStartMonth) {
-        setId(id);
-        setStudentId(studentId);
-        setFullName(fullName);
-        setBatch(batch);
-        setCgpa(cgpa == null ? 0.0 : cgpa);
-        setSemesterCgpa(semesterCgpa == null ? 0.0 : semesterCgpa);
-        setBillingStartMonth(billingStartMonth);
+        this.id = id;
+        this.studentId = studentId;
+        this.fullName = fullName;
+        this.batch = batch;
+        this.cgpa = cgpa == null ? 0.0 : cgpa;
+        this.semesterCgpa = semesterCgpa == null ? 0.0 : semesterCgpa;
+        this.billingStartMonth = billingStartMonth;
+    }
+
+    public static Student of(StudentRecord r) {
+        Student s = new Student(r.id(), r.studentId(), r.fullName(), r.batch(),
+                r.cgpa(), r.semesterCgpa(), r.billingStartMonth());
+        s.currentBalance = r.currentBalance();
+        return s;
+    }
+
+    public StudentRecord toRecord() {
+        return new StudentRecord(getId(), getStudentId(), getFullName(), getBatch(),
+                getCgpa(), getSemesterCgpa(), getBillingStartMonth(), getCurrentBalance());
     }
 
     public int getId() {
-        return id.get();
+        return idProperty == null ? id : idProperty.get();
     }
 
     public void setId(int value) {
-        id.set(value);
+        if (idProperty == null) {
+            id = value;
+        } else {
+            idProperty.set(value);
+        }
     }
 
     public IntegerProperty idProperty() {
-        return id;
+        if (idProperty == null) {
+            idProperty = new SimpleIntegerProperty(this, "id", id);
+        }
+        return idProperty;
     }
 
     public String getStudentId() {
-        return studentId.get();
+        return studentIdProperty == null ? studentId : studentIdProperty.get();
     }
 
     public void setStudentId(String value) {
-        studentId.set(value);
+        if (studentIdProperty == null) {
+            studentId = value;
+        } else {
+            studentIdProperty.set(value);
+        }
     }
 
     public StringProperty studentIdProperty() {
-        return studentId;
+        if (studentIdProperty == null) {
+            studentIdProperty = new SimpleStringProperty(this, "studentId", studentId);
+        }
+        return studentIdProperty;
     }
 
     public String getFullName() {
-        return fullName.get();
+        return fullNameProperty == null ? fullName : fullNameProperty.get();
     }
 
     public void setFullName(String value) {
-        fullName.set(value);
+        if (fullNameProperty == null) {
+            fullName = value;
+        } else {
+            fullNameProperty.set(value);
+        }
     }
 
     public StringProperty fullNameProperty() {
-        return fullName;
+        if (fullNameProperty == null) {
+            fullNameProperty = new SimpleStringProperty(this, "fullName", fullName);
+        }
+        return fullNameProperty;
     }
 
     public String getBatch() {
-        return batch.get();
+        return batchProperty == null ? batch : batchProperty.get();
     }
 
     public void setBatch(String value) {
-        batch.set(value);
+        if (batchProperty == null) {
+            batch = value;
+        } else {
+            batchProperty.set(value);
+        }
     }
 
     public StringProperty batchProperty() {
-        return batch;
+        if (batchProperty == null) {
+            batchProperty = new SimpleStringProperty(this, "batch", batch);
+        }
+        return batchProperty;
     }
 
     public double getCgpa() {
-        return cgpa.get();
+        return cgpaProperty == null ? cgpa : cgpaProperty.get();
     }
 
     public void setCgpa(double value) {
-        cgpa.set(value);
+        if (cgpaProperty == null) {
+            cgpa = value;
+        } else {
+            cgpaProperty.set(value);
+        }
     }
 
     public DoubleProperty cgpaProperty() {
-        return cgpa;
+        if (cgpaProperty == null) {
+            cgpaProperty = new SimpleDoubleProperty(this, "cgpa", cgpa);
+        }
+        return cgpaProperty;
     }
 
     public double getSemesterCgpa() {
-        return semesterCgpa.get();
+        return semesterCgpaProperty == null ? semesterCgpa : semesterCgpaProperty.get();
     }
 
     public void setSemesterCgpa(double value) {
-        semesterCgpa.set(value);
+        if (semesterCgpaProperty == null) {
+            semesterCgpa = value;
+        } else {
+            semesterCgpaProperty.set(value);
+        }
     }
 
     public DoubleProperty semesterCgpaProperty() {
-        return semesterCgpa;
+        if (semesterCgpaProperty == null) {
+            semesterCgpaProperty = new SimpleDoubleProperty(this, "semesterCgpa", semesterCgpa);
+        }
+        return semesterCgpaProperty;
     }
 
     public String getBillingStartMonth() {
-        return billingStartMonth.get();
+        return billingStartMonthProperty == null ? billingStartMonth : billingStartMonthProperty.get();
     }
 
     public void setBillingStartMonth(String value) {
-        billingStartMonth.set(value);
+        if (billingStartMonthProperty == null) {
+            billingStartMonth = value;
+        } else {
+            billingStartMonthProperty.set(value);
+        }
     }
 
     public StringProperty billingStartMonthProperty() {
-        return billingStartMonth;
+        if (billingStartMonthProperty == null) {
+            billingStartMonthProperty = new SimpleStringProperty(this, "billingStartMonth", billingStartMonth);
+        }
+        return billingStartMonthProperty;
     }
 
     public double getCurrentBalance() {
-        return currentBalance.get();
+        return currentBalanceProperty == null ? currentBalance : currentBalanceProperty.get();
     }
 
     public void setCurrentBalance(double value) {
-        currentBalance.set(value);
+        if (currentBalanceProperty == null) {
+            currentBalance = value;
+        } else {
+            currentBalanceProperty.set(value);
+        }
     }
 
     public DoubleProperty currentBalanceProperty() {
-        return currentBalance;
+        if (currentBalanceProperty == null) {
+            currentBalanceProperty = new SimpleDoubleProperty(this, "currentBalance", currentBalance);
+        }
+        return currentBalanceProperty;
+    }
+
+    public int getAgingBucket() {
+        return agingBucketProperty == null ? agingBucket : agingBucketProperty.get();
+    }
+
+    public void setAgingBucket(int value) {
+        if (agingBucketProperty == null) {
+            agingBucket = value;
+        } else {
+            agingBucketProperty.set(value);
+        }
+    }
+
+    public IntegerProperty agingBucketProperty() {
+        if (agingBucketProperty == null) {
+            agingBucketProperty = new SimpleIntegerProperty(this, "agingBucket", agingBucket);
+        }
+        return agingBucketProperty;
     }
-}
\ No newline at end of file
+}
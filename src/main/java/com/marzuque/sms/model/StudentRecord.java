@@ -0,0 +1,10 @@
+package com.marzuque.sms.model;
+
+/**
+ * Immutable student row for moving data between the database and files on
+ * background threads (Excel import and export), where no JavaFX binding is
+ * involved. cgpa and semesterCgpa are null when not set.
+ */
+public record StudentRecord(int id, String studentId, String fullName, String batch,
+        Double cgpa, Double semesterCgpa, String billingStartMonth, double currentBalance) {
+}
@@ -0,0 +1,174 @@
+package com.marzuque.sms.ui;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.concurrent.Task;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs DAO / file work off the JavaFX application thread on virtual threads.
+ * Each job is wrapped in a javafx.concurrent.Task so progress, messages and
+ * cancellation can be bound to the UI; the success / failure callbacks are
+ * invoked back on the FX thread, once, with the whole result.
+ *
+ * Every method here must be called on the FX thread.
+ */
+public final class BackgroundTasks {
+
+    /**
+     * Work body. Runs on a background thread; must not touch the scene graph.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+
+        T call(Progress progress) throws Exception;
+    }
+
+    /**
+     * Progress / cancellation handle passed to the work body.
+     */
+    public interface Progress {
+
+        void update(long done, long total);
+
+        void message(String text);
+
+        boolean isCancelled();
+
+        /**
+         * Throws CancellationException if the user cancelled; call between
+         * units of work (chunks, rows, ...).
+         */
+        default void checkCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException("Cancelled");
+            }
+        }
+    }
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("sms-bg-", 0).factory());
+
+    private final ReadOnlyObjectWrapper<Task<?>> current = new ReadOnlyObjectWrapper<>();
+    private final Set<Task<?>> active = new LinkedHashSet<>();
+
+    // coalescing key -> job queued to run once the in-flight one finishes (FX thread only)
+    private final Map<String, Runnable> pending = new HashMap<>();
+    private final Map<String, Task<?>> inFlight = new HashMap<>();
+
+    /**
+     * The most recently started task still running (null when idle), for a
+     * status bar to bind to.
+     */
+    public ReadOnlyObjectProperty<Task<?>> currentTaskProperty() {
+        return current.getReadOnlyProperty();
+    }
+
+    public <T> Task<T> run(String title, Work<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        JobTask<T> task = new JobTask<>(title, work);
+
+        task.setOnSucceeded(e -> {
+            finished(task);
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finished(task);
+            onError.accept(task.getException());
+        });
+        task.setOnCancelled(e -> finished(task));
+
+        active.add(task);
+        current.set(task);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Like run(), but at most one job per key is in flight. A request that
+     * arrives while one is running is parked; further requests replace it, and
+     * the parked one starts after the running job finishes. Used for refreshes,
+     * where only the latest request matters.
+     */
+    public <T> void runCoalesced(String key, String title, Supplier<Work<T>> work,
+            Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        Runnable start = () -> {
+            Task<T> task = run(title, work.get(), onSuccess, onError);
+            inFlight.put(key, task);
+            task.runningProperty().addListener((obs, was, running) -> {
+                if (!running && task.isDone() && inFlight.get(key) == task) {
+                    inFlight.remove(key);
+                    Runnable next = pending.remove(key);
+                    if (next != null) {
+                        next.run();
+                    }
+                }
+            });
+        };
+
+        if (inFlight.containsKey(key)) {
+            pending.put(key, start);
+        } else {
+            start.run();
+        }
+    }
+
+    public void cancelCurrent() {
+        Task<?> t = current.get();
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void finished(Task<?> task) {
+        active.remove(task);
+        if (current.get() == task) {
+            // fall back to the newest job still running, if any
+            Task<?> newest = null;
+            for (Task<?> t : active) {
+                newest = t;
+            }
+            current.set(newest);
+        }
+    }
+
+    private static final class JobTask<T> extends Task<T> implements Progress {
+
+        private final String title;
+        private final Work<T> work;
+
+        JobTask(String title, Work<T> work) {
+            this.title = title;
+            this.work = work;
+        }
+
+        @Override
+        protected T call() throws Exception {
+            updateTitle(title);
+            updateMessage(title + "...");
+            return work.call(this);
+        }
+
+        @Override
+        public void update(long done, long total) {
+            updateProgress(done, total);
+        }
+
+        @Override
+        public void message(String text) {
+            updateMessage(text);
+        }
+    }
+}
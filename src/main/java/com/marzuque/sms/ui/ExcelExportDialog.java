@@ -1,19 +1,15 @@
 package com.marzuque.sms.ui;
 
-import com.marzuque.sms.model.Student;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.excel.StudentXlsxWriter;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Control;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.util.List;
+import java.time.YearMonth;
 
 public class ExcelExportDialog {
 
@@ -21,10 +17,11 @@ public class ExcelExportDialog {
      * Save to the same file that was last imported/saved. If none, falls back
      * to Save As.
      */
-    public static void saveToCurrentOrSaveAs(Control anyControlInScene, List<Student> students) {
+    public static void saveToCurrentOrSaveAs(Control anyControlInScene, StudentDao dao, BackgroundTasks tasks,
+            Runnable onSaved) {
         File current = ExcelFileState.getCurrentExcelFile();
         if (current == null) {
-            saveAs(anyControlInScene, students);
+            saveAs(anyControlInScene, dao, tasks, onSaved);
             return;
         }
 
@@ -35,12 +32,7 @@ public class ExcelExportDialog {
 
         confirm.showAndWait().ifPresent(btn -> {
             if (btn == ButtonType.OK) {
-                try {
-                    writeStudentsXlsx(current, students);
-                    info("Saved", "Saved to:\n" + current.getAbsolutePath());
-                } catch (Exception e) {
-                    error("Save failed", e.getMessage());
-                }
+                save(current, dao, tasks, onSaved);
             }
         });
     }
@@ -48,7 +40,7 @@ public class ExcelExportDialog {
     /**
      * Always asks for a path.
      */
-    public static void saveAs(Control anyControlInScene, List<Student> students) {
+    public static void saveAs(Control anyControlInScene, StudentDao dao, BackgroundTasks tasks, Runnable onSaved) {
         Window owner = anyControlInScene.getScene() != null ? anyControlInScene.getScene().getWindow() : null;
 
         FileChooser fc = new FileChooser();
@@ -72,59 +64,31 @@ public class ExcelExportDialog {
             file = new File(file.getParentFile(), file.getName() + ".xlsx");
         }
 
-        try {
-            writeStudentsXlsx(file, students);
-            ExcelFileState.setCurrentExcelFile(file); // becomes current for Save Excel
-            info("Saved", "Saved to:\n" + file.getAbsolutePath());
-        } catch (Exception e) {
-            error("Save failed", e.getMessage());
-        }
+        save(file, dao, tasks, onSaved);
+    }
+
+    private static void save(File file, StudentDao dao, BackgroundTasks tasks, Runnable onSaved) {
+        tasks.run("Saving " + file.getName(), p -> writeStudentsXlsx(file, dao, p),
+                rows -> {
+                    ExcelFileState.setCurrentExcelFile(file); // becomes current for Save Excel
+                    onSaved.run();
+                    info("Saved", "Saved " + rows + " students to:\n" + file.getAbsolutePath());
+                },
+                e -> error("Save failed", e.getMessage()));
     }
 
     /**
-     * Export format (round-trip compatible with import): A: Student ID B: Full
-     * Name C: Batch D: CGPA E: Semester CGPA F: Billing Start Month
-     * (YYYY-MM-01) G: Current Balance (optional, helpful for admins)
+     * Streams every student (with the current month's balance) from a DB
+     * cursor into the file; see StudentXlsxWriter for the format.
      */
-    private static void writeStudentsXlsx(File file, List<Student> students) throws Exception {
-        try (Workbook wb = new XSSFWorkbook()) {
-            Sheet sheet = wb.createSheet("Students");
-
-            // Header
-            Row h = sheet.createRow(0);
-            h.createCell(0).setCellValue("Student ID");
-            h.createCell(1).setCellValue("Full Name");
-            h.createCell(2).setCellValue("Batch");
-            h.createCell(3).setCellValue("CGPA");
-            h.createCell(4).setCellValue("Semester CGPA");
-            h.createCell(5).setCellValue("Billing Start Month");
-            h.createCell(6).setCellValue("Current Balance");
-
-            // Rows
-            int r = 1;
-            for (Student s : students) {
-                Row row = sheet.createRow(r++);
-                row.createCell(0).setCellValue(n(s.getStudentId()));
-                row.createCell(1).setCellValue(n(s.getFullName()));
-                row.createCell(2).setCellValue(n(s.getBatch()));
-                row.createCell(3).setCellValue(s.getCgpa());
-                row.createCell(4).setCellValue(s.getSemesterCgpa());
-                row.createCell(5).setCellValue(n(s.getBillingStartMonth()));
-                row.createCell(6).setCellValue(s.getCurrentBalance());
-            }
-
-            for (int i = 0; i < 7; i++) {
-                sheet.autoSizeColumn(i);
+    private static int writeStudentsXlsx(File file, StudentDao dao, BackgroundTasks.Progress p) throws Exception {
+        return StudentXlsxWriter.writeReplacing(file, w -> dao.forEachStudent(YearMonth.now(), s -> {
+            w.append(s);
+            if (w.rowsWritten() % 1000 == 0) {
+                p.checkCancelled();
+                p.message("Saved " + w.rowsWritten() + " students to " + file.getName());
             }
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                wb.write(fos);
-            }
-        }
-    }
-
-    private static String n(String v) {
-        return v == null ? "" : v;
+        }));
     }
 
     private static void info(String title, String msg) {
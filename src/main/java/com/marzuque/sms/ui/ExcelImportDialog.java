@@ -1,35 +1,33 @@
 package com.marzuque.sms.ui;
 
+import com.marzuque.sms.dao.ChangeSet;
 import com.marzuque.sms.dao.StudentDao;
-import com.marzuque.sms.model.Student;
+import com.marzuque.sms.excel.StudentXlsxReader;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Control;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.time.YearMonth;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Consumer;
 
 public class ExcelImportDialog {
 
+    // rows per upsert transaction while streaming the sheet
+    private static final int CHUNK_SIZE = 1000;
+
     /**
-     * Expected .xlsx format (First sheet): Column A: Student ID (required)
-     * Column B: Full Name (required) Column C: Batch (required) e.g., "50th"
-     * Column D: CGPA (optional) e.g., 3.75 Column E: Semester CGPA (optional)
-     * e.g., 3.90 Column F: Billing Start Month (required-ish) as 'YYYY-MM-01'
-     * If blank/invalid, we default to current month 'YYYY-MM-01'
-     *
-     * First row can be headers. We try to detect and skip it.
+     * Streams the first sheet of an .xlsx file into the students table in
+     * chunks (see StudentXlsxReader for the expected columns). Existing
+     * Student IDs are updated (upsert). The file is read and written on a
+     * background task; onDone gets the imported rows on the FX thread
+     * afterwards, or a full reload when the import failed or was cancelled
+     * part-way (earlier chunks are committed).
      */
-    public static void importStudents(Control anyControlInScene, StudentDao dao, Runnable onDoneReload) {
+    public static void importStudents(Control anyControlInScene, StudentDao dao, BackgroundTasks tasks,
+            Consumer<ChangeSet> onDone) {
         Window owner = anyControlInScene.getScene() != null ? anyControlInScene.getScene().getWindow() : null;
 
         FileChooser fc = new FileChooser();
@@ -41,172 +39,41 @@ public class ExcelImportDialog {
             return;
         }
 
-        try {
-            List<Student> students = readStudentsFromXlsx(file);
-
-            if (students.isEmpty()) {
-                info("Import", "No valid rows found.\n\nRequired columns: Student ID, Full Name, Batch.");
-                return;
-            }
-
-            // Remember this file as the current Excel file for Save Excel behavior
-            ExcelFileState.setCurrentExcelFile(file);
-
-            StudentDao.ImportResult result = dao.upsertMany(students);
-            onDoneReload.run();
-
-            info("Import complete",
-                    "Rows prepared: " + result.processed + "\n"
-                    + "Failed while preparing rows: " + result.failed + "\n\n"
-                    + "Existing Student IDs are updated (upsert).");
-
-        } catch (Exception e) {
-            error("Import failed", e.getMessage());
-        }
-    }
-
-    private static List<Student> readStudentsFromXlsx(File file) throws Exception {
-        List<Student> out = new ArrayList<>();
-        DataFormatter fmt = new DataFormatter();
-
-        try (FileInputStream fis = new FileInputStream(file); Workbook wb = new XSSFWorkbook(fis)) {
-
-            Sheet sheet = wb.getNumberOfSheets() > 0 ? wb.getSheetAt(0) : null;
-            if (sheet == null) {
-                return out;
-            }
-
-            int firstRow = sheet.getFirstRowNum();
-            int lastRow = sheet.getLastRowNum();
-            if (lastRow < firstRow) {
-                return out;
-            }
-
-            int start = firstRow;
-
-            // Header detection heuristic: if first row includes "student" / "name" / "batch"
-            Row r0 = sheet.getRow(firstRow);
-            if (r0 != null) {
-                String a = cell(fmt, r0, 0).toLowerCase();
-                String b = cell(fmt, r0, 1).toLowerCase();
-                String c = cell(fmt, r0, 2).toLowerCase();
-                String f = cell(fmt, r0, 5).toLowerCase();
-                if (a.contains("student") || a.contains("id")
-                        || b.contains("name")
-                        || c.contains("batch")
-                        || f.contains("billing")) {
-                    start = firstRow + 1;
-                }
-            }
-
-            for (int i = start; i <= lastRow; i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) {
-                    continue;
-                }
-
-                String studentId = cell(fmt, row, 0).trim();
-                String fullName = cell(fmt, row, 1).trim();
-                String batch = cell(fmt, row, 2).trim();
-
-                String cgpaText = cell(fmt, row, 3).trim();
-                String semCgpaText = cell(fmt, row, 4).trim();
-                String billingText = cell(fmt, row, 5).trim();
-
-                // required: studentId + fullName + batch
-                if (studentId.isEmpty() || fullName.isEmpty() || batch.isEmpty()) {
-                    continue;
-                }
-
-                Student s = new Student();
-                s.setStudentId(studentId);
-                s.setFullName(fullName);
-                s.setBatch(batch);
-
-                s.setCgpa(parseDoubleOrZero(cgpaText));
-                s.setSemesterCgpa(parseDoubleOrZero(semCgpaText));
-
-                String billingStart = normalizeBillingStartMonth(billingText);
-                s.setBillingStartMonth(billingStart);
-
-                out.add(s);
-            }
-        }
-
-        return out;
-    }
-
-    private static String normalizeBillingStartMonth(String billingText) {
-        // desired: 'YYYY-MM-01'
-        // if blank/invalid -> current month
-        String fallback = YearMonth.now().toString() + "-01";
-        if (billingText == null) {
-            return fallback;
-        }
-
-        String t = billingText.trim();
-        if (t.isEmpty()) {
-            return fallback;
-        }
-
-        // Accept:
-        // 1) 'YYYY-MM-01'
-        // 2) 'YYYY-MM'   -> append '-01'
-        // 3) 'YYYY/MM/01' or 'YYYY/MM' -> normalize to '-'
-        t = t.replace('/', '-');
-
-        try {
-            if (t.length() == 7) {
-                // 'YYYY-MM'
-                YearMonth.parse(t);
-                return t + "-01";
-            }
-            if (t.length() == 10) {
-                // 'YYYY-MM-01' expected
-                YearMonth.parse(t.substring(0, 7));
-                if (t.endsWith("-01")) {
-                    return t;
-                }
-                // if they put another day, still normalize to first day
-                return t.substring(0, 7) + "-01";
-            }
-
-            // Sometimes Excel numeric date gets formatted weirdly; attempt best-effort:
-            // If it starts with YYYY-MM, take that
-            if (t.length() >= 7) {
-                String ym = t.substring(0, 7);
-                YearMonth.parse(ym);
-                return ym + "-01";
-            }
-
-            return fallback;
-        } catch (Exception e) {
-            return fallback;
-        }
-    }
-
-    private static String cell(DataFormatter fmt, Row row, int col) {
-        org.apache.poi.ss.usermodel.Cell c
-                = row.getCell(col, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
-        if (c == null) {
-            return "";
-        }
-        return fmt.formatCellValue(c);
-    }
-
-    private static double parseDoubleOrZero(String t) {
-        try {
-            if (t == null) {
-                return 0.0;
-            }
-            String s = t.trim();
-            if (s.isEmpty()) {
-                return 0.0;
-            }
-            return Double.parseDouble(s);
-        } catch (Exception e) {
-            return 0.0;
-        }
+        int[] totals = new int[2]; // processed, failed
+        ChangeSet[] changes = {ChangeSet.none()};
+
+        Task<StudentXlsxReader.ReadResult> task = tasks.run("Importing " + file.getName(), p ->
+                StudentXlsxReader.read(file, CHUNK_SIZE, chunk -> {
+                    p.checkCancelled();
+                    StudentDao.ImportResult r = dao.upsertMany(chunk);
+                    totals[0] += r.processed;
+                    totals[1] += r.failed;
+                    changes[0] = changes[0].merge(r.changes);
+                    p.message("Imported " + totals[0] + " rows from " + file.getName());
+                }),
+                read -> {
+                    if (read.rowsRead == 0) {
+                        info("Import", "No valid rows found.\n\nRequired columns: Student ID, Full Name, Batch.");
+                        return;
+                    }
+
+                    // Remember this file as the current Excel file for Save Excel behavior
+                    ExcelFileState.setCurrentExcelFile(file);
+
+                    onDone.accept(changes[0]);
+
+                    info("Import complete",
+                            "Rows prepared: " + totals[0] + "\n"
+                            + "Failed while preparing rows: " + totals[1] + "\n"
+                            + "Rows skipped (missing ID, name or batch): " + read.rowsSkipped + "\n\n"
+                            + "Existing Student IDs are updated (upsert).");
+                },
+                e -> {
+                    onDone.accept(ChangeSet.fullReload());
+                    error("Import failed", e.getMessage());
+                });
+
+        task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, e -> onDone.accept(ChangeSet.fullReload()));
     }
 
     private static void info(String title, String msg) {
@@ -1,32 +1,61 @@
 package com.marzuque.sms.ui;
 
+import com.marzuque.sms.dao.ChangeSet;
+import com.marzuque.sms.dao.LedgerWriter;
 import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.dao.StudentQuery;
+import com.marzuque.sms.db.Db;
+import com.marzuque.sms.db.QueryPlanCheck;
 import com.marzuque.sms.model.AccountAdjustment;
+import com.marzuque.sms.model.AgingRow;
 import com.marzuque.sms.model.Student;
+import com.marzuque.sms.util.IntDoubleMap;
+import com.marzuque.sms.util.IntIntMap;
+import com.marzuque.sms.util.StudentSearchIndex;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.util.Callback;
 
+import java.sql.Connection;
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class MainView {
 
-    // Flat fee for now (BDT). Later we’ll move this to a settings table.
-    private static final double MONTHLY_TUITION_FEE = 5000.0;
+    // Above this many students the table pages through SQL instead of holding the roster
+    private static final int PAGED_THRESHOLD = Integer.getInteger("sms.ui.pagedThreshold", 20_000);
 
     private final StudentDao dao = new StudentDao();
+    private final BackgroundTasks tasks = new BackgroundTasks();
 
     // Students list
     private final ObservableList<Student> master = FXCollections.observableArrayList();
     private final FilteredList<Student> filtered = new FilteredList<>(master, s -> true);
+    private final StudentSearchIndex searchIndex = new StudentSearchIndex();
+    private final Map<Integer, Student> byId = new HashMap<>();
+
+    // master is kept in findAll order so edited rows can be put back in place
+    private static final Comparator<Student> ROSTER_ORDER = Comparator
+            .comparing(Student::getBatch, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Student::getStudentId, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+    // Large rosters: lazily paged list, filtered and sorted in SQL
+    private final PagedStudentList paged
+            = new PagedStudentList(dao, tasks, ex -> showError("Could not load students", ex.getMessage()));
+    private boolean pagedMode = false;
+
 
     private final TableView<Student> table = new TableView<>();
     private final TextField search = new TextField();
@@ -34,6 +63,7 @@ public class MainView {
     // Batch tabs
     private final TabPane batchTabs = new TabPane();
     private String activeBatch = null; // null = All
+    private final Map<String, Integer> batchCounts = new HashMap<>();
 
     // Adjustments panel
     private final Label selectedStudentLabel = new Label("No student selected");
@@ -50,6 +80,11 @@ public class MainView {
     private final Button studentReportBtn = new Button("Export Student Report");
     private final Button batchReportBtn = new Button("Export Batch Report");
 
+    // Status bar for background work
+    private final Label statusLabel = new Label();
+    private final ProgressBar statusProgress = new ProgressBar(0);
+    private final Button cancelTaskBtn = new Button("Cancel");
+
     public Parent create() {
         // --- Top toolbar buttons
         Button addBtn = new Button("Add Student");
@@ -57,6 +92,7 @@ public class MainView {
         Button saveAsExcelBtn = new Button("Save As Excel...");
         Button refreshBtn = new Button("Refresh");
         Button genChargesBtn = new Button("Generate Charges (Up to This Month)");
+        Button agingReportBtn = new Button("Export Aging");
 
         editBtn.setDisable(true);
         delBtn.setDisable(true);
@@ -73,33 +109,59 @@ public class MainView {
         saveAsExcelBtn.setOnAction(e -> onSaveAsExcel());
         refreshBtn.setOnAction(e -> load());
 
-        genChargesBtn.setOnAction(e -> {
-            try {
-                dao.generateChargesUpToMonthForAllStudents(MONTHLY_TUITION_FEE, YearMonth.now());
-                load();            // refresh balances
-                loadAdjustments(); // keep right panel consistent
-            } catch (RuntimeException ex) {
-                showError("Charge generation failed", ex.getMessage());
-            }
-        });
+        genChargesBtn.setOnAction(e -> tasks.run("Generating charges",
+                p -> dao.generateChargesUpToMonthForAllStudents(StudentDao.MONTHLY_TUITION_FEE, YearMonth.now()),
+                res -> {
+                    refreshBalances();
+                    loadAdjustments(); // keep right panel consistent
+                    showInfo("Charges generated",
+                            "New charges: " + res.inserted + "\n"
+                            + "Time: " + res.elapsedMs + " ms");
+                },
+                ex -> showError("Charge generation failed", ex.getMessage())));
+
+        MenuItem rebuildWatermarksItem = new MenuItem("Rebuild Charge Watermarks");
+        rebuildWatermarksItem.setOnAction(e -> tasks.run("Rebuilding charge watermarks",
+                p -> dao.rebuildChargeWatermarks(),
+                n -> showInfo("Charge watermarks rebuilt", "Students with a watermark: " + n),
+                ex -> showError("Watermark rebuild failed", ex.getMessage())));
+
+        MenuItem checkPlansItem = new MenuItem("Check Query Plans");
+        checkPlansItem.setOnAction(e -> tasks.run("Checking query plans",
+                p -> {
+                    try (Connection c = Db.connect()) {
+                        return QueryPlanCheck.run(c);
+                    }
+                },
+                problems -> {
+                    if (problems.isEmpty()) {
+                        showInfo("Query plans", "All ledger queries use their indexes.");
+                    } else {
+                        showError("Query plans", String.join("\n\n", problems));
+                    }
+                },
+                ex -> showError("Query plan check failed", ex.getMessage())));
+        MenuItem verifyBalancesItem = new MenuItem("Verify Month Balances");
+        verifyBalancesItem.setOnAction(e -> onVerifyMonthBalances());
+
+        MenuItem closePeriodItem = new MenuItem("Close Period...");
+        closePeriodItem.setOnAction(e -> onClosePeriod());
+
+        MenuButton maintenanceBtn = new MenuButton("Maintenance", null,
+                rebuildWatermarksItem, verifyBalancesItem, checkPlansItem, new SeparatorMenuItem(), closePeriodItem);
 
         setBalanceBtn.setOnAction(e -> onSetBalance());
 
         studentReportBtn.setOnAction(e -> {
-            Student sel = table.getSelectionModel().getSelectedItem();
+            Student sel = selectedStudent();
             if (sel == null) {
                 showError("Student report", "Select a student first.");
                 return;
             }
 
-            MonthsBackDialog.ask("Student Report Range", 11).ifPresent(monthsBack -> {
-                try {
-                    var rows = dao.buildStudentReportPreviousMonths(sel.getId(), YearMonth.now(), monthsBack);
-                    ReportExportDialog.exportStudent12Months(table, sel, rows);
-                } catch (RuntimeException ex) {
-                    showError("Student report failed", ex.getMessage());
-                }
-            });
+            MonthsBackDialog.ask("Student Report Range", 11).ifPresent(monthsBack
+                    -> ReportExportDialog.exportStudent12Months(table, tasks, sel,
+                            () -> dao.buildStudentReportPreviousMonths(sel.getId(), YearMonth.now(), monthsBack)));
         });
 
         batchReportBtn.setOnAction(e -> {
@@ -109,20 +171,18 @@ public class MainView {
                 return;
             }
 
-            MonthsBackDialog.ask("Batch Report Range", 11).ifPresent(monthsBack -> {
-                try {
-                    var rows = dao.buildBatchReportPreviousMonths(batch, YearMonth.now(), monthsBack);
-                    ReportExportDialog.exportBatch12Months(table, batch, rows);
-                } catch (RuntimeException ex) {
-                    showError("Batch report failed", ex.getMessage());
-                }
-            });
+            MonthsBackDialog.ask("Batch Report Range", 11).ifPresent(monthsBack
+                    -> ReportExportDialog.exportBatch12Months(table, tasks, batch,
+                            () -> dao.buildBatchReportPreviousMonths(batch, YearMonth.now(), monthsBack)));
         });
 
+        agingReportBtn.setOnAction(e -> ReportExportDialog.exportAging(table, tasks, dao));
+
         updateSaveButtons();
 
         // --- Selection behavior
-        table.getSelectionModel().selectedItemProperty().addListener((obs, old, sel) -> {
+        table.getSelectionModel().selectedItemProperty().addListener((obs, old, item) -> {
+            Student sel = item == PagedStudentList.PLACEHOLDER ? null : item;
             boolean has = sel != null;
             editBtn.setDisable(!has);
             delBtn.setDisable(!has);
@@ -151,11 +211,11 @@ public class MainView {
                 new Separator(),
                 genChargesBtn,
                 new Separator(),
-                studentReportBtn, batchReportBtn,
+                studentReportBtn, batchReportBtn, agingReportBtn,
                 new Separator(),
                 importBtn, saveExcelBtn, saveAsExcelBtn,
                 new Separator(),
-                refreshBtn
+                refreshBtn, maintenanceBtn
         );
 
         // --- Batch tabs setup
@@ -172,35 +232,67 @@ public class MainView {
         });
 
         // --- Students table columns
+        // userData = SQL sort used in paged mode
         TableColumn<Student, String> sid = new TableColumn<>("Student ID");
         sid.setCellValueFactory(d -> d.getValue().studentIdProperty());
+        sid.setUserData(StudentQuery.Sort.STUDENT_ID);
 
         TableColumn<Student, String> name = new TableColumn<>("Full Name");
         name.setCellValueFactory(d -> d.getValue().fullNameProperty());
+        name.setUserData(StudentQuery.Sort.FULL_NAME);
 
         TableColumn<Student, String> batch = new TableColumn<>("Batch");
         batch.setCellValueFactory(d -> d.getValue().batchProperty());
+        batch.setUserData(StudentQuery.Sort.BATCH_STUDENT_ID);
 
         TableColumn<Student, Number> cgpa = new TableColumn<>("CGPA");
         cgpa.setCellValueFactory(d -> d.getValue().cgpaProperty());
+        cgpa.setUserData(StudentQuery.Sort.CGPA);
 
         TableColumn<Student, Number> semCgpa = new TableColumn<>("Sem CGPA");
         semCgpa.setCellValueFactory(d -> d.getValue().semesterCgpaProperty());
+        semCgpa.setUserData(StudentQuery.Sort.SEMESTER_CGPA);
 
         TableColumn<Student, Number> balance = new TableColumn<>("Current Balance");
         balance.setCellValueFactory(d -> d.getValue().currentBalanceProperty());
 
-        table.getColumns().setAll(sid, name, batch, cgpa, semCgpa, balance);
+        TableColumn<Student, Number> aging = new TableColumn<>("Aging");
+        aging.setCellValueFactory(d -> d.getValue().agingBucketProperty());
+        aging.setCellFactory(c -> new TableCell<>() {
+            @Override
+            protected void updateItem(Number bucket, boolean empty) {
+                super.updateItem(bucket, empty);
+                setText(empty || bucket == null || bucket.intValue() == AgingRow.NOTHING_DUE
+                        ? null : AgingRow.BUCKET_LABELS[bucket.intValue()]);
+            }
+        });
+
+        table.getColumns().setAll(sid, name, batch, cgpa, semCgpa, balance, aging);
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
         table.setPlaceholder(new Label("No students yet. Click “Add Student”."));
 
         table.setItems(filtered);
+        paged.setPageDecorator(this::ageRows);
+
+        // In paged mode a header click re-queries instead of sorting in memory
+        Callback<TableView<Student>, Boolean> inMemorySort = table.getSortPolicy();
+        table.setSortPolicy(t -> {
+            if (!pagedMode) {
+                return inMemorySort.call(t);
+            }
+            StudentQuery q = currentQuery();
+            if (!q.equals(paged.getQuery())) {
+                paged.setQuery(q);
+            }
+            return true;
+        });
 
         // Double-click row to edit
         table.setRowFactory(tv -> {
             TableRow<Student> row = new TableRow<>();
             row.setOnMouseClicked(evt -> {
                 if (!row.isEmpty()
+                        && row.getItem() != PagedStudentList.PLACEHOLDER
                         && evt.getButton() == MouseButton.PRIMARY
                         && evt.getClickCount() == 2) {
                     onEdit(row.getItem());
@@ -240,18 +332,56 @@ public class MainView {
         split.getItems().addAll(table, right);
         split.setDividerPositions(0.68);
 
+        // --- Status bar: follows whichever background job started last
+        statusProgress.setPrefWidth(180);
+        cancelTaskBtn.setOnAction(e -> tasks.cancelCurrent());
+        tasks.currentTaskProperty().addListener((obs, old, task) -> bindStatus(task));
+        bindStatus(null);
+
+        HBox status = new HBox(10, statusProgress, cancelTaskBtn, statusLabel);
+        status.setAlignment(Pos.CENTER_LEFT);
+        status.setPadding(new Insets(4, 10, 6, 10));
+
         BorderPane root = new BorderPane();
         VBox top = new VBox(bar, batchTabs);
         root.setTop(top);
         root.setCenter(split);
+        root.setBottom(status);
         BorderPane.setMargin(split, new Insets(10));
 
         load();
         return root;
     }
 
+    private Student selectedStudent() {
+        Student sel = table.getSelectionModel().getSelectedItem();
+        return sel == PagedStudentList.PLACEHOLDER ? null : sel;
+    }
+
+    /**
+     * Paged-mode query: searches go through the full-text index, best
+     * matches first unless a column header sort is active.
+     */
+    private StudentQuery currentQuery() {
+        StudentQuery.Sort sort = StudentQuery.Sort.RELEVANCE; // falls back to batch order without a search
+        boolean descending = false;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<Student, ?> col = table.getSortOrder().get(0);
+            if (col.getUserData() instanceof StudentQuery.Sort s) {
+                sort = s;
+                descending = col.getSortType() == TableColumn.SortType.DESCENDING;
+            }
+        }
+        return new StudentQuery(activeBatch, search.getText(), sort, descending, true);
+    }
+
     private void applyFilters() {
-        String q = (search.getText() == null) ? "" : search.getText().trim().toLowerCase();
+        if (pagedMode) {
+            paged.setQuery(currentQuery());
+            return;
+        }
+
+        BitSet hits = searchIndex.search(search.getText()); // null = no search
         String batch = activeBatch; // null = All
 
         filtered.setPredicate(s -> {
@@ -264,55 +394,125 @@ public class MainView {
                 }
             }
 
-            if (q.isEmpty()) {
-                return true;
-            }
-
-            return safe(s.getStudentId()).contains(q)
-                    || safe(s.getFullName()).contains(q)
-                    || safe(s.getBatch()).contains(q);
+            return hits == null || hits.get(s.getId());
         });
     }
 
-    private void load() {
-        List<Student> all = dao.findAll();
+    /**
+     * Stops background work; called when the application exits.
+     */
+    public void shutdown() {
+        tasks.shutdown();
+        LedgerWriter.shutdownShared(); // commits whatever is still queued
+    }
 
-        // Compute balances as-of current month
-        Map<Integer, Double> balances = dao.getBalancesAsOf(YearMonth.now());
-        for (Student s : all) {
-            s.setCurrentBalance(balances.getOrDefault(s.getId(), 0.0));
+    private void bindStatus(Task<?> task) {
+        statusLabel.textProperty().unbind();
+        statusProgress.progressProperty().unbind();
+
+        if (task == null) {
+            statusLabel.setText("Ready");
+            statusProgress.setProgress(0);
+            statusProgress.setVisible(false);
+            cancelTaskBtn.setDisable(true);
+        } else {
+            statusLabel.textProperty().bind(task.messageProperty());
+            statusProgress.progressProperty().bind(task.progressProperty());
+            statusProgress.setVisible(true);
+            cancelTaskBtn.setDisable(false);
         }
+    }
 
-        master.setAll(all);
+    private static class Loaded {
 
-        rebuildBatchTabs(all);
+        final List<Student> all; // null in paged mode
+        final Map<String, Integer> batchCounts;
+        final int total;
+
+        Loaded(List<Student> all, Map<String, Integer> batchCounts, int total) {
+            this.all = all;
+            this.batchCounts = batchCounts;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Reloads students and balances in the background. Refreshes requested
+     * while one is running collapse into a single follow-up reload. Rosters
+     * above PAGED_THRESHOLD only fetch counts here; PagedStudentList loads
+     * the visible rows.
+     */
+    private void load() {
+        tasks.<Loaded>runCoalesced("load", "Loading students", () -> p -> {
+            int total = dao.count(StudentQuery.all());
+            if (total > PAGED_THRESHOLD) {
+                return new Loaded(null, dao.countByBatch(), total);
+            }
+
+            List<Student> all = dao.findAll();
+            p.checkCancelled();
+
+            // Compute balances as-of current month
+            IntDoubleMap balances = dao.getBalancesAsOf(YearMonth.now());
+            for (Student s : all) {
+                s.setCurrentBalance(balances.getOrDefault(s.getId(), 0.0));
+            }
+
+            Map<String, Integer> counts = all.stream()
+                    .map(Student::getBatch)
+                    .filter(b -> b != null && !b.isBlank())
+                    .collect(Collectors.groupingBy(b -> b, Collectors.summingInt(b -> 1)));
+            return new Loaded(all, counts, all.size());
+        }, this::applyLoaded, ex -> showError("Could not load students", ex.getMessage()));
+    }
+
+    private void applyLoaded(Loaded loaded) {
+        pagedMode = loaded.all == null;
+        if (pagedMode) {
+            master.clear();
+            if (table.getItems() != paged) {
+                table.setItems(paged);
+            }
+        } else {
+            master.setAll(loaded.all);
+            searchIndex.sync(loaded.all);
+            byId.clear();
+            for (Student s : loaded.all) {
+                byId.put(s.getId(), s);
+            }
+            if (table.getItems() != filtered) {
+                table.setItems(filtered);
+            }
+        }
+
+        rebuildBatchTabs(loaded.batchCounts, loaded.total);
         applyFilters();
+        refreshAging();
 
-        Student sel = table.getSelectionModel().getSelectedItem();
+        Student sel = selectedStudent();
         if (sel != null) {
             balanceLabel.setText("Balance: " + sel.getCurrentBalance());
         }
     }
 
-    private void rebuildBatchTabs(List<Student> all) {
+    private void rebuildBatchTabs(Map<String, Integer> counts, int total) {
         String previouslyActive = activeBatch; // preserve by batch key, not by tab label
-
-        Map<String, Long> counts = all.stream()
-                .map(Student::getBatch)
-                .filter(b -> b != null && !b.isBlank())
-                .collect(Collectors.groupingBy(b -> b, Collectors.counting()));
+        if (counts != batchCounts) {
+            batchCounts.clear();
+            batchCounts.putAll(counts);
+        }
 
         List<String> batches = new ArrayList<>(counts.keySet());
         batches.sort(String.CASE_INSENSITIVE_ORDER);
 
         batchTabs.getTabs().clear();
 
-        Tab allTab = new Tab("All (" + all.size() + ")");
+        Tab allTab = new Tab("All (" + total + ")");
         allTab.setUserData(null); // null = All
         batchTabs.getTabs().add(allTab);
 
         for (String b : batches) {
-            long n = counts.getOrDefault(b, 0L);
+            int n = counts.getOrDefault(b, 0);
             Tab t = new Tab(b + " (" + n + ")");
             t.setUserData(b); // IMPORTANT: actual batch key
             batchTabs.getTabs().add(t);
@@ -333,69 +533,379 @@ public class MainView {
         activeBatch = (String) toSelect.getUserData();
     }
 
+    /**
+     * Brings the table in line with a committed write without reloading the
+     * roster: changed rows are updated in place (keeping selection and scroll
+     * position), new rows are inserted at their sorted position, deleted ones
+     * removed, and the batch tab counts adjusted. A change set too big to
+     * patch falls back to load().
+     */
+    private void applyChanges(ChangeSet changes) {
+        if (changes.fullReload) {
+            load();
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (pagedMode) {
+            if (!paged.patch(changes)) {
+                paged.refresh();
+                tasks.<Loaded>runCoalesced("batch-counts", "Counting students",
+                        () -> p -> new Loaded(null, dao.countByBatch(), dao.count(StudentQuery.all())),
+                        l -> updateBatchTabs(l.batchCounts, l.total),
+                        ex -> showError("Could not count students", ex.getMessage()));
+            } else {
+                reageChanged(changes); // refreshed pages are aged as they load
+            }
+            refreshSelectedBalance();
+            return;
+        }
+
+        Student selected = selectedStudent();
+        boolean membershipChanged = false;
+
+        for (Student fresh : changes.upserted) {
+            Student cur = byId.get(fresh.getId());
+            if (cur == null) {
+                byId.put(fresh.getId(), fresh);
+                insertSorted(fresh);
+                countBatch(fresh.getBatch(), 1);
+                searchIndex.put(fresh);
+                membershipChanged = true;
+                continue;
+            }
+
+            boolean moved = ROSTER_ORDER.compare(cur, fresh) != 0;
+            if (moved) {
+                master.remove(indexInMaster(cur));
+                countBatch(cur.getBatch(), -1);
+            }
+            copyInto(cur, fresh);
+            if (moved) {
+                insertSorted(cur);
+                countBatch(cur.getBatch(), 1);
+                membershipChanged = true;
+            } else {
+                master.set(indexInMaster(cur), cur); // replace with itself so the filter re-tests the row
+            }
+            searchIndex.put(cur);
+        }
+
+        for (int id : changes.deleted) {
+            Student cur = byId.remove(id);
+            if (cur != null) {
+                master.remove(indexInMaster(cur));
+                countBatch(cur.getBatch(), -1);
+                searchIndex.remove(id);
+                membershipChanged = true;
+            }
+        }
+
+        if (!search.getText().isBlank() && !changes.upserted.isEmpty()) {
+            applyFilters(); // the search hits were computed from the old names
+        }
+        if (membershipChanged) {
+            updateBatchTabs(batchCounts, master.size());
+        }
+
+        // keep the edited student selected even if its row moved
+        if (selected != null && byId.containsKey(selected.getId()) && selectedStudent() != selected
+                && filtered.contains(selected)) {
+            table.getSelectionModel().select(selected);
+        }
+        refreshSelectedBalance();
+        reageChanged(changes);
+    }
+
+    private int indexInMaster(Student s) {
+        int i = Collections.binarySearch(master, s, ROSTER_ORDER);
+        return i >= 0 && master.get(i) == s ? i : master.indexOf(s);
+    }
+
+    private void insertSorted(Student s) {
+        int i = Collections.binarySearch(master, s, ROSTER_ORDER);
+        master.add(i >= 0 ? i + 1 : -i - 1, s);
+    }
+
+    private static void copyInto(Student target, Student fresh) {
+        target.setStudentId(fresh.getStudentId());
+        target.setFullName(fresh.getFullName());
+        target.setBatch(fresh.getBatch());
+        target.setCgpa(fresh.getCgpa());
+        target.setSemesterCgpa(fresh.getSemesterCgpa());
+        target.setBillingStartMonth(fresh.getBillingStartMonth());
+        target.setCurrentBalance(fresh.getCurrentBalance());
+    }
+
+    private void countBatch(String batch, int delta) {
+        if (batch == null || batch.isBlank()) {
+            return;
+        }
+        int n = batchCounts.getOrDefault(batch, 0) + delta;
+        if (n > 0) {
+            batchCounts.put(batch, n);
+        } else {
+            batchCounts.remove(batch);
+        }
+    }
+
+    /**
+     * Updates the tab labels from the counts, only adding or removing tabs
+     * for batches that appeared or emptied. The All tab is selected if the
+     * active batch is gone.
+     */
+    private void updateBatchTabs(Map<String, Integer> counts, int total) {
+        if (counts != batchCounts) {
+            batchCounts.clear();
+            batchCounts.putAll(counts);
+        }
+
+        Set<String> shown = new HashSet<>();
+        Tab allTab = null;
+        for (Iterator<Tab> it = batchTabs.getTabs().iterator(); it.hasNext();) {
+            Tab t = it.next();
+            String b = (String) t.getUserData();
+            if (b == null) {
+                allTab = t;
+                t.setText("All (" + total + ")");
+            } else if (batchCounts.containsKey(b)) {
+                t.setText(b + " (" + batchCounts.get(b) + ")");
+                shown.add(b);
+            } else {
+                if (t.isSelected() && allTab != null) {
+                    batchTabs.getSelectionModel().select(allTab);
+                }
+                it.remove();
+            }
+        }
+        if (allTab == null) {
+            rebuildBatchTabs(batchCounts, total);
+            return;
+        }
+
+        for (String b : batchCounts.keySet()) {
+            if (shown.contains(b)) {
+                continue;
+            }
+            Tab t = new Tab(b + " (" + batchCounts.get(b) + ")");
+            t.setUserData(b);
+            // tabs after All are in case-insensitive batch order
+            int at = 1;
+            while (at < batchTabs.getTabs().size()
+                    && String.CASE_INSENSITIVE_ORDER.compare((String) batchTabs.getTabs().get(at).getUserData(), b) < 0) {
+                at++;
+            }
+            batchTabs.getTabs().add(at, t);
+        }
+    }
+
+    /**
+     * Re-reads only the balances (e.g. after generating charges) and sets
+     * them on the rows in place.
+     */
+    private void refreshBalances() {
+        if (pagedMode) {
+            paged.refresh();
+            return;
+        }
+        refreshAging(); // charges were generated for the whole roster
+        tasks.<IntDoubleMap>runCoalesced("balances", "Loading balances",
+                () -> p -> dao.getBalancesAsOf(YearMonth.now()),
+                balances -> {
+                    for (Student s : master) {
+                        s.setCurrentBalance(balances.getOrDefault(s.getId(), 0.0));
+                    }
+                    refreshSelectedBalance();
+                },
+                ex -> showError("Could not load balances", ex.getMessage()));
+    }
+
+    /**
+     * Re-runs the aging pass over the whole loaded roster in the background
+     * and sets each row's oldest overdue bucket. Paged rows are aged a page
+     * at a time as they load instead (ageRows).
+     */
+    private void refreshAging() {
+        if (pagedMode) {
+            return;
+        }
+        tasks.<IntIntMap>runCoalesced("aging", "Aging balances",
+                () -> p -> dao.getAgingBuckets(LocalDate.now()),
+                buckets -> {
+                    for (Student s : master) {
+                        s.setAgingBucket(buckets.getOrDefault(s.getId(), AgingRow.NOTHING_DUE));
+                    }
+                },
+                ex -> showError("Could not age balances", ex.getMessage()));
+    }
+
+    /**
+     * Re-ages just the students a write touched and sets their rows' bucket.
+     */
+    private void reageChanged(ChangeSet changes) {
+        if (changes.upserted.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = changes.upserted.stream().map(Student::getId).toList();
+        tasks.run("Aging balances",
+                p -> dao.getAgingBuckets(LocalDate.now(), ids),
+                buckets -> {
+                    if (pagedMode) {
+                        paged.forEachLoaded(s -> {
+                            if (buckets.containsKey(s.getId())) {
+                                s.setAgingBucket(buckets.getOrDefault(s.getId(), AgingRow.NOTHING_DUE));
+                            }
+                        });
+                        return;
+                    }
+                    for (int id : ids) {
+                        Student s = byId.get(id);
+                        if (s != null) {
+                            s.setAgingBucket(buckets.getOrDefault(id, AgingRow.NOTHING_DUE));
+                        }
+                    }
+                },
+                ex -> showError("Could not age balances", ex.getMessage()));
+    }
+
+    /**
+     * Page decorator for paged mode: ages a page's students as it loads.
+     * Runs on the page's background task.
+     */
+    private void ageRows(List<Student> rows) {
+        IntIntMap buckets = dao.getAgingBuckets(LocalDate.now(), rows.stream().map(Student::getId).toList());
+        for (Student s : rows) {
+            s.setAgingBucket(buckets.getOrDefault(s.getId(), AgingRow.NOTHING_DUE));
+        }
+    }
+
+    private void refreshSelectedBalance() {
+        Student sel = selectedStudent();
+        if (sel != null) {
+            selectedStudentLabel.setText(sel.getStudentId() + " — " + sel.getFullName());
+            balanceLabel.setText("Balance: " + sel.getCurrentBalance());
+        }
+    }
+
     private void loadAdjustments() {
-        Student sel = table.getSelectionModel().getSelectedItem();
+        Student sel = selectedStudent();
         if (sel == null) {
             adjMaster.clear();
             return;
         }
-        try {
-            adjMaster.setAll(dao.listAdjustments(sel.getId()));
-        } catch (RuntimeException ex) {
-            showError("Could not load adjustments", ex.getMessage());
-            adjMaster.clear();
-        }
+        int studentDbId = sel.getId();
+        tasks.<List<AccountAdjustment>>runCoalesced("adjustments", "Loading adjustments",
+                () -> p -> dao.listAdjustments(studentDbId),
+                list -> {
+                    // selection may have moved on while we were loading
+                    Student now = selectedStudent();
+                    if (now != null && now.getId() == studentDbId) {
+                        adjMaster.setAll(list);
+                    }
+                },
+                ex -> {
+                    showError("Could not load adjustments", ex.getMessage());
+                    adjMaster.clear();
+                });
     }
 
     private void onSetBalance() {
-        Student sel = table.getSelectionModel().getSelectedItem();
+        Student sel = selectedStudent();
         if (sel == null) {
             return;
         }
 
-        SetBalanceDialog.show(sel.getCurrentBalance()).ifPresent(res -> {
+        SetBalanceDialog.show(sel.getCurrentBalance()).ifPresent(res -> tasks.run("Setting balance",
+                p -> dao.setBalanceAsOfCurrentMonth(sel.getId(), res.desiredBalance, res.note),
+                changes -> {
+                    applyChanges(changes);
+                    loadAdjustments();
+                },
+                ex -> showError("Could not set balance", ex.getMessage())));
+    }
+
+    /**
+     * Asks for the last month to close (last month by default) and closes
+     * the ledger through it after a confirmation.
+     */
+    private void onClosePeriod() {
+        TextInputDialog d = new TextInputDialog(YearMonth.now().minusMonths(1).toString());
+        d.setTitle("Close Period");
+        d.setHeaderText("Close the ledger through which month? (YYYY-MM)");
+        d.setContentText("Charges, adjustments and payments dated in a closed month can no longer be changed.");
+
+        d.showAndWait().ifPresent(text -> {
+            YearMonth through;
             try {
-                dao.setBalanceAsOfCurrentMonth(sel.getId(), res.desiredBalance, res.note);
-                load();
-                loadAdjustments();
-            } catch (RuntimeException ex) {
-                showError("Could not set balance", ex.getMessage());
+                through = YearMonth.parse(text.trim());
+            } catch (java.time.format.DateTimeParseException ex) {
+                showError("Close period", "Enter a month as YYYY-MM.");
+                return;
             }
+
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+            confirm.setTitle("Close Period");
+            confirm.setHeaderText("Close every month through " + through + "?");
+            confirm.setContentText("This cannot be undone from the application.");
+            confirm.showAndWait().filter(btn -> btn == ButtonType.OK).ifPresent(btn
+                    -> tasks.run("Closing period", p -> dao.closePeriod(through),
+                            res -> showInfo("Period closed", "Closed through " + res.through + "\n"
+                                    + "Opening balances written: " + res.checkpoints + "\n"
+                                    + "Time: " + res.elapsedMs + " ms"),
+                            ex -> showError("Close period failed", ex.getMessage())));
         });
     }
 
-    private void onAdd() {
-        StudentFormDialog.showAddDialog().ifPresent(s -> {
-            try {
-                dao.insert(s);
-                load();
-            } catch (RuntimeException ex) {
-                showError("Could not save student", friendlyDbMessage(ex));
+    private void onVerifyMonthBalances() {
+        tasks.run("Verifying month balances", p -> dao.verifyMonthBalances(20), drift -> {
+            if (drift.isEmpty()) {
+                showInfo("Month balances", "No drift: the balance table matches the ledger.");
+                return;
             }
-        });
+
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+            confirm.setTitle("Month balances");
+            confirm.setHeaderText("The balance table drifts from the ledger. Rebuild it now?");
+            confirm.setContentText(String.join("\n", drift));
+
+            confirm.showAndWait().ifPresent(btn -> {
+                if (btn == ButtonType.OK) {
+                    tasks.run("Rebuilding month balances", p -> dao.rebuildMonthBalances(), rows -> {
+                        load();
+                        showInfo("Month balances", "Rebuilt " + rows + " student-month rows.");
+                    }, ex -> showError("Month balance rebuild failed", ex.getMessage()));
+                }
+            });
+        }, ex -> showError("Month balance check failed", ex.getMessage()));
+    }
+
+    private void onAdd() {
+        StudentFormDialog.showAddDialog().ifPresent(s -> tasks.run("Saving student",
+                p -> dao.insert(s),
+                this::applyChanges,
+                ex -> showError("Could not save student", friendlyDbMessage(ex))));
     }
 
     private void onEditSelected() {
-        Student sel = table.getSelectionModel().getSelectedItem();
+        Student sel = selectedStudent();
         if (sel != null) {
             onEdit(sel);
         }
     }
 
     private void onEdit(Student sel) {
-        StudentFormDialog.showEditDialog(sel).ifPresent(updated -> {
-            try {
-                dao.update(updated);
-                load();
-                loadAdjustments();
-            } catch (RuntimeException ex) {
-                showError("Could not update student", friendlyDbMessage(ex));
-            }
-        });
+        StudentFormDialog.showEditDialog(sel).ifPresent(updated -> tasks.run("Updating student",
+                p -> dao.update(updated),
+                changes -> {
+                    applyChanges(changes);
+                    loadAdjustments();
+                },
+                ex -> showError("Could not update student", friendlyDbMessage(ex))));
     }
 
     private void onDeleteSelected() {
-        Student sel = table.getSelectionModel().getSelectedItem();
+        Student sel = selectedStudent();
         if (sel == null) {
             return;
         }
@@ -407,40 +917,42 @@ public class MainView {
 
         confirm.showAndWait().ifPresent(btn -> {
             if (btn == ButtonType.OK) {
-                try {
-                    dao.deleteById(sel.getId());
-                    load();
-                    loadAdjustments();
-                } catch (RuntimeException ex) {
-                    showError("Could not delete student", friendlyDbMessage(ex));
-                }
+                tasks.run("Deleting student",
+                        p -> dao.deleteById(sel.getId()),
+                        changes -> {
+                            applyChanges(changes);
+                            loadAdjustments();
+                        },
+                        ex -> showError("Could not delete student", friendlyDbMessage(ex)));
             }
         });
     }
 
     private void onImportExcel() {
-        ExcelImportDialog.importStudents(table, dao, this::load);
-        updateSaveButtons();
+        ExcelImportDialog.importStudents(table, dao, tasks, changes -> {
+            applyChanges(changes);
+            updateSaveButtons();
+        });
     }
 
     private void onSaveExcel() {
-        List<Student> all = dao.findAll();
-        ExcelExportDialog.saveToCurrentOrSaveAs(table, all);
-        updateSaveButtons();
+        ExcelExportDialog.saveToCurrentOrSaveAs(table, dao, tasks, this::updateSaveButtons);
     }
 
     private void onSaveAsExcel() {
-        List<Student> all = dao.findAll();
-        ExcelExportDialog.saveAs(table, all);
-        updateSaveButtons();
+        ExcelExportDialog.saveAs(table, dao, tasks, this::updateSaveButtons);
     }
 
     private void updateSaveButtons() {
         saveExcelBtn.setDisable(ExcelFileState.getCurrentExcelFile() == null);
     }
 
-    private static String safe(String v) {
-        return v == null ? "" : v.toLowerCase();
+    private static void showInfo(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
     }
 
     private static void showError(String title, String message) {
@@ -451,7 +963,7 @@ public class MainView {
         alert.showAndWait();
     }
 
-    private static String friendlyDbMessage(RuntimeException ex) {
+    private static String friendlyDbMessage(Throwable ex) {
         Throwable t = ex.getCause();
         String msg = (t == null || t.getMessage() == null) ? ex.getMessage() : t.getMessage();
         if (msg != null && msg.toLowerCase().contains("unique")) {
@@ -0,0 +1,246 @@
+package com.marzuque.sms.ui;
+
+import com.marzuque.sms.dao.ChangeSet;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.dao.StudentQuery;
+import com.marzuque.sms.model.Student;
+import javafx.collections.ObservableListBase;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Lazily filled student list for rosters too big to load whole. Only the
+ * row count is fetched up front; a page of rows is queried in the background
+ * the first time the table asks for one of its rows, and a handful of pages
+ * are kept in an LRU cache. Filtering and sorting happen in SQL through the
+ * StudentQuery. Rows that are still loading read as PLACEHOLDER.
+ *
+ * FX thread only.
+ */
+final class PagedStudentList extends ObservableListBase<Student> {
+
+    static final Student PLACEHOLDER = new Student(0, "", "Loading...", "", 0.0, 0.0, "");
+
+    private static final int PAGE_SIZE = 200;
+    private static final int CACHED_PAGES = 16;
+
+    private final StudentDao dao;
+    private final BackgroundTasks tasks;
+    private final Consumer<Throwable> onError;
+
+    private StudentQuery query = StudentQuery.all();
+    private int size;
+    private int generation; // bumped on every reset so pages of an older query are dropped
+
+    private final Map<Integer, List<Student>> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Student>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    // keyset position after each page seen so far, so the next page avoids OFFSET
+    private final Map<Integer, Object[]> pageEndKeys = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private Consumer<List<Student>> pageDecorator = rows -> {
+    };
+
+    PagedStudentList(StudentDao dao, BackgroundTasks tasks, Consumer<Throwable> onError) {
+        this.dao = dao;
+        this.tasks = tasks;
+        this.onError = onError;
+    }
+
+    StudentQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Counts the rows matching q in the background, then swaps the list over
+     * to it. Also used to reload after the data changed.
+     */
+    void setQuery(StudentQuery q) {
+        tasks.<Integer>runCoalesced("student-count", "Counting students",
+                () -> p -> dao.count(q), n -> reset(q, n), onError);
+    }
+
+    void refresh() {
+        setQuery(query);
+    }
+
+    /**
+     * Fills in values the page query does not carry (the aging bucket, say)
+     * on a page's rows. Runs on the background task that loads the page,
+     * before the rows are shown, so it may query for just those rows.
+     */
+    void setPageDecorator(Consumer<List<Student>> decorator) {
+        pageDecorator = decorator;
+    }
+
+    /**
+     * Runs the action on every cached row, e.g. to re-decorate the ones an
+     * edit touched.
+     */
+    void forEachLoaded(Consumer<Student> action) {
+        for (List<Student> rows : pages.values()) {
+            rows.forEach(action);
+        }
+    }
+
+    /**
+     * Applies a change to the cached rows in place when it cannot move rows:
+     * only edits of loaded rows that leave every filtered or sorted column
+     * alone (a balance change, say). Returns false when the list has to be
+     * refreshed instead.
+     */
+    boolean patch(ChangeSet changes) {
+        if (!changes.deleted.isEmpty()) {
+            return false;
+        }
+
+        List<Student> targets = new ArrayList<>(changes.upserted.size());
+        for (Student fresh : changes.upserted) {
+            Student cur = cached(fresh.getId());
+            if (cur == null || !sameKeys(cur, fresh)) {
+                return false; // new, not loaded, or possibly moved
+            }
+            targets.add(cur);
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            Student fresh = changes.upserted.get(i);
+            targets.get(i).setBillingStartMonth(fresh.getBillingStartMonth());
+            targets.get(i).setCurrentBalance(fresh.getCurrentBalance());
+        }
+        return true;
+    }
+
+    private Student cached(int studentDbId) {
+        for (List<Student> rows : pages.values()) {
+            for (Student s : rows) {
+                if (s.getId() == studentDbId) {
+                    return s;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameKeys(Student a, Student b) {
+        return Objects.equals(a.getStudentId(), b.getStudentId())
+                && Objects.equals(a.getFullName(), b.getFullName())
+                && Objects.equals(a.getBatch(), b.getBatch())
+                && a.getCgpa() == b.getCgpa()
+                && a.getSemesterCgpa() == b.getSemesterCgpa();
+    }
+
+    private void reset(StudentQuery q, int n) {
+        generation++;
+        query = q;
+        pages.clear();
+        pageEndKeys.clear();
+        loading.clear();
+
+        int old = size;
+        size = n;
+
+        beginChange();
+        if (old > 0) {
+            nextRemove(0, Collections.nCopies(old, PLACEHOLDER));
+        }
+        if (n > 0) {
+            nextAdd(0, n);
+        }
+        endChange();
+    }
+
+    @Override
+    public Student get(int index) {
+        Objects.checkIndex(index, size);
+
+        int page = index / PAGE_SIZE;
+        List<Student> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return PLACEHOLDER;
+        }
+        int i = index % PAGE_SIZE;
+        return i < rows.size() ? rows.get(i) : PLACEHOLDER;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // only the cached pages are searched; scanning would pull in the whole roster
+    @Override
+    public int indexOf(Object o) {
+        if (o == null || o == PLACEHOLDER) {
+            return -1;
+        }
+        for (Map.Entry<Integer, List<Student>> e : pages.entrySet()) {
+            int i = e.getValue().indexOf(o);
+            if (i >= 0) {
+                return e.getKey() * PAGE_SIZE + i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) {
+            return;
+        }
+
+        int gen = generation;
+        StudentQuery q = query;
+        Object[] after = page == 0 ? null : pageEndKeys.get(page - 1);
+        int offset = page * PAGE_SIZE;
+
+        Consumer<List<Student>> decorate = pageDecorator;
+        tasks.run("Loading students",
+                p -> {
+                    StudentDao.StudentPage res = dao.findPage(q, after, offset, PAGE_SIZE, YearMonth.now());
+                    decorate.accept(res.rows);
+                    return res;
+                },
+                res -> {
+                    if (gen != generation) {
+                        return;
+                    }
+                    loading.remove(page);
+                    pages.put(page, res.rows);
+                    if (res.lastKey != null) {
+                        pageEndKeys.put(page, res.lastKey);
+                    }
+
+                    int from = offset;
+                    int to = Math.min(size, from + res.rows.size());
+                    if (from < to) {
+                        beginChange();
+                        nextReplace(from, to, Collections.nCopies(to - from, PLACEHOLDER));
+                        endChange();
+                    }
+                },
+                ex -> onError.accept(ex)); // page stays marked as loading until the next reset, so no retry storm
+    }
+}
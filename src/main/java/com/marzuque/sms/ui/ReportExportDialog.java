@@ -1,59 +1,87 @@
 package com.marzuque.sms.ui;
 
-import com.marzuque.sms.model.MonthlyReportRow;
+import com.marzuque.sms.dao.StudentDao;
+import com.marzuque.sms.excel.AgingXlsxWriter;
+import com.marzuque.sms.excel.ReportXlsxWriter;
+import com.marzuque.sms.model.MonthlySeries;
 import com.marzuque.sms.model.Student;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Control;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.List;
+import java.util.function.Supplier;
 
 public class ReportExportDialog {
 
-    public static void exportStudent12Months(Control ownerControl, Student student, List<MonthlyReportRow> rows) {
+    /**
+     * Asks for the output path, then builds the rows and writes the workbook
+     * on a background task.
+     */
+    public static void exportStudent12Months(Control ownerControl, BackgroundTasks tasks, Student student,
+            Supplier<MonthlySeries> rows) {
         String defaultName = "student-report-" + safe(student.getStudentId()) + "-" + YearMonth.now() + ".xlsx";
         File out = choosePath(ownerControl, defaultName);
         if (out == null) {
             return;
         }
 
-        try {
-            writeStudentReport(out, student, rows);
-            info("Report saved", "Saved to:\n" + out.getAbsolutePath());
-        } catch (Exception e) {
-            error("Report failed", e.getMessage());
-        }
+        export(tasks, out, () -> ReportXlsxWriter.writeStudentReport(out, student, rows.get()));
     }
 
-    public static void exportBatch12Months(Control ownerControl, String batch, List<MonthlyReportRow> rows) {
+    public static void exportBatch12Months(Control ownerControl, BackgroundTasks tasks, String batch,
+            Supplier<MonthlySeries> rows) {
         String defaultName = "batch-report-" + safe(batch) + "-" + YearMonth.now() + ".xlsx";
         File out = choosePath(ownerControl, defaultName);
         if (out == null) {
             return;
         }
 
-        try {
-            writeBatchReport(out, batch, rows);
-            info("Report saved", "Saved to:\n" + out.getAbsolutePath());
-        } catch (Exception e) {
-            error("Report failed", e.getMessage());
+        export(tasks, out, () -> ReportXlsxWriter.writeBatchReport(out, batch, rows.get()));
+    }
+
+    /**
+     * Writes the aging of every student as of today, streamed from the
+     * aging pass, with per-batch totals.
+     */
+    public static void exportAging(Control ownerControl, BackgroundTasks tasks, StudentDao dao) {
+        LocalDate asOf = LocalDate.now();
+        File out = choosePath(ownerControl, "Save Aging Report", "aging-" + asOf + ".xlsx");
+        if (out == null) {
+            return;
         }
+
+        export(tasks, out, () -> AgingXlsxWriter.writeReplacing(out, asOf, w -> dao.forEachAging(asOf, w::append)));
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+
+        void write() throws Exception;
+    }
+
+    private static void export(BackgroundTasks tasks, File out, Writer writer) {
+        tasks.run("Exporting " + out.getName(),
+                p -> {
+                    writer.write();
+                    return out;
+                },
+                f -> info("Report saved", "Saved to:\n" + f.getAbsolutePath()),
+                e -> error("Report failed", e.getMessage()));
     }
 
     private static File choosePath(Control ctrl, String initialName) {
+        return choosePath(ctrl, "Save 12-Month Report", initialName);
+    }
+
+    private static File choosePath(Control ctrl, String title, String initialName) {
         Window owner = ctrl.getScene() != null ? ctrl.getScene().getWindow() : null;
 
         FileChooser fc = new FileChooser();
-        fc.setTitle("Save 12-Month Report");
+        fc.setTitle(title);
         fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Excel Workbook (*.xlsx)", "*.xlsx"));
         fc.setInitialFileName(initialName);
 
@@ -68,112 +96,6 @@ public class ReportExportDialog {
         return file;
     }
 
-    private static void writeStudentReport(File file, Student s, List<MonthlyReportRow> rows) throws Exception {
-        try (Workbook wb = new XSSFWorkbook()) {
-            Sheet sheet = wb.createSheet("12-Month Report");
-
-            int r = 0;
-
-            Row t1 = sheet.createRow(r++);
-            t1.createCell(0).setCellValue("Student 12-Month Account Report");
-
-            Row meta1 = sheet.createRow(r++);
-            meta1.createCell(0).setCellValue("Generated");
-            meta1.createCell(1).setCellValue(LocalDate.now().toString());
-
-            Row meta2 = sheet.createRow(r++);
-            meta2.createCell(0).setCellValue("Student ID");
-            meta2.createCell(1).setCellValue(n(s.getStudentId()));
-
-            Row meta3 = sheet.createRow(r++);
-            meta3.createCell(0).setCellValue("Name");
-            meta3.createCell(1).setCellValue(n(s.getFullName()));
-
-            Row meta4 = sheet.createRow(r++);
-            meta4.createCell(0).setCellValue("Batch");
-            meta4.createCell(1).setCellValue(n(s.getBatch()));
-
-            r++; // blank row
-
-            Row h = sheet.createRow(r++);
-            h.createCell(0).setCellValue("Month");
-            h.createCell(1).setCellValue("Charges");
-            h.createCell(2).setCellValue("Adjustments");
-            h.createCell(3).setCellValue("Payments");
-            h.createCell(4).setCellValue("Net Change");
-            h.createCell(5).setCellValue("Ending Balance");
-
-            for (MonthlyReportRow row : rows) {
-                Row rr = sheet.createRow(r++);
-                rr.createCell(0).setCellValue(row.getYearMonth());
-                rr.createCell(1).setCellValue(row.getCharges());
-                rr.createCell(2).setCellValue(row.getAdjustments());
-                rr.createCell(3).setCellValue(row.getPayments());
-                rr.createCell(4).setCellValue(row.getNetChange());
-                rr.createCell(5).setCellValue(row.getEndingBalance());
-            }
-
-            for (int i = 0; i <= 5; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                wb.write(fos);
-            }
-        }
-    }
-
-    private static void writeBatchReport(File file, String batch, List<MonthlyReportRow> rows) throws Exception {
-        try (Workbook wb = new XSSFWorkbook()) {
-            Sheet sheet = wb.createSheet("12-Month Report");
-
-            int r = 0;
-
-            Row t1 = sheet.createRow(r++);
-            t1.createCell(0).setCellValue("Batch 12-Month Account Report");
-
-            Row meta1 = sheet.createRow(r++);
-            meta1.createCell(0).setCellValue("Generated");
-            meta1.createCell(1).setCellValue(LocalDate.now().toString());
-
-            Row meta2 = sheet.createRow(r++);
-            meta2.createCell(0).setCellValue("Batch");
-            meta2.createCell(1).setCellValue(n(batch));
-
-            r++; // blank row
-
-            Row h = sheet.createRow(r++);
-            h.createCell(0).setCellValue("Month");
-            h.createCell(1).setCellValue("Charges");
-            h.createCell(2).setCellValue("Adjustments");
-            h.createCell(3).setCellValue("Payments");
-            h.createCell(4).setCellValue("Net Change");
-            h.createCell(5).setCellValue("Ending Balance");
-
-            for (MonthlyReportRow row : rows) {
-                Row rr = sheet.createRow(r++);
-                rr.createCell(0).setCellValue(row.getYearMonth());
-                rr.createCell(1).setCellValue(row.getCharges());
-                rr.createCell(2).setCellValue(row.getAdjustments());
-                rr.createCell(3).setCellValue(row.getPayments());
-                rr.createCell(4).setCellValue(row.getNetChange());
-                rr.createCell(5).setCellValue(row.getEndingBalance());
-            }
-
-            for (int i = 0; i <= 5; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                wb.write(fos);
-            }
-        }
-    }
-
-    private static String n(String v) {
-        return v == null ? "" : v;
-    }
-
     private static String safe(String v) {
         if (v == null) {
             return "unknown";
@@ -0,0 +1,121 @@
+package com.marzuque.sms.util;
+
+/**
+ * int -> double hash map with open addressing (linear probing) over two
+ * primitive arrays, so a roster's worth of balances costs two arrays rather
+ * than a boxed Integer, a boxed Double and an entry per student.
+ *
+ * Key 0 marks a free slot in the arrays and is kept on the side. No removal;
+ * not thread-safe.
+ */
+public final class IntDoubleMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private double[] values;
+    private int size; // including key 0
+    private int resizeAt;
+
+    private boolean hasZero;
+    private double zeroValue;
+
+    public IntDoubleMap() {
+        this(16);
+    }
+
+    public IntDoubleMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    public void put(int key, double value) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int i = slot(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            if (++size > resizeAt) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    public double getOrDefault(int key, double defaultValue) {
+        if (key == 0) {
+            return hasZero ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] != 0 ? values[i] : defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZero : keys[slot(key)] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Entry handler) {
+        if (hasZero) {
+            handler.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                handler.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Entry {
+
+        void accept(int key, double value);
+    }
+
+    // index of key's slot, or of the free slot where it would go
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new double[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // student ids are sequential; spread them so runs do not cluster
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,121 @@
+package com.marzuque.sms.util;
+
+/**
+ * int -> int hash map with open addressing (linear probing) over two
+ * primitive arrays; the IntDoubleMap layout for per-student values that are
+ * small codes rather than amounts (aging buckets, say).
+ *
+ * Key 0 marks a free slot in the arrays and is kept on the side. No removal;
+ * not thread-safe.
+ */
+public final class IntIntMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private int[] values;
+    private int size; // including key 0
+    private int resizeAt;
+
+    private boolean hasZero;
+    private int zeroValue;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    public void put(int key, int value) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int i = slot(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            if (++size > resizeAt) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == 0) {
+            return hasZero ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] != 0 ? values[i] : defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZero : keys[slot(key)] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Entry handler) {
+        if (hasZero) {
+            handler.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                handler.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Entry {
+
+        void accept(int key, int value);
+    }
+
+    // index of key's slot, or of the free slot where it would go
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // student ids are sequential; spread them so runs do not cluster
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,237 @@
+package com.marzuque.sms.util;
+
+import com.marzuque.sms.model.Student;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Trigram index over the student ID, full name and batch of an in-memory
+ * roster, answering the same case-insensitive substring search the student
+ * table always had without lower-casing every row per keystroke.
+ *
+ * Each student's fields are normalized once into a slot. A query of three or
+ * more characters only checks the slots on the shortest posting list of its
+ * trigrams; shorter queries scan the normalized slots. A query that extends
+ * the previous one (typing on) only re-checks the previous hits.
+ *
+ * Not thread-safe; the UI uses it on the FX thread.
+ */
+public final class StudentSearchIndex {
+
+    private static final char FIELD_SEPARATOR = '\u0000'; // keeps matches from spanning two fields
+
+    // slot -> student db id / normalized text; a removed or replaced slot is dead (text null)
+    private int[] slotIds = new int[64];
+    private String[] slotTexts = new String[64];
+    private int slots;
+    private int deadSlots;
+
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    // previous query and its matching slots, valid until the index changes
+    private String lastQuery;
+    private int[] lastHits;
+    private int lastHitCount;
+
+    /**
+     * Brings the index in line with the roster, re-indexing only students
+     * whose searchable fields changed and dropping the ones that are gone.
+     */
+    public void sync(Collection<Student> students) {
+        BitSet seen = new BitSet();
+        for (Student s : students) {
+            put(s);
+            seen.set(s.getId());
+        }
+
+        int[] gone = slotById.keySet().stream().mapToInt(Integer::intValue).filter(id -> !seen.get(id)).toArray();
+        for (int id : gone) {
+            remove(id);
+        }
+    }
+
+    /**
+     * Adds a student or re-indexes it if its searchable fields changed.
+     */
+    public void put(Student s) {
+        String text = normalize(s);
+        Integer slot = slotById.get(s.getId());
+        if (slot != null) {
+            if (text.equals(slotTexts[slot])) {
+                return;
+            }
+            kill(slot);
+        }
+        addSlot(s.getId(), text);
+        invalidate();
+    }
+
+    public void remove(int studentDbId) {
+        Integer slot = slotById.remove(studentDbId);
+        if (slot != null) {
+            kill(slot);
+            invalidate();
+        }
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Student db ids whose ID, name or batch contains the query (ignoring
+     * case), or null when the query is blank and everything matches.
+     */
+    public BitSet search(String query) {
+        String q = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (q.isEmpty()) {
+            return null;
+        }
+
+        int[] candidates;
+        int count;
+        if (lastQuery != null && q.contains(lastQuery)) {
+            // anything matching q also matches the previous query
+            candidates = lastHits;
+            count = lastHitCount;
+        } else if (q.length() >= 3) {
+            IntList shortest = shortestPosting(q);
+            if (shortest == null) {
+                return remember(q, new int[0], 0);
+            }
+            candidates = shortest.values;
+            count = shortest.size;
+        } else {
+            candidates = null;
+            count = slots;
+        }
+
+        int[] hits = new int[Math.min(count, 16)];
+        int hitCount = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = candidates == null ? i : candidates[i];
+            String text = slotTexts[slot];
+            if (text != null && text.contains(q)) {
+                if (hitCount == hits.length) {
+                    hits = Arrays.copyOf(hits, hits.length * 2);
+                }
+                hits[hitCount++] = slot;
+            }
+        }
+        return remember(q, hits, hitCount);
+    }
+
+    private BitSet remember(String q, int[] hits, int hitCount) {
+        lastQuery = q;
+        lastHits = hits;
+        lastHitCount = hitCount;
+
+        BitSet ids = new BitSet();
+        for (int i = 0; i < hitCount; i++) {
+            ids.set(slotIds[hits[i]]);
+        }
+        return ids;
+    }
+
+    private IntList shortestPosting(String q) {
+        IntList shortest = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            IntList list = postings.get(trigram(q, i));
+            if (list == null) {
+                return null; // some trigram never occurs: no hits
+            }
+            if (shortest == null || list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        return shortest;
+    }
+
+    private void addSlot(int id, String text) {
+        if (slots == slotIds.length) {
+            slotIds = Arrays.copyOf(slotIds, slots * 2);
+            slotTexts = Arrays.copyOf(slotTexts, slots * 2);
+        }
+        int slot = slots++;
+        slotIds[slot] = id;
+        slotTexts[slot] = text;
+        slotById.put(id, slot);
+
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            if (text.charAt(i) == FIELD_SEPARATOR || text.charAt(i + 1) == FIELD_SEPARATOR
+                    || text.charAt(i + 2) == FIELD_SEPARATOR) {
+                continue;
+            }
+            IntList list = postings.computeIfAbsent(trigram(text, i), k -> new IntList());
+            // slots only grow, so a repeated trigram in the same text is always the last entry
+            if (list.size == 0 || list.values[list.size - 1] != slot) {
+                list.add(slot);
+            }
+        }
+    }
+
+    private void kill(int slot) {
+        slotTexts[slot] = null;
+        deadSlots++;
+        // compact once most of the posting entries point at dead slots
+        if (deadSlots > 1024 && deadSlots > slots / 2) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        int[] oldIds = Arrays.copyOf(slotIds, slots);
+        String[] oldTexts = Arrays.copyOf(slotTexts, slots);
+        int oldSlots = slots;
+
+        slotIds = new int[Math.max(64, oldSlots - deadSlots)];
+        slotTexts = new String[slotIds.length];
+        slots = 0;
+        deadSlots = 0;
+        slotById.clear();
+        postings.clear();
+
+        for (int i = 0; i < oldSlots; i++) {
+            if (oldTexts[i] != null) {
+                addSlot(oldIds[i], oldTexts[i]);
+            }
+        }
+    }
+
+    private void invalidate() {
+        lastQuery = null;
+        lastHits = null;
+        lastHitCount = 0;
+    }
+
+    private static String normalize(Student s) {
+        return lower(s.getStudentId()) + FIELD_SEPARATOR + lower(s.getFullName()) + FIELD_SEPARATOR + lower(s.getBatch());
+    }
+
+    private static String lower(String v) {
+        return v == null ? "" : v.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static final class IntList {
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+}